@@ -0,0 +1,43 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, or just those matching the given pattern,
+ *  with the GC profiler on so that the allocations per operation
+ *  (gc.alloc.rate.norm) are reported alongside the timings.
+ * For the full range of JMH options, run the benchmarks jar with
+ *  <code>org.openjdk.jmh.Main</code> instead, and pass
+ *  <code>-prof gc</code> to get the same allocation figures.
+ */
+public class RunBenchmarks {
+    public static void main(String[] args) throws Exception {
+        OptionsBuilder options = new OptionsBuilder();
+        if(args.length == 0) {
+            options.include("org\\.gagravarr\\..*Benchmark");
+        }
+        for(String pattern : args) {
+            options.include(pattern);
+        }
+        options.addProfiler(GCProfiler.class);
+
+        Options opts = options.build();
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the test files which the benchmarks are run against
+ */
+public class BenchmarkFiles {
+    public static final String VORBIS = "testVORBIS.ogg";
+    public static final String OPUS = "testOPUS_11.opus";
+    public static final String THEORA_VORBIS_SKELETON = "testTheoraVORBISSkeleton.ogg";
+    public static final String BOUNDARIES = "testBoundaries.ogg";
+
+    /**
+     * Returns the contents of the given test file
+     */
+    public static byte[] load(String name) throws IOException {
+        InputStream inp = BenchmarkFiles.class.getResourceAsStream("/" + name);
+        if(inp == null) {
+            throw new IOException("Test file " + name + " not found");
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while( (read = inp.read(buffer)) != -1 ) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            inp.close();
+        }
+    }
+
+    /**
+     * Returns the offsets of all the pages in the file
+     */
+    public static int[] findPages(byte[] file) throws IOException {
+        List<Integer> offsets = new ArrayList<Integer>();
+        for(int i=0; i+OggPage.HEADER_SIZE < file.length; i++) {
+            if(file[i] == 'O' && file[i+1] == 'g' && file[i+2] == 'g' && file[i+3] == 'S') {
+                OggPage page = new OggPage(file, i);
+                offsets.add(i);
+                i += page.getPageSize() - 1;
+            }
+        }
+        int[] ret = new int[offsets.size()];
+        for(int i=0; i<ret.length; i++) {
+            ret[i] = offsets.get(i);
+        }
+        return ret;
+    }
+
+    /**
+     * Discards everything written to it
+     */
+    public static class NullOutputStream extends OutputStream {
+        public void write(int b) {}
+        public void write(byte[] b, int off, int len) {}
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How quickly packets can be buffered up into pages, and those
+ *  pages written out, for small audio style packets, larger
+ *  video style ones, and packets which must span pages
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OggPacketWriterBenchmark {
+    private static final int PACKETS_PER_FLUSH = 16;
+
+    @Param({"200", "4000", "70000"})
+    public int packetSize;
+
+    private byte[] data;
+    private OggPacketWriter writer;
+    private long granule;
+
+    @Setup
+    public void setup() {
+        data = new byte[packetSize];
+        OggFile file = new OggFile(new BenchmarkFiles.NullOutputStream());
+        writer = file.getPacketWriter(0x1234);
+    }
+
+    @Benchmark
+    public void bufferAndFlush() throws IOException {
+        for(int i=0; i<PACKETS_PER_FLUSH; i++) {
+            writer.bufferPacket(new OggPacket(data));
+        }
+        writer.setGranulePosition(granule += PACKETS_PER_FLUSH);
+        writer.flush();
+    }
+
+    @Benchmark
+    public void writePacket() throws IOException {
+        writer.writePacket(new OggPacket(data), ++granule);
+    }
+}
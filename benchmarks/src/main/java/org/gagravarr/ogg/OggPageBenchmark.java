@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * How quickly the pages of a file can be parsed from
+ *  bytes already in memory, with and without checking
+ *  their checksums, and with and without re-using a page
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OggPageBenchmark {
+    @Param({BenchmarkFiles.VORBIS, BenchmarkFiles.OPUS,
+            BenchmarkFiles.THEORA_VORBIS_SKELETON, BenchmarkFiles.BOUNDARIES})
+    public String file;
+
+    private byte[] data;
+    private int[] pages;
+    private OggPage reuse;
+
+    @Setup
+    public void setup() throws IOException {
+        data = BenchmarkFiles.load(file);
+        pages = BenchmarkFiles.findPages(data);
+        reuse = new OggPage(data, pages[0]);
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) {
+        for(int offset : pages) {
+            bh.consume(new OggPage(data, offset));
+        }
+    }
+
+    @Benchmark
+    public void parseAndCheck(Blackhole bh) {
+        for(int offset : pages) {
+            bh.consume(new OggPage(data, offset).isChecksumValid());
+        }
+    }
+
+    @Benchmark
+    public void parseReused(Blackhole bh) {
+        for(int offset : pages) {
+            reuse.reset(data, offset);
+            bh.consume(reuse.getDataSize());
+        }
+    }
+}
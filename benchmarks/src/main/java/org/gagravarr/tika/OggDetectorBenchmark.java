@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.tika;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.gagravarr.ogg.BenchmarkFiles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How quickly the Tika detector can identify each kind of file
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OggDetectorBenchmark {
+    @Param({BenchmarkFiles.VORBIS, BenchmarkFiles.OPUS,
+            BenchmarkFiles.THEORA_VORBIS_SKELETON, BenchmarkFiles.BOUNDARIES})
+    public String file;
+
+    private byte[] data;
+    private OggDetector detector = new OggDetector();
+
+    @Setup
+    public void setup() throws IOException {
+        data = BenchmarkFiles.load(file);
+    }
+
+    @Benchmark
+    public MediaType detect() throws IOException {
+        TikaInputStream input = TikaInputStream.get(data);
+        try {
+            return detector.detect(input, new Metadata());
+        } finally {
+            input.close();
+        }
+    }
+}
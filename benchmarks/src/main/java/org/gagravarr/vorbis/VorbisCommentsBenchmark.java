@@ -0,0 +1,79 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.vorbis;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.gagravarr.ogg.BenchmarkFiles;
+import org.gagravarr.ogg.OggFile;
+import org.gagravarr.ogg.OggPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How quickly Vorbis comments can be parsed and written, for
+ *  the test file's few comments, and for a heavily tagged file,
+ *  decoding them all up-front or only as needed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VorbisCommentsBenchmark {
+    @Param({"0", "200"})
+    public int extraComments;
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private VorbisComments comments;
+    private OggPacket packet;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] data = BenchmarkFiles.load(BenchmarkFiles.VORBIS);
+        comments = new VorbisFile(new OggFile(new ByteArrayInputStream(data))).getComment();
+        for(int i=0; i<extraComments; i++) {
+            comments.addComment("Custom-Tag-" + (i % 20), "Some value for comment " + i);
+        }
+        packet = comments.write();
+    }
+
+    @Benchmark
+    public VorbisComments parse() {
+        return new VorbisComments(packet, lazy);
+    }
+
+    @Benchmark
+    public String parseAndGetTitle() {
+        return new VorbisComments(packet, lazy).getTitle();
+    }
+
+    @Benchmark
+    public OggPacket write() {
+        return comments.write();
+    }
+}
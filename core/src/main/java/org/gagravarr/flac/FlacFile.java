@@ -20,6 +20,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.gagravarr.ogg.IOUtils;
@@ -86,6 +87,19 @@ public abstract class FlacFile implements Closeable {
 	public FlacTags getTags() {
 		return tags;
 	}
+	/**
+	 * Returns the pictures, such as cover art, held in
+	 *  PICTURE metadata blocks
+	 */
+	public List<FlacPicture> getPictures() {
+		List<FlacPicture> pictures = new ArrayList<FlacPicture>();
+		for(FlacMetadataBlock block : otherMetadata) {
+			if(block instanceof FlacPicture) {
+				pictures.add((FlacPicture)block);
+			}
+		}
+		return pictures;
+	}
 
 	/**
 	 * In Reading mode, will close the underlying ogg/flac
@@ -52,9 +52,25 @@ public abstract class FlacMetadataBlock extends FlacFrame {
       IOUtils.readFully(inp, l);
       int length = (int)IOUtils.getInt3BE(l);
       
+      // Padding is only zeros, so skip rather than read it
+      if((type & 0x7f) == PADDING) {
+         IOUtils.skipFully(inp, length);
+         return new FlacPadding(type, length);
+      }
+
       byte[] data = new byte[length];
       IOUtils.readFully(inp, data);
       
+      // Pictures keep their data as read, and stream the image from it.
+      // If the picture details are broken, keep the block untouched
+      if((type & 0x7f) == PICTURE) {
+         try {
+            return new FlacPicture(type, data);
+         } catch(IOException e) {
+            return new FlacUnhandledMetadataBlock(type, data);
+         }
+      }
+
       switch(type) {
          case STREAMINFO:
             return new FlacInfo(data, 0);
@@ -92,9 +108,9 @@ public abstract class FlacMetadataBlock extends FlacFrame {
          throw new RuntimeException(e);
       }
       
-      // Fix the length
+      // Fix the length, which excludes the type and length
       byte[] data = baos.toByteArray();
-      IOUtils.putInt3BE(data, 1, data.length);
+      IOUtils.putInt3BE(data, 1, data.length-4);
       
       // All done
       return data;
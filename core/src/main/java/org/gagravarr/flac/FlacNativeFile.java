@@ -18,7 +18,10 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.gagravarr.flac.FlacTags.FlacTagsAsMetadata;
 import org.gagravarr.ogg.IOUtils;
@@ -74,6 +77,37 @@ public class FlacNativeFile extends FlacFile {
    }
    
 	
+	/**
+	 * Finds the pictures in the metadata of the given native FLAC
+	 *  file, without reading in their images, which are instead
+	 *  streamed from the file when asked for. The channel must stay
+	 *  open while the pictures are in use.
+	 */
+	public static List<FlacPicture> readPictures(FileChannel channel) throws IOException {
+	   List<FlacPicture> pictures = new ArrayList<FlacPicture>();
+	   ByteBuffer header = ByteBuffer.allocate(4);
+	   long pos = 4;
+	   boolean last = false;
+	   while(!last) {
+	      header.clear();
+	      while(header.hasRemaining()) {
+	         if(channel.read(header, pos + header.position()) == -1) {
+	            throw new IOException("Hit the end of the file reading metadata at " + pos);
+	         }
+	      }
+	      byte[] h = header.array();
+	      last = (h[0] & 0x80) != 0;
+	      long length = IOUtils.getInt3BE(h, 1);
+	      pos += 4;
+
+	      if((h[0] & 0x7f) == FlacMetadataBlock.PICTURE) {
+	         pictures.add(FlacPicture.fromChannel(channel, pos, length));
+	      }
+	      pos += length;
+	   }
+	   return pictures;
+	}
+
 	public FlacAudioFrame getNextAudioPacket() throws IOException {
 	   // TODO How to know how long the frames are?
 	   return new FlacAudioFrame(null);
@@ -89,17 +123,14 @@ public class FlacNativeFile extends FlacFile {
 	}
 
 	/**
-	 * In Reading mode, will close the underlying ogg/flac
-	 *  file and free its resources.
-	 * In Writing mode, will write out the Info and 
-	 *  Comments objects, and then the audio data.
+	 * Closes the underlying file and frees its resources.
+	 * To change the metadata of a native file, use a
+	 *  {@link FlacNativeMetadataEditor} instead.
 	 */
 	public void close() throws IOException {
 	   if(input != null) {
 	      input.close();
 	      input = null;
-	   } else {
-	      throw new RuntimeException("Not supported");
 	   }
 	}
 }
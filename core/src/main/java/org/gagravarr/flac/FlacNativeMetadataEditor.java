@@ -0,0 +1,234 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.flac;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gagravarr.flac.FlacTags.FlacTagsAsMetadata;
+import org.gagravarr.ogg.IOUtils;
+
+/**
+ * Changes the Tags and Pictures of a native FLAC file, much like
+ *  metaflac does. If the new metadata fits in the space used by the
+ *  old metadata and its padding, it is written over them in place,
+ *  with the padding shrinking or growing to fill the gap, so the
+ *  audio never has to move. Only when it doesn't fit must the file
+ *  be re-written, with fresh padding left for next time.
+ * Other metadata blocks are kept exactly as they were.
+ */
+public class FlacNativeMetadataEditor {
+   /** How much padding to leave when re-writing, as flac does */
+   public static final int DEFAULT_PADDING = 8192;
+   /** Block lengths are 24 bit */
+   private static final int MAX_BLOCK_SIZE = 0xffffff;
+
+   private FileChannel channel;
+   private List<FlacMetadataBlock> blocks;
+   private FlacTags tags;
+   private int tagsPosition;
+   private long audioOffset;
+   private int padding = DEFAULT_PADDING;
+
+   /**
+    * Reads the metadata of the given file, which must be open
+    *  for writing too if {@link #writeInPlace()} will be used
+    */
+   public FlacNativeMetadataEditor(FileChannel channel) throws IOException {
+      this.channel = channel;
+
+      byte[] header = readFully(0, 4);
+      if(header[0] != (byte)'f' || header[1] != (byte)'L' ||
+         header[2] != (byte)'a' || header[3] != (byte)'C') {
+         throw new IllegalArgumentException("Not a FLAC file");
+      }
+
+      // Keep everything except padding, and the tags which are
+      //  held separately so they can be edited
+      blocks = new ArrayList<FlacMetadataBlock>();
+      tagsPosition = -1;
+      long pos = 4;
+      boolean last = false;
+      while(!last) {
+         header = readFully(pos, 4);
+         byte type = (byte)(header[0] & 0x7f);
+         last = (header[0] & 0x80) != 0;
+         int length = (int)IOUtils.getInt3BE(header, 1);
+         pos += 4;
+
+         if(type == FlacMetadataBlock.VORBIS_COMMENT && tags == null) {
+            tags = new FlacTagsAsMetadata(readFully(pos, length)).getTags();
+            tagsPosition = blocks.size();
+         } else if(type != FlacMetadataBlock.PADDING) {
+            blocks.add(new FlacUnhandledMetadataBlock(type, readFully(pos, length)));
+         }
+         pos += length;
+      }
+      audioOffset = pos;
+
+      // Tags go after the Info if there weren't any
+      if(tags == null) {
+         tags = new FlacTags();
+         tagsPosition = 1;
+      }
+   }
+
+   public FlacTags getTags() {
+      return tags;
+   }
+   /**
+    * Returns the metadata blocks other than the Tags and
+    *  Padding, which may be changed. The Info must stay first.
+    */
+   public List<FlacMetadataBlock> getBlocks() {
+      return blocks;
+   }
+
+   /**
+    * Adds a Picture, from the contents of a PICTURE metadata block,
+    *  which is the same as a METADATA_BLOCK_PICTURE comment decoded
+    */
+   public void addPicture(byte[] pictureData) {
+      blocks.add(new FlacUnhandledMetadataBlock(FlacMetadataBlock.PICTURE, pictureData));
+   }
+   public void removePictures() {
+      for(int i=blocks.size()-1; i>=0; i--) {
+         if(blocks.get(i).getType() == FlacMetadataBlock.PICTURE) {
+            blocks.remove(i);
+            if(i < tagsPosition) {
+               tagsPosition--;
+            }
+         }
+      }
+   }
+
+   /**
+    * How many bytes of padding to leave after the metadata when
+    *  the file has to be re-written, to allow for later changes
+    */
+   public void setPadding(int padding) {
+      this.padding = padding;
+   }
+   public int getPadding() {
+      return padding;
+   }
+
+   /**
+    * Where the audio frames start, after the metadata and padding
+    */
+   public long getAudioOffset() {
+      return audioOffset;
+   }
+
+   /**
+    * Writes the metadata over the old, if it fits in the space the
+    *  old metadata and padding took up, adjusting the padding to
+    *  take up any space left over.
+    * @return true if written, false if it doesn't fit, in which case
+    *  the file is left untouched and {@link #write(OutputStream)}
+    *  must be used instead
+    */
+   public boolean writeInPlace() throws IOException {
+      long spare = (audioOffset - 4) - getMetadata(-1).length;
+      if(spare != 0 && (spare < 4 || spare - 4 > MAX_BLOCK_SIZE)) {
+         return false;
+      }
+
+      byte[] metadata = getMetadata(spare == 0 ? -1 : (int)(spare - 4));
+      ByteBuffer buffer = ByteBuffer.wrap(metadata);
+      long pos = 4;
+      while(buffer.hasRemaining()) {
+         pos += channel.write(buffer, pos);
+      }
+      return true;
+   }
+
+   /**
+    * Writes a copy of the file with the new metadata, followed by
+    *  the default amount of padding, and then the audio frames
+    *  copied across unchanged
+    * @param out Where to write the copy, which is left open
+    */
+   public void write(OutputStream out) throws IOException {
+      out.write(new byte[] { 'f', 'L', 'a', 'C' });
+      out.write(getMetadata(padding));
+
+      WritableByteChannel target = Channels.newChannel(out);
+      long pos = audioOffset;
+      long remaining = channel.size() - audioOffset;
+      while(remaining > 0) {
+         long copied = channel.transferTo(pos, remaining, target);
+         if(copied <= 0) {
+            throw new IOException("Unable to copy audio from offset " + pos);
+         }
+         pos += copied;
+         remaining -= copied;
+      }
+   }
+
+   /**
+    * Returns the metadata blocks, with the given amount of padding
+    *  after them, or none if -1, flagging the last one as such
+    */
+   private byte[] getMetadata(int paddingSize) throws IOException {
+      tags.write();
+
+      List<byte[]> all = new ArrayList<byte[]>();
+      for(int i=0; i<blocks.size(); i++) {
+         if(i == tagsPosition) {
+            all.add(tags.getData());
+         }
+         all.add(blocks.get(i).getData());
+      }
+      if(tagsPosition >= blocks.size()) {
+         all.add(tags.getData());
+      }
+      if(paddingSize >= 0) {
+         all.add(new FlacPadding(paddingSize).getData());
+      }
+
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      int lastStart = 0;
+      for(byte[] block : all) {
+         if(block.length - 4 > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Metadata block of type " + (block[0] & 0x7f) +
+                  " is " + (block.length-4) + " bytes, over the maximum of " + MAX_BLOCK_SIZE);
+         }
+         lastStart = baos.size();
+         baos.write(block[0] & 0x7f);
+         baos.write(block, 1, block.length-1);
+      }
+
+      byte[] metadata = baos.toByteArray();
+      metadata[lastStart] |= (byte)0x80;
+      return metadata;
+   }
+
+   private byte[] readFully(long pos, int length) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(length);
+      while(buffer.hasRemaining()) {
+         if(channel.read(buffer, pos + buffer.position()) == -1) {
+            throw new IOException("Hit the end of the file reading metadata at " + pos);
+         }
+      }
+      return buffer.array();
+   }
+}
@@ -15,10 +15,10 @@ package org.gagravarr.flac;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -43,12 +43,13 @@ public class FlacOggFile extends FlacFile implements OggAudioHeaders {
 
     private FlacFirstOggPacket firstPacket;
     private List<FlacAudioFrame> writtenAudio;
+    private boolean headersWritten = false;
    
     /**
      * Opens the given file for reading
      */
     public FlacOggFile(File f) throws IOException, FileNotFoundException {
-        this(new OggFile(new FileInputStream(f)));
+        this(new OggFile(new RandomAccessFile(f, "r").getChannel()));
     }
     /**
      * Opens the given file for reading
@@ -78,7 +79,7 @@ public class FlacOggFile extends FlacFile implements OggAudioHeaders {
         info = firstPacket.getInfo();
 
         // Next must be the Tags (Comments)
-        tags = new FlacTags(r.getNextPacketWithSid(sid));
+        tags = new FlacTags(r.getNextPacketWithSid(sid), false, r.getDiagnosticListener());
 
         // Then continue until the last metadata
         otherMetadata = new ArrayList<FlacMetadataBlock>();
@@ -149,10 +150,12 @@ public class FlacOggFile extends FlacFile implements OggAudioHeaders {
     /**
      * Skips the audio data to the next packet with a granule
      *  of at least the given granule position.
-     * Note that skipping backwards is not currently supported!
+     * If the file was opened from a {@link File} (or other seekable
+     *  source), this is a quick bisection search which may also move
+     *  backwards. Otherwise, skipping backwards is not supported!
      */
     public void skipToGranule(long granulePosition) throws IOException {
-        r.skipToGranulePosition(sid, granulePosition);
+        r.seekToGranulePosition(sid, granulePosition);
     }
 
     /**
@@ -174,10 +177,54 @@ public class FlacOggFile extends FlacFile implements OggAudioHeaders {
      *  out. Data won't be written out yet, you
      *  need to call {@link #close()} to do that,
      *  because we assume you'll still be populating
-     *  the Info/Comment/Setup objects
+     *  the Info/Comment/Setup objects.
+     * If {@link #writeHeaders()} has already been
+     *  called, the data is instead written out now,
+     *  and any problem doing so is thrown unchecked.
      */
     public void writeAudioData(FlacAudioFrame data) {
-        writtenAudio.add(data);
+        if(headersWritten) {
+            try {
+                writeAudioPacket(data);
+            } catch(IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            writtenAudio.add(data);
+        }
+    }
+    private void writeAudioPacket(FlacAudioFrame fa) throws IOException {
+        // TODO Track the granule position
+        w.writePacket(new OggPacket(fa.getData()), -1);
+    }
+
+    /**
+     * Writes out the first packet and Tags now, rather
+     *  than waiting for {@link #close()}, along with any
+     *  audio data already buffered. From then on, audio
+     *  data is written out as it is given, a page at a
+     *  time, rather than being held in memory until the
+     *  end. Use this when streaming, or for long files.
+     * The headers can't be changed once this is called.
+     */
+    public void writeHeaders() throws IOException {
+        if(w == null) {
+            throw new IllegalStateException("Not in write mode");
+        }
+        if(headersWritten) {
+            return;
+        }
+        w.bufferPacket(firstPacket.write(), true);
+        w.bufferPacket(tags.write(), false);
+        // TODO Write the others
+        //w.bufferPacket(setup.write(), true);
+        w.flush();
+
+        for(FlacAudioFrame fa : writtenAudio) {
+            writeAudioPacket(fa);
+        }
+        writtenAudio.clear();
+        headersWritten = true;
     }
 	
     /**
@@ -193,28 +240,7 @@ public class FlacOggFile extends FlacFile implements OggAudioHeaders {
             ogg = null;
         }
         if(w != null) {
-            w.bufferPacket(firstPacket.write(), true);
-            w.bufferPacket(tags.write(), false);
-            // TODO Write the others
-            //w.bufferPacket(setup.write(), true);
-
-            long lastGranule = 0;
-            for(FlacAudioFrame fa : writtenAudio) {
-                // Update the granule position as we go
-                // TODO Track this
-//              if(fa.getGranulePosition() >= 0 &&
-//                 lastGranule != fa.getGranulePosition()) {
-//                 w.flush();
-//                 lastGranule = fa.getGranulePosition();
-//                 w.setGranulePosition(lastGranule);
-//              }
-
-                // Write the data, flushing if needed
-                w.bufferPacket(new OggPacket(fa.getData()));
-                if(w.getSizePendingFlush() > 16384) {
-                    w.flush();
-                }
-            }
+            writeHeaders();
 
             w.close();
             w = null;
@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.flac;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Space left empty after the other metadata, so that it can
+ *  grow later without the audio having to be moved.
+ * Only the size is held, not the zeros themselves.
+ */
+public class FlacPadding extends FlacMetadataBlock {
+   private int size;
+
+   public FlacPadding(int size) {
+      this(PADDING, size);
+   }
+   protected FlacPadding(byte type, int size) {
+      super(type);
+      this.size = size;
+   }
+
+   /**
+    * How many bytes of padding there are, excluding
+    *  the block header
+    */
+   public int getSize() {
+      return size;
+   }
+
+   protected void write(OutputStream out) throws IOException {
+      out.write(new byte[size]);
+   }
+}
@@ -0,0 +1,300 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.flac;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.gagravarr.ogg.Base64InputStream;
+import org.gagravarr.ogg.IOUtils;
+
+/**
+ * An embedded picture, such as the cover art, either from a FLAC
+ *  PICTURE metadata block, or from the same structure base64 encoded
+ *  into a METADATA_BLOCK_PICTURE comment in Vorbis or Opus.
+ * Only the details of the picture are read up-front. The image
+ *  itself is streamed from wherever the picture is held each time
+ *  {@link #getImageData()} is called, decoding any base64 as it goes,
+ *  so it never needs to be in memory all at once.
+ */
+public class FlacPicture extends FlacMetadataBlock {
+   public static final int TYPE_OTHER = 0;
+   public static final int TYPE_FILE_ICON = 1;
+   public static final int TYPE_OTHER_FILE_ICON = 2;
+   public static final int TYPE_FRONT_COVER = 3;
+   public static final int TYPE_BACK_COVER = 4;
+   public static final int TYPE_LEAFLET = 5;
+   public static final int TYPE_MEDIA = 6;
+   public static final int TYPE_LEAD_ARTIST = 7;
+   public static final int TYPE_ARTIST = 8;
+
+   private int pictureType;
+   private String mimeType;
+   private String description;
+   private int width;
+   private int height;
+   private int colourDepth;
+   private int numColours;
+   private long imageLength;
+
+   /** How many bytes come before the image itself */
+   private int headerLength;
+   private PictureSource source;
+
+   /**
+    * Reads the picture from the contents of a PICTURE block
+    */
+   public FlacPicture(byte[] data) throws IOException {
+      this(PICTURE, data);
+   }
+   protected FlacPicture(byte type, final byte[] data) throws IOException {
+      this(type, new PictureSource() {
+         public InputStream open() {
+            return new ByteArrayInputStream(data);
+         }
+      });
+   }
+
+   /**
+    * Reads the picture from the base64 encoded value of a
+    *  METADATA_BLOCK_PICTURE comment
+    */
+   public static FlacPicture fromBase64(final CharSequence value) throws IOException {
+      return new FlacPicture(PICTURE, new PictureSource() {
+         public InputStream open() {
+            return new Base64InputStream(value);
+         }
+      });
+   }
+   /**
+    * Reads the picture from the base64 encoded value of a
+    *  METADATA_BLOCK_PICTURE comment, held as UTF-8 at the given
+    *  place in the data, eg straight from the comments packet
+    */
+   public static FlacPicture fromBase64(final byte[] data, final int offset, final int length) throws IOException {
+      return new FlacPicture(PICTURE, new PictureSource() {
+         public InputStream open() {
+            return new Base64InputStream(new ByteArrayInputStream(data, offset, length));
+         }
+      });
+   }
+   /**
+    * Reads the picture from the contents of a PICTURE block at the
+    *  given place in a file, reading the image from the file as needed
+    */
+   public static FlacPicture fromChannel(final FileChannel channel, final long offset, final long length) throws IOException {
+      return new FlacPicture(PICTURE, new PictureSource() {
+         public InputStream open() {
+            return new ChannelInputStream(channel, offset, offset + length);
+         }
+      });
+   }
+
+   private FlacPicture(byte type, PictureSource source) throws IOException {
+      super(type);
+      this.source = source;
+
+      InputStream inp = source.open();
+      try {
+         pictureType = readInt(inp);
+         int mimeLength = readInt(inp);
+         mimeType = readString(inp, mimeLength);
+         int descriptionLength = readInt(inp);
+         description = readString(inp, descriptionLength);
+         width = readInt(inp);
+         height = readInt(inp);
+         colourDepth = readInt(inp);
+         numColours = readInt(inp);
+         imageLength = readInt(inp) & 0xffffffffL;
+         headerLength = 32 + mimeLength + descriptionLength;
+      } finally {
+         inp.close();
+      }
+   }
+   private static int readInt(InputStream inp) throws IOException {
+      byte[] b = new byte[4];
+      IOUtils.readFully(inp, b);
+      return (int)IOUtils.getInt4BE(b);
+   }
+   private static String readString(InputStream inp, int length) throws IOException {
+      if(length < 0 || length > 0xffffff) {
+         throw new IOException("Invalid picture string length " + length);
+      }
+      byte[] b = new byte[length];
+      IOUtils.readFully(inp, b);
+      return IOUtils.getUTF8(b, 0, length);
+   }
+
+   /**
+    * What the picture is of, eg {@link #TYPE_FRONT_COVER}
+    */
+   public int getPictureType() {
+      return pictureType;
+   }
+   public String getMimeType() {
+      return mimeType;
+   }
+   public String getDescription() {
+      return description;
+   }
+   public int getWidth() {
+      return width;
+   }
+   public int getHeight() {
+      return height;
+   }
+   public int getColourDepth() {
+      return colourDepth;
+   }
+   /**
+    * For indexed colour pictures such as GIFs, how many colours
+    *  are used, otherwise zero
+    */
+   public int getNumColours() {
+      return numColours;
+   }
+   /**
+    * How many bytes the image is, once decoded
+    */
+   public long getImageLength() {
+      return imageLength;
+   }
+
+   /**
+    * Returns a new stream of the image itself, read from where the
+    *  picture is held, which the caller must close
+    */
+   public InputStream getImageData() throws IOException {
+      InputStream inp = source.open();
+      IOUtils.skipFully(inp, headerLength);
+      return new LimitedInputStream(inp, imageLength);
+   }
+
+   /**
+    * Writes out the picture exactly as it was held, rather than
+    *  from the details read, so that any trailing data or wrong
+    *  image length is kept as-is
+    */
+   @Override
+   protected void write(OutputStream out) throws IOException {
+      InputStream inp = source.open();
+      try {
+         byte[] buffer = new byte[8192];
+         int read;
+         while((read = inp.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+         }
+      } finally {
+         inp.close();
+      }
+   }
+
+   /**
+    * Where the picture is held, which is read from the start
+    *  each time the image is wanted
+    */
+   private static interface PictureSource {
+      public InputStream open() throws IOException;
+   }
+
+   /**
+    * Reads part of a file, without moving the channel's position,
+    *  so several pictures may be read from it at once
+    */
+   private static class ChannelInputStream extends InputStream {
+      private FileChannel channel;
+      private long position;
+      private long end;
+
+      private ChannelInputStream(FileChannel channel, long start, long end) {
+         this.channel = channel;
+         this.position = start;
+         this.end = end;
+      }
+
+      @Override
+      public int read() throws IOException {
+         byte[] b = new byte[1];
+         return (read(b, 0, 1) == -1 ? -1 : (b[0] & 0xff));
+      }
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if(position >= end) {
+            return -1;
+         }
+         int toRead = (int)Math.min(len, end - position);
+         int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+         if(read > 0) {
+            position += read;
+         }
+         return read;
+      }
+      @Override
+      public long skip(long n) {
+         long skipped = Math.max(0, Math.min(n, end - position));
+         position += skipped;
+         return skipped;
+      }
+   }
+
+   /**
+    * Stops reading once the image is finished
+    */
+   private static class LimitedInputStream extends FilterInputStream {
+      private long remaining;
+
+      private LimitedInputStream(InputStream inp, long length) {
+         super(inp);
+         this.remaining = length;
+      }
+
+      @Override
+      public int read() throws IOException {
+         if(remaining <= 0) {
+            return -1;
+         }
+         int b = super.read();
+         if(b != -1) {
+            remaining--;
+         }
+         return b;
+      }
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if(remaining <= 0) {
+            return -1;
+         }
+         int read = super.read(b, off, (int)Math.min(len, remaining));
+         if(read > 0) {
+            remaining -= read;
+         }
+         return read;
+      }
+      @Override
+      public long skip(long n) throws IOException {
+         long skipped = super.skip(Math.min(n, remaining));
+         remaining -= skipped;
+         return skipped;
+      }
+      @Override
+      public int available() throws IOException {
+         return (int)Math.min(super.available(), remaining);
+      }
+   }
+}
@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import org.gagravarr.ogg.IOUtils;
+import org.gagravarr.ogg.OggDiagnosticListener;
 import org.gagravarr.ogg.OggPacket;
 import org.gagravarr.ogg.audio.OggAudioTagsHeader;
 import org.gagravarr.vorbis.VorbisComments;
@@ -28,7 +29,20 @@ import org.gagravarr.vorbis.VorbisStyleComments;
  */
 public class FlacTags extends VorbisStyleComments implements OggAudioTagsHeader {
    public FlacTags(OggPacket packet) {
-      super(packet, 4);
+      this(packet, false);
+   }
+   /**
+    * @param lazyParsing Should comments only be decoded when asked for?
+    */
+   public FlacTags(OggPacket packet, boolean lazyParsing) {
+      this(packet, lazyParsing, null);
+   }
+   /**
+    * @param lazyParsing Should comments only be decoded when asked for?
+    * @param diagnostics Where to report malformed comments, or null for the default
+    */
+   public FlacTags(OggPacket packet, boolean lazyParsing, OggDiagnosticListener diagnostics) {
+      super(packet, 4, lazyParsing, diagnostics);
       
       // Verify the type
       byte type = getData()[0];
@@ -56,12 +70,13 @@ public class FlacTags extends VorbisStyleComments implements OggAudioTagsHeader
        return false;
    }
    /**
-    * Type plus three byte length
+    * Type plus three byte length, which excludes
+    *  the type and length themselves
     */
    @Override
    public void populateMetadataHeader(byte[] b, int dataLength) {
       b[0] = FlacMetadataBlock.VORBIS_COMMENT;
-      IOUtils.putInt3BE(b, 1, dataLength);
+      IOUtils.putInt3BE(b, 1, dataLength - 4);
    }
    @Override
    protected void populateMetadataFooter(OutputStream out) {
@@ -0,0 +1,204 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decodes base64 as it is read, a block at a time, so that large
+ *  encoded values such as embedded pictures never need to be held
+ *  decoded in full. Whitespace is skipped, and the final padding
+ *  may be left off.
+ */
+public class Base64InputStream extends InputStream {
+    private static final int EOF = -1;
+    private static final int PAD = -2;
+    private static final int WHITESPACE = -3;
+    private static final int INVALID = -4;
+
+    private static final byte[] DECODE = new byte[128];
+    static {
+        Arrays.fill(DECODE, (byte)INVALID);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for(int i=0; i<alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = (byte)i;
+        }
+        DECODE['='] = PAD;
+        DECODE[' '] = WHITESPACE;
+        DECODE['\t'] = WHITESPACE;
+        DECODE['\r'] = WHITESPACE;
+        DECODE['\n'] = WHITESPACE;
+    }
+
+    private InputStream source;
+    private byte[] encoded = new byte[4096];
+    private int encodedPos;
+    private int encodedLen;
+    private byte[] decoded = new byte[3];
+    private int decodedPos;
+    private int decodedLen;
+    private boolean finished;
+
+    /**
+     * Decodes the base64 characters read from the given stream
+     */
+    public Base64InputStream(InputStream source) {
+        this.source = source;
+    }
+    /**
+     * Decodes the base64 characters of the given string
+     */
+    public Base64InputStream(CharSequence source) {
+        this(new CharSequenceInputStream(source));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(decodedPos == decodedLen && !decodeNext()) {
+            return -1;
+        }
+        return decoded[decodedPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        int read = 0;
+        while(read < len) {
+            if(decodedPos == decodedLen && !decodeNext()) {
+                break;
+            }
+            int toCopy = Math.min(len - read, decodedLen - decodedPos);
+            System.arraycopy(decoded, decodedPos, b, off + read, toCopy);
+            decodedPos += toCopy;
+            read += toCopy;
+        }
+        return (read == 0 ? -1 : read);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return decodedLen - decodedPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * Decodes the next group of four characters into up to
+     *  three bytes, returning false if there are no more
+     */
+    private boolean decodeNext() throws IOException {
+        if(finished) {
+            return false;
+        }
+
+        int a = nextValue();
+        if(a == EOF || a == PAD) {
+            finished = true;
+            return false;
+        }
+        int b = nextValue();
+        if(b < 0) {
+            throw new IOException("Truncated base64, only one character in the final group");
+        }
+        int c = nextValue();
+        int d = (c < 0 ? c : nextValue());
+
+        decoded[0] = (byte)((a << 2) | (b >> 4));
+        decodedLen = 1;
+        if(c >= 0) {
+            decoded[1] = (byte)((b << 4) | (c >> 2));
+            decodedLen = 2;
+            if(d >= 0) {
+                decoded[2] = (byte)((c << 6) | d);
+                decodedLen = 3;
+            }
+        }
+        decodedPos = 0;
+
+        if(decodedLen < 3) {
+            finished = true;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the value of the next base64 character, or
+     *  {@link #PAD} or {@link #EOF}, skipping whitespace
+     */
+    private int nextValue() throws IOException {
+        while(true) {
+            if(encodedPos == encodedLen) {
+                encodedLen = source.read(encoded, 0, encoded.length);
+                encodedPos = 0;
+                if(encodedLen <= 0) {
+                    encodedLen = 0;
+                    return EOF;
+                }
+            }
+
+            int c = encoded[encodedPos++] & 0xff;
+            int value = (c < 128 ? DECODE[c] : INVALID);
+            if(value == WHITESPACE) {
+                continue;
+            }
+            if(value == INVALID) {
+                throw new IOException("Invalid base64 character 0x" + Integer.toHexString(c));
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Reads the characters of a string, which for base64 are
+     *  all ASCII, as bytes
+     */
+    private static class CharSequenceInputStream extends InputStream {
+        private CharSequence chars;
+        private int pos;
+
+        private CharSequenceInputStream(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int read() {
+            if(pos == chars.length()) {
+                return -1;
+            }
+            return Math.min(chars.charAt(pos++), 0xff);
+        }
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(len == 0) {
+                return 0;
+            }
+            if(pos == chars.length()) {
+                return -1;
+            }
+            int toRead = Math.min(len, chars.length() - pos);
+            for(int i=0; i<toRead; i++) {
+                b[off+i] = (byte)Math.min(chars.charAt(pos++), 0xff);
+            }
+            return toRead;
+        }
+    }
+}
@@ -13,9 +13,18 @@
  */
 package org.gagravarr.ogg;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Calculates the Ogg flavour of CRC32, which uses the 0x04c11db7
+ *  polynomial, non-reflected, with no initial value or final xor.
+ * Long runs of data are processed 8 bytes at a time ("slicing-by-8"),
+ *  using a set of 8 pre-computed tables.
+ */
 public class CRCUtils {
     protected static final int CRC_POLYNOMIAL = 0x04c11db7;
     private static int[] CRC_TABLE = new int[256];
+    private static int[][] CRC_TABLES = new int[8][];
 
     static {
         int crc;
@@ -30,19 +39,90 @@ public class CRCUtils {
             }
             CRC_TABLE[i] = crc;
         }
+
+        // Table n gives the effect of a byte followed by n zero bytes
+        CRC_TABLES[0] = CRC_TABLE;
+        for(int t=1; t<8; t++) {
+            CRC_TABLES[t] = new int[256];
+            for(int i=0; i<256; i++) {
+                crc = CRC_TABLES[t-1][i];
+                CRC_TABLES[t][i] = (crc << 8) ^ CRC_TABLE[(crc >>> 24) & 0xff];
+            }
+        }
     }
 
     public static int getCRC(byte[] data) {
         return getCRC(data, 0);
     }
     public static int getCRC(byte[] data, int previous) {
+        return getCRC(data, 0, data.length, previous);
+    }
+    /**
+     * Calculates the CRC of the given range of the data, carrying
+     *  on from the previous CRC (use 0 if this is the first range)
+     */
+    public static int getCRC(byte[] data, int offset, int length, int previous) {
+        int crc = previous;
+        int i = offset;
+        int end = offset + length;
+
+        final int[] t0 = CRC_TABLES[0], t1 = CRC_TABLES[1],
+                    t2 = CRC_TABLES[2], t3 = CRC_TABLES[3],
+                    t4 = CRC_TABLES[4], t5 = CRC_TABLES[5],
+                    t6 = CRC_TABLES[6], t7 = CRC_TABLES[7];
+
+        // Do as much as we can in 8 byte chunks
+        int end8 = end - 7;
+        while(i < end8) {
+            crc ^= ((data[i] & 0xff) << 24) | ((data[i+1] & 0xff) << 16) |
+                   ((data[i+2] & 0xff) << 8) | (data[i+3] & 0xff);
+            crc = t7[(crc >>> 24)] ^ t6[(crc >>> 16) & 0xff] ^
+                  t5[(crc >>> 8) & 0xff] ^ t4[crc & 0xff] ^
+                  t3[data[i+4] & 0xff] ^ t2[data[i+5] & 0xff] ^
+                  t1[data[i+6] & 0xff] ^ t0[data[i+7] & 0xff];
+            i += 8;
+        }
+
+        // Then the remainder a byte at a time
+        for(; i<end; i++) {
+            crc = (crc << 8) ^ t0[ ((crc>>>24) & 0xff) ^ (data[i] & 0xff) ];
+        }
+
+        return crc;
+    }
+
+    /**
+     * Calculates the CRC of the remaining data in the buffer, between
+     *  its position and limit, carrying on from the previous CRC.
+     * The position of the buffer is not changed.
+     */
+    public static int getCRC(ByteBuffer data, int previous) {
+        if(data.hasArray()) {
+            return getCRC(data.array(), data.arrayOffset() + data.position(),
+                          data.remaining(), previous);
+        }
+
         int crc = previous;
-        int a,b;
+        int i = data.position();
+        int end = data.limit();
 
-        for(int i=0; i<data.length; i++) {
-            a = crc << 8;
-            b = CRC_TABLE[ ((crc>>>24) & 0xff) ^ (data[i] & 0xff) ];
-            crc = a ^ b;
+        final int[] t0 = CRC_TABLES[0], t1 = CRC_TABLES[1],
+                    t2 = CRC_TABLES[2], t3 = CRC_TABLES[3],
+                    t4 = CRC_TABLES[4], t5 = CRC_TABLES[5],
+                    t6 = CRC_TABLES[6], t7 = CRC_TABLES[7];
+
+        int end8 = end - 7;
+        while(i < end8) {
+            crc ^= ((data.get(i) & 0xff) << 24) | ((data.get(i+1) & 0xff) << 16) |
+                   ((data.get(i+2) & 0xff) << 8) | (data.get(i+3) & 0xff);
+            crc = t7[(crc >>> 24)] ^ t6[(crc >>> 16) & 0xff] ^
+                  t5[(crc >>> 8) & 0xff] ^ t4[crc & 0xff] ^
+                  t3[data.get(i+4) & 0xff] ^ t2[data.get(i+5) & 0xff] ^
+                  t1[data.get(i+6) & 0xff] ^ t0[data.get(i+7) & 0xff];
+            i += 8;
+        }
+        for(; i<end; i++) {
+            crc = (crc << 8) ^ t0[ ((crc>>>24) & 0xff) ^ (data.get(i) & 0xff) ];
         }
 
         return crc;
@@ -43,6 +43,23 @@ public class IOUtils {
             read += r;
         }
     }
+    /**
+     * Skips the given number of bytes, reading them if the
+     *  stream won't skip
+     */
+    public static void skipFully(InputStream inp, long length) throws IOException {
+        long remaining = length;
+        while(remaining > 0) {
+            long skipped = inp.skip(remaining);
+            if(skipped <= 0) {
+                if(inp.read() == -1) {
+                    throw new IOException("Asked to skip " + length + " bytes but hit EoF at " + (length-remaining));
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
 
 
     public static int toInt(byte b) {
@@ -136,12 +153,11 @@ public class IOUtils {
        return (i4 << 32) + (i3 << 24) + (i2 << 16) + (i1 << 8) + (i0 << 0);
    }
    public static long getInt(int i0, int i1, int i2, int i3, int i4, int i5, int i6, int i7) {
-       // Special check for all 0xff, to avoid overflowing long
-       if (i0 == 255 && i1 == 255 && i3 == 255 && i4 == 255 && i5 == 255 && i6 == 255 && i7 == 255) return -1l;
-       // Otherwise normal convert
-       return (long)(i7 << 56) + (long)(i6 << 48) +
-              (long)(i5 << 40) + (long)(i4 << 32) +
-              (i3 << 24) + (i2 << 16) + (i1 << 8) + (i0 << 0);
+       // Shift as longs, so that large values (eg file offsets
+       //  beyond 2gb) come through correctly, and all 0xff is -1
+       return ((long)i7 << 56) + ((long)i6 << 48) +
+              ((long)i5 << 40) + ((long)i4 << 32) +
+              ((long)i3 << 24) + (i2 << 16) + (i1 << 8) + (i0 << 0);
    }
 	
 	
@@ -0,0 +1,196 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads the packets of a file on the calling thread, and hands
+ *  each stream's packets to its {@link OggStreamReader}s on a
+ *  thread of its own, so that the streams of a multiplexed file,
+ *  such as video and audio, can be processed at the same time.
+ * Each stream's packets are passed over in order through a
+ *  bounded queue, so if one stream's readers fall behind, the
+ *  reading of the file waits for them to catch up.
+ * {@link OggStreamListener#processNewStream(int, byte[])} is called
+ *  on the reading thread, and
+ *  {@link OggStreamListener#processStreamEnd(int)} on the stream's
+ *  thread once all its packets are processed.
+ */
+public class OggDemuxer {
+    /**
+     * How many packets each stream may have waiting by default
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 64;
+    /**
+     * Marks the end of a stream's packets
+     */
+    private static final OggPacket END = new OggPacket(new byte[0]);
+
+    private OggPacketReader reader;
+    private OggStreamListener listener;
+    private ThreadFactory threadFactory;
+    private int queueSize;
+
+    public OggDemuxer(OggPacketReader reader, OggStreamListener listener) {
+        this(reader, listener, Executors.defaultThreadFactory(), DEFAULT_QUEUE_SIZE);
+    }
+    /**
+     * @param threadFactory Creates the thread for each stream
+     * @param queueSize How many packets each stream may have waiting
+     */
+    public OggDemuxer(OggPacketReader reader, OggStreamListener listener,
+                      ThreadFactory threadFactory, int queueSize) {
+        this.reader = reader;
+        this.listener = listener;
+        this.threadFactory = threadFactory;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Reads all the packets, and waits for every stream's
+     *  readers to finish processing them.
+     * If any reader fails, the remaining packets of its stream
+     *  are skipped, and the failure is re-thrown at the end.
+     */
+    public void demux() throws IOException {
+        Map<Integer,StreamWorker> workers = new HashMap<Integer, StreamWorker>();
+        List<StreamWorker> all = new ArrayList<StreamWorker>();
+
+        try {
+            OggPacket packet = null;
+            while( (packet = reader.getNextPacket()) != null ) {
+                int sid = packet.getSid();
+                StreamWorker worker = workers.get(sid);
+
+                if(packet.isBeginningOfStream()) {
+                    OggStreamReader[] streams = listener.processNewStream(sid, packet.getData());
+                    if(streams != null && streams.length > 0) {
+                        worker = new StreamWorker(sid, streams);
+                        workers.put(sid, worker);
+                        all.add(worker);
+                        threadFactory.newThread(worker).start();
+                    }
+                } else if(worker != null) {
+                    worker.add(packet);
+                }
+
+                if(packet.isEndOfStream()) {
+                    if(worker != null) {
+                        // The stream's thread will report the end once done
+                        worker.add(END);
+                        workers.remove(sid);
+                    } else {
+                        listener.processStreamEnd(sid);
+                    }
+                }
+            }
+        } finally {
+            // Let any un-ended streams know there's nothing more
+            for(StreamWorker worker : workers.values()) {
+                worker.add(END);
+            }
+        }
+
+        // Wait for everything to be processed
+        for(StreamWorker worker : all) {
+            worker.waitForEnd();
+        }
+        for(StreamWorker worker : all) {
+            if(worker.failure != null) {
+                if(worker.failure instanceof RuntimeException) {
+                    throw (RuntimeException)worker.failure;
+                }
+                if(worker.failure instanceof Error) {
+                    throw (Error)worker.failure;
+                }
+                IOException e = new IOException("Processing stream " + worker.sid + " failed");
+                e.initCause(worker.failure);
+                throw e;
+            }
+        }
+    }
+
+    private class StreamWorker implements Runnable {
+        private int sid;
+        private OggStreamReader[] streams;
+        private BlockingQueue<OggPacket> queue;
+        private boolean ended = false;
+        private volatile Throwable failure;
+
+        private StreamWorker(int sid, OggStreamReader[] streams) {
+            this.sid = sid;
+            this.streams = streams;
+            this.queue = new ArrayBlockingQueue<OggPacket>(queueSize);
+        }
+
+        private void add(OggPacket packet) throws IOException {
+            try {
+                queue.put(packet);
+            } catch(InterruptedException e) {
+                throw new InterruptedIOException("Interrupted waiting for stream " + sid);
+            }
+        }
+
+        public void run() {
+            try {
+                OggPacket packet;
+                while( (packet = queue.take()) != END ) {
+                    if(failure != null) {
+                        // Keep the queue moving, but do nothing more
+                        continue;
+                    }
+                    try {
+                        for(OggStreamReader r : streams) {
+                            r.processPacket(packet);
+                        }
+                    } catch(Throwable t) {
+                        failure = t;
+                    }
+                }
+                if(failure == null) {
+                    listener.processStreamEnd(sid);
+                }
+            } catch(InterruptedException e) {
+                failure = e;
+            } catch(Throwable t) {
+                failure = t;
+            } finally {
+                synchronized(this) {
+                    ended = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized void waitForEnd() throws IOException {
+            while(!ended) {
+                try {
+                    wait();
+                } catch(InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted waiting for stream " + sid);
+                }
+            }
+        }
+    }
+}
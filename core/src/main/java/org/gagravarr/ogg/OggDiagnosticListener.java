@@ -0,0 +1,51 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+/**
+ * Implement this to be told about problems found in a file
+ *  which could be recovered from, such as junk between pages
+ *  or pages with invalid checksums.
+ * Set it on an {@link OggFile} or {@link OggPacketReader}, or make
+ *  it the default with {@link OggDiagnostics#setDefault(OggDiagnosticListener)}.
+ * Calls are made on the reading thread, so should be cheap, and
+ *  if readers are used on several threads at once, thread safe.
+ */
+public interface OggDiagnosticListener {
+    /**
+     * Called when bytes which weren't part of a page had to be
+     *  skipped over to find the next page
+     * @param offset Where in the file the junk started
+     * @param bytes How many bytes were skipped
+     */
+    public void junkSkipped(long offset, long bytes);
+
+    /**
+     * Called when a page is read whose checksum doesn't match its
+     *  contents, but which is used anyway
+     */
+    public void invalidChecksum(long offset, int sid, int sequenceNumber);
+
+    /**
+     * Called when a non-audio packet is found, and skipped, in the
+     *  middle of an audio stream
+     */
+    public void nonAudioPacketSkipped(int sid, OggStreamPacket packet);
+
+    /**
+     * Called when a comment isn't of the form name=value, so
+     *  is ignored
+     */
+    public void malformedComment(String comment);
+}
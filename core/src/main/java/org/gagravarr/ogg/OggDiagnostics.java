@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link OggDiagnosticListener} which counts the problems found,
+ *  and optionally also prints warnings about them.
+ * Unless another is set, problems are counted by a shared default
+ *  instance, which doesn't print anything. For the old behaviour
+ *  of warning on the console, set the default to
+ *  <code>new OggDiagnostics(System.err)</code>
+ */
+public class OggDiagnostics implements OggDiagnosticListener {
+    private static volatile OggDiagnosticListener defaultListener = new OggDiagnostics();
+
+    private PrintStream warnings;
+    private AtomicLong junkSkips = new AtomicLong();
+    private AtomicLong junkBytes = new AtomicLong();
+    private AtomicLong invalidChecksums = new AtomicLong();
+    private AtomicLong skippedPackets = new AtomicLong();
+    private AtomicLong malformedComments = new AtomicLong();
+
+    /**
+     * Creates a listener which only counts problems
+     */
+    public OggDiagnostics() {
+        this(null);
+    }
+    /**
+     * Creates a listener which counts problems, and prints
+     *  a warning for each to the given stream
+     */
+    public OggDiagnostics(PrintStream warnings) {
+        this.warnings = warnings;
+    }
+
+    /**
+     * Returns the listener used by readers which haven't been
+     *  given one of their own
+     */
+    public static OggDiagnosticListener getDefault() {
+        return defaultListener;
+    }
+    /**
+     * Sets the listener used by readers which haven't been given
+     *  one of their own, or null to go back to just counting
+     */
+    public static void setDefault(OggDiagnosticListener listener) {
+        if(listener == null) {
+            listener = new OggDiagnostics();
+        }
+        defaultListener = listener;
+    }
+
+    public void junkSkipped(long offset, long bytes) {
+        junkSkips.incrementAndGet();
+        junkBytes.addAndGet(bytes);
+        if(warnings != null) {
+            warnings.println("Warning - had to skip " + bytes + " bytes of junk data before finding the next packet header");
+        }
+    }
+
+    public void invalidChecksum(long offset, int sid, int sequenceNumber) {
+        invalidChecksums.incrementAndGet();
+        if(warnings != null) {
+            warnings.println("Warning - invalid checksum on page " +
+                             sequenceNumber + " of stream " +
+                             Integer.toHexString(sid) + " (" + sid + ")");
+        }
+    }
+
+    public void nonAudioPacketSkipped(int sid, OggStreamPacket packet) {
+        skippedPackets.incrementAndGet();
+        if(warnings != null) {
+            warnings.println("Skipping non audio packet " + packet + " mid audio stream");
+        }
+    }
+
+    public void malformedComment(String comment) {
+        malformedComments.incrementAndGet();
+        if(warnings != null) {
+            warnings.println("Warning - unable to parse comment '" + comment + "'");
+        }
+    }
+
+    /**
+     * How many times junk had to be skipped to find a page
+     */
+    public long getJunkSkipCount() {
+        return junkSkips.get();
+    }
+    /**
+     * How many bytes of junk were skipped in total
+     */
+    public long getJunkBytes() {
+        return junkBytes.get();
+    }
+    public long getInvalidChecksumCount() {
+        return invalidChecksums.get();
+    }
+    public long getSkippedPacketCount() {
+        return skippedPackets.get();
+    }
+    public long getMalformedCommentCount() {
+        return malformedComments.get();
+    }
+
+    /**
+     * Sets all the counts back to zero
+     */
+    public void reset() {
+        junkSkips.set(0);
+        junkBytes.set(0);
+        invalidChecksums.set(0);
+        skippedPackets.set(0);
+        malformedComments.set(0);
+    }
+
+    public String toString() {
+        return "Ogg Diagnostics - " + junkBytes.get() + " junk bytes in " +
+               junkSkips.get() + " places, " + invalidChecksums.get() + " invalid checksums, " +
+               skippedPackets.get() + " skipped packets, " +
+               malformedComments.get() + " malformed comments";
+    }
+}
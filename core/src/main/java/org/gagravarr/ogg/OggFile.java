@@ -14,13 +14,27 @@
 package org.gagravarr.ogg;
 
 import java.io.Closeable;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This class takes care of reading and writing
@@ -28,8 +42,20 @@ import java.util.Set;
  */
 public class OggFile implements Closeable {
     private InputStream inp;
+    private FileChannel channel;
     private OutputStream out;
+    private WritableByteChannel outChannel;
+    private OggPacketReader reader;
+    private OggPageIndex index;
+    private OggDiagnosticListener diagnostics;
+    private OggMetrics metrics;
     private boolean writing = true;
+    private OggPagingPolicy pagingPolicy = new OggPagingPolicy();
+    private boolean autoFlush = false;
+
+    /** Re-used for writing each page's header */
+    private byte[] headerBytes;
+    private ByteBuffer[] pageBuffers;
 
     private Set<Integer> seenSIDs = new HashSet<Integer>();
 
@@ -41,6 +67,22 @@ public class OggFile implements Closeable {
     public OggFile(OutputStream output) {
         this.out = output;
         this.writing = true;
+
+        // Files are written via their channel, to avoid copying
+        if(output instanceof FileOutputStream) {
+            this.outChannel = ((FileOutputStream)output).getChannel();
+        }
+    }
+    /**
+     * Opens a channel, such as a socket, for writing.
+     * Call {@link #getPacketWriter()} to begin writing your data.
+     * (Note that a {@link FileChannel} given as such is opened for
+     *  reading, to write to a file use a {@link FileOutputStream},
+     *  which will be written to via its channel)
+     */
+    public OggFile(WritableByteChannel output) {
+        this.outChannel = output;
+        this.writing = true;
     }
 
     /**
@@ -54,6 +96,18 @@ public class OggFile implements Closeable {
         this.writing = false;
     }
 
+    /**
+     * Opens a file for random-access reading, with the
+     *  data memory mapped as it is read.
+     * Call {@link #getPacketReader()} to begin reading the
+     *  file from the start, or {@link #getPacketReaderAt(long)}
+     *  to begin from elsewhere.
+     */
+    public OggFile(FileChannel channel) {
+        this.channel = channel;
+        this.writing = false;
+    }
+
     /**
      * Opens a file for reading in non-blocking
      *  (event) mode.
@@ -85,6 +139,19 @@ public class OggFile implements Closeable {
             }
         }
     }
+    /**
+     * Opens a file for reading in non-blocking
+     *  (event) mode, with the packets of each stream
+     *  processed on their own thread.
+     * Will begin processing the file immediately, and
+     *  return once every stream has been processed.
+     * @see OggDemuxer
+     */
+    public OggFile(InputStream input, OggStreamListener listener, ThreadFactory threads) throws IOException {
+        this(input);
+        new OggDemuxer(getPacketReader(), listener, threads,
+                       OggDemuxer.DEFAULT_QUEUE_SIZE).demux();
+    }
 
 
     /**
@@ -95,20 +162,195 @@ public class OggFile implements Closeable {
     public void close() throws IOException {
         if(inp != null)
             inp.close();
+        if(channel != null)
+            channel.close();
         if(out != null)
             out.close();
+        else if(outChannel != null)
+            outChannel.close();
     }
 
     /**
      * Returns a reader that will allow you to read packets
      *  from the file, across all Logical Bit Streams, 
      *  in the order that they occur.
+     * As the reader buffers data from the underlying stream,
+     *  the same reader is returned on each call.
      */
     public OggPacketReader getPacketReader() {
-        if(writing || inp == null) {
-            throw new IllegalStateException("Can only read from a file opened with an InputStream");
+        if(writing || (inp == null && channel == null)) {
+            throw new IllegalStateException("Can only read from a file opened with an InputStream or FileChannel");
+        }
+        if(reader == null) {
+            if(channel != null) {
+                reader = new OggPacketReader(channel, index);
+            } else {
+                reader = new OggPacketReader(inp);
+            }
+            configure(reader);
+        }
+        return reader;
+    }
+
+    /**
+     * Returns a new reader, independent of any others, which
+     *  will read packets from the first page found at or after
+     *  the given offset in the file.
+     * Only available for files opened with a {@link FileChannel}.
+     */
+    public OggPacketReader getPacketReaderAt(long offset) throws IOException {
+        if(writing || channel == null) {
+            throw new IllegalStateException("Can only read from arbitrary offsets of a file opened with a FileChannel");
+        }
+        OggPacketReader r = new OggPacketReader(channel, index);
+        configure(r);
+        if(offset > 0) {
+            r.seek(offset);
+        }
+        return r;
+    }
+
+    /**
+     * Sets the listener to be told about problems found by this
+     *  file's readers, such as junk between pages, or null to use
+     *  {@link OggDiagnostics#getDefault()}
+     */
+    public void setDiagnosticListener(OggDiagnosticListener diagnostics) {
+        this.diagnostics = diagnostics;
+        if(reader != null) {
+            reader.setDiagnosticListener(diagnostics);
+        }
+    }
+    public OggDiagnosticListener getDiagnosticListener() {
+        if(diagnostics == null) {
+            return OggDiagnostics.getDefault();
+        }
+        return diagnostics;
+    }
+
+    /**
+     * Sets where readers and writers of this file record metrics
+     *  on the pages and packets they handle, or null for none.
+     * Only applies to writers created after this is set.
+     */
+    public void setMetrics(OggMetrics metrics) {
+        this.metrics = metrics;
+        if(reader != null) {
+            reader.setMetrics(metrics);
+        }
+    }
+    public OggMetrics getMetrics() {
+        return metrics;
+    }
+
+    private OggPacketReader configure(OggPacketReader r) {
+        r.setDiagnosticListener(diagnostics);
+        r.setMetrics(metrics);
+        return r;
+    }
+
+    /**
+     * Builds an index of all the pages in the file, and uses it for
+     *  any readers. The index can be saved with
+     *  {@link OggPageIndex#write(java.io.OutputStream)}, and later
+     *  re-loaded and passed to {@link #setPageIndex(OggPageIndex)}
+     *  to save re-building it.
+     * Only available for files opened with a {@link FileChannel}.
+     */
+    public OggPageIndex buildPageIndex() throws IOException {
+        if(writing || channel == null) {
+            throw new IllegalStateException("Can only index a file opened with a FileChannel");
+        }
+        setPageIndex(OggPageIndex.build(new OggPacketReader(channel)));
+        return index;
+    }
+
+    /**
+     * Sets the index of the pages in the file, which readers will
+     *  use to jump straight to the required page when seeking.
+     */
+    public void setPageIndex(OggPageIndex index) throws IOException {
+        if(index != null && channel != null && index.getFileSize() != channel.size()) {
+            throw new IllegalArgumentException("Page Index is for a file of " + index.getFileSize() + " bytes, but this one is " + channel.size());
+        }
+        this.index = index;
+        if(reader != null && channel != null) {
+            reader.setPageIndex(index);
+        }
+    }
+    public OggPageIndex getPageIndex() {
+        return index;
+    }
+
+    /**
+     * Can the file be read from arbitrary offsets?
+     */
+    public boolean isSeekable() {
+        return !writing && channel != null;
+    }
+
+    /**
+     * Checks every page of a seekable file, to give page level
+     *  statistics on it and its streams, such as for validating it.
+     * The file is split into the given number of byte ranges, which
+     *  are scanned at the same time on their own threads, each one
+     *  starting from the first page with a valid checksum in its
+     *  range. The results of each range are then combined.
+     * Parts which can't be read as pages, such as too much junk,
+     *  are skipped over and reported in the statistics, rather
+     *  than stopping the scan.
+     */
+    public OggScanStatistics scan(int threads) throws IOException {
+        if(!isSeekable()) {
+            throw new IllegalStateException("Only seekable files can be scanned");
+        }
+
+        // Each range must be big enough to hold the start of a page
+        final long size = channel.size();
+        final int ranges = (int)Math.max(1, Math.min(threads, size / OggPage.MAX_PAGE_SIZE));
+
+        ExecutorService executor = Executors.newFixedThreadPool(ranges);
+        try {
+            List<Future<OggScanStatistics>> results = new ArrayList<Future<OggScanStatistics>>();
+            for(int i=0; i<ranges; i++) {
+                final long start = size * i / ranges;
+                final long end = size * (i+1) / ranges;
+                results.add(executor.submit(new Callable<OggScanStatistics>() {
+                    public OggScanStatistics call() throws IOException {
+                        OggPacketReader r = configure(new OggPacketReader(channel));
+                        return OggScanStatistics.scan(r, start, end);
+                    }
+                }));
+            }
+
+            OggScanStatistics stats = null;
+            for(Future<OggScanStatistics> result : results) {
+                OggScanStatistics range;
+                try {
+                    range = result.get();
+                } catch(InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted waiting for the scan");
+                } catch(ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if(cause instanceof IOException) {
+                        throw (IOException)cause;
+                    }
+                    if(cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+
+                if(stats == null) {
+                    stats = range;
+                } else {
+                    stats.merge(range);
+                }
+            }
+            return stats;
+        } finally {
+            executor.shutdownNow();
         }
-        return new OggPacketReader(inp);
     }
 
     /**
@@ -126,23 +368,96 @@ public class OggFile implements Closeable {
      *  into it.
      */
     public OggPacketWriter getPacketWriter(int sid) {
+        addSerialNumber(sid);
+        return new OggPacketWriter(this, sid);
+    }
+    /**
+     * Records that the given serial number is in use, by
+     *  a writer not created through {@link #getPacketWriter(int)}
+     */
+    protected void addSerialNumber(int sid) {
         if(!writing) {
             throw new IllegalStateException("Can only write to a file opened with an OutputStream");
         }
         seenSIDs.add(sid);
-        return new OggPacketWriter(this, sid);
+    }
+
+    /**
+     * Sets the default policy for when writers should write out
+     *  their pending packets, and so how big the pages will be.
+     * This applies to all writers which don't have their own
+     *  policy set, including those already created.
+     */
+    public void setPagingPolicy(OggPagingPolicy policy) {
+        if(policy == null) {
+            throw new IllegalArgumentException("A paging policy is required");
+        }
+        this.pagingPolicy = policy;
+    }
+    public OggPagingPolicy getPagingPolicy() {
+        return pagingPolicy;
+    }
+
+    /**
+     * Should the output be flushed every time that pages are
+     *  written? Defaults to false, in which case the output is
+     *  only flushed on {@link #flush()} or when closed.
+     */
+    public void setAutoFlush(boolean autoFlush) {
+        this.autoFlush = autoFlush;
+    }
+    public boolean isAutoFlush() {
+        return autoFlush;
+    }
+
+    /**
+     * Flushes anything written so far to the underlying output.
+     */
+    public synchronized void flush() throws IOException {
+        if(out != null) {
+            out.flush();
+        }
     }
 
     /**
      * Writes a (possibly series) of pages to the
-     *  stream in one go. 
+     *  stream in one go. The header of each is built in
+     *  the same buffer, and written along with the page's
+     *  data without copying either.
      */
     protected synchronized void writePages(OggPage[] pages) throws IOException {
+        if(headerBytes == null) {
+            headerBytes = new byte[OggPage.HEADER_SIZE + 255];
+            pageBuffers = new ByteBuffer[] { ByteBuffer.wrap(headerBytes), null };
+        }
+
         for(OggPage page : pages) {
-            page.writeHeader( out );
-            out.write( page.getData() );
+            int headerSize = page.writeHeader(headerBytes);
+            if(outChannel != null) {
+                pageBuffers[0].clear();
+                pageBuffers[0].limit(headerSize);
+                pageBuffers[1] = page.getDataBuffer();
+                writeFully(pageBuffers);
+                pageBuffers[1] = null;
+            } else {
+                out.write(headerBytes, 0, headerSize);
+                page.writeData(out);
+            }
+        }
+        if(autoFlush) {
+            flush();
+        }
+    }
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        if(outChannel instanceof GatheringByteChannel) {
+            ((GatheringByteChannel)outChannel).write(buffers);
+        }
+        // Write anything not yet done one buffer at a time
+        for(ByteBuffer buffer : buffers) {
+            while(buffer.hasRemaining()) {
+                outChannel.write(buffer);
+            }
         }
-        out.flush();
     }
 
 
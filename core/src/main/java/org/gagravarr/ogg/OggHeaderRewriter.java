@@ -0,0 +1,374 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces one header packet of a stream, such as the comments,
+ *  without re-muxing the whole file. Only the pages holding that
+ *  packet, and any other packets sharing those pages, are changed,
+ *  and everything else is copied across as-is.
+ * If the new packet is the same size as the old one, or smaller and
+ *  padding is allowed, the existing pages are patched in place and
+ *  their checksums recalculated. Otherwise, just those pages are
+ *  re-paged, and the later pages of the stream renumbered to match
+ *  as they're copied.
+ */
+public class OggHeaderRewriter {
+    private int sid;
+    private int packetNumber;
+    private byte[] replacement;
+    private boolean paddingAllowed = false;
+
+    /**
+     * @param sid The stream to change
+     * @param packetNumber Which packet of the stream to replace,
+     *  counting from zero, eg 1 for the comments of Vorbis or Opus
+     * @param replacement The new packet
+     */
+    public OggHeaderRewriter(int sid, int packetNumber, OggPacket replacement) {
+        this.sid = sid;
+        this.packetNumber = packetNumber;
+        this.replacement = replacement.getData();
+    }
+
+    /**
+     * Can a smaller replacement packet be padded with trailing zeros
+     *  up to the size of the old one, so that the pages needn't change
+     *  size? Only set this for formats whose packet ignores any trailing
+     *  data, such as Vorbis comments or Opus tags.
+     */
+    public void setPaddingAllowed(boolean paddingAllowed) {
+        this.paddingAllowed = paddingAllowed;
+    }
+    public boolean isPaddingAllowed() {
+        return paddingAllowed;
+    }
+
+    /**
+     * Replaces the packet within the file itself, if it can be done
+     *  without changing the size of any pages.
+     * @param channel The file, which must be open for reading and writing
+     * @return true if the file was changed, false if the new packet
+     *  wouldn't fit, in which case the file is left untouched
+     */
+    public boolean rewriteInPlace(FileChannel channel) throws IOException {
+        OggPacketReader reader = new OggPacketReader(channel);
+        HeaderRegion region = findRegion(reader);
+        byte[] data = region.getPatchedData();
+        if(data == null) {
+            return false;
+        }
+
+        byte[] header = new byte[OggPage.HEADER_SIZE + 255];
+        int pos = 0;
+        for(int i=0; i<region.pages.size(); i++) {
+            OggPage page = region.pages.get(i);
+            if(page.getSid() != sid) continue;
+
+            int size = page.getDataSize();
+            System.arraycopy(data, pos, page.getData(), 0, size);
+            pos += size;
+
+            int headerSize = page.writeHeader(header);
+            long offset = region.offsets.get(i);
+            writeFully(channel, ByteBuffer.wrap(header, 0, headerSize), offset);
+            writeFully(channel, page.getDataBuffer(), offset + headerSize);
+        }
+        return true;
+    }
+
+    /**
+     * Writes a copy of the file with the packet replaced, re-paging
+     *  the packet's pages if needed. If that changes the number of
+     *  pages, the later pages of the stream are renumbered, and any
+     *  junk between them is dropped, otherwise the rest of the file
+     *  is copied across unchanged.
+     * Pages which have to be re-written must have valid checksums,
+     *  or an IOException is thrown, as they would otherwise get
+     *  new valid ones and the corruption be hidden.
+     * @param in The file to copy from
+     * @param out Where to write the copy, which is left open
+     */
+    public void rewrite(FileChannel in, OutputStream out) throws IOException {
+        OggPacketReader reader = new OggPacketReader(in);
+        HeaderRegion region = findRegion(reader);
+        WritableByteChannel target = Channels.newChannel(out);
+        byte[] header = new byte[OggPage.HEADER_SIZE + 255];
+
+        // Everything before the packet's pages is unchanged
+        copy(in, 0, region.start, target);
+
+        // Patch the pages if the same size, otherwise re-page
+        List<OggPage> pages = new ArrayList<OggPage>();
+        byte[] data = region.getPatchedData();
+        if(data != null) {
+            int pos = 0;
+            for(OggPage page : region.pages) {
+                if(page.getSid() != sid) continue;
+                System.arraycopy(data, pos, page.getData(), 0, page.getDataSize());
+                pos += page.getDataSize();
+                pages.add(page);
+            }
+        } else {
+            pages = region.repage();
+        }
+        int renumberBy = pages.size() - region.getStreamPageCount();
+
+        // Other streams' pages stay where they were, and the new
+        //  pages go where the first of the old ones was
+        boolean written = false;
+        for(int i=0; i<region.pages.size(); i++) {
+            OggPage page = region.pages.get(i);
+            if(page.getSid() == sid) {
+                if(!written) {
+                    for(OggPage p : pages) {
+                        writePage(p, header, out);
+                    }
+                    written = true;
+                }
+            } else {
+                copy(in, region.offsets.get(i), page.getPageSize(), target);
+            }
+        }
+
+        // With the same number of pages, the rest is unchanged
+        if(renumberBy == 0) {
+            copy(in, region.end, in.size() - region.end, target);
+            return;
+        }
+
+        // Otherwise, renumber this stream's pages, copying the
+        //  others across in as large blocks as possible
+        long runStart = region.end;
+        long runEnd = region.end;
+        OggPage page;
+        while((page = reader.readNextPage()) != null) {
+            long offset = reader.getLastPageOffset();
+            if(page.getSid() == sid) {
+                checkChecksum(page, offset);
+                copy(in, runStart, runEnd - runStart, target);
+                page.setSequenceNumber(page.getSequenceNumber() + renumberBy);
+                writePage(page, header, out);
+                runStart = runEnd = offset + page.getPageSize();
+            } else {
+                if(offset != runEnd) {
+                    copy(in, runStart, runEnd - runStart, target);
+                    runStart = offset;
+                }
+                runEnd = offset + page.getPageSize();
+            }
+        }
+        copy(in, runStart, runEnd - runStart, target);
+    }
+
+    /**
+     * Finds the pages holding the packet to be replaced, from the one
+     *  it starts on up to the first one which ends on a packet boundary
+     */
+    private HeaderRegion findRegion(OggPacketReader reader) throws IOException {
+        HeaderRegion region = new HeaderRegion();
+        int started = 0;
+        OggPacketData partial = null;
+
+        OggPage page;
+        while((page = reader.readNextPage()) != null) {
+            long offset = reader.getLastPageOffset();
+            if(region.start == -1) {
+                if(page.getSid() != sid) continue;
+
+                int startsHere = page.getNumPacketsEnded();
+                if(page.hasContinuation()) startsHere++;
+                if(page.isContinuation()) startsHere--;
+                if(started + startsHere <= packetNumber) {
+                    started += startsHere;
+                    continue;
+                }
+                if(page.isContinuation()) {
+                    throw new IOException("Packet " + packetNumber + " of stream " + sid +
+                            " shares a page with the end of an earlier packet, which isn't supported");
+                }
+                region.start = offset;
+                region.replaceIndex = packetNumber - started;
+            }
+
+            region.pages.add(page);
+            region.offsets.add(offset);
+            if(page.getSid() != sid) continue;
+            checkChecksum(page, offset);
+
+            OggPage.OggPacketIterator it = page.getPacketIterator(partial);
+            partial = null;
+            while(it.hasNext()) {
+                OggPacketData packet = it.next();
+                if(packet instanceof OggPacket) {
+                    region.packets.add(packet.getData());
+                } else {
+                    partial = packet;
+                }
+            }
+            if(!page.hasContinuation()) {
+                region.end = offset + page.getPageSize();
+                return region;
+            }
+        }
+
+        if(region.start == -1) {
+            throw new IOException("Packet " + packetNumber + " of stream " + sid + " not found");
+        }
+        throw new IOException("File ended part way through packet " + packetNumber + " of stream " + sid);
+    }
+
+    /**
+     * Pages which are re-written get a new checksum, so make sure
+     *  they were valid to start with, rather than hiding corruption
+     */
+    private static void checkChecksum(OggPage page, long offset) throws IOException {
+        if(!page.isChecksumValid()) {
+            throw new IOException("Page " + page.getSequenceNumber() + " of stream " + page.getSid() +
+                    " at offset " + offset + " has an invalid checksum, so can't be re-written");
+        }
+    }
+    private static void writePage(OggPage page, byte[] header, OutputStream out) throws IOException {
+        int headerSize = page.writeHeader(header);
+        out.write(header, 0, headerSize);
+        page.writeData(out);
+    }
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while(buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+    private static void copy(FileChannel in, long offset, long length, WritableByteChannel out) throws IOException {
+        while(length > 0) {
+            long copied = in.transferTo(offset, length, out);
+            if(copied <= 0) {
+                throw new IOException("Unable to copy " + length + " bytes from offset " + offset);
+            }
+            offset += copied;
+            length -= copied;
+        }
+    }
+
+    /**
+     * The pages holding the packet to be replaced, along with any
+     *  pages of other streams between them
+     */
+    private class HeaderRegion {
+        private long start = -1;
+        private long end = -1;
+        private List<OggPage> pages = new ArrayList<OggPage>();
+        private List<Long> offsets = new ArrayList<Long>();
+        private List<byte[]> packets = new ArrayList<byte[]>();
+        private int replaceIndex;
+
+        private int getStreamPageCount() {
+            int count = 0;
+            for(OggPage page : pages) {
+                if(page.getSid() == sid) count++;
+            }
+            return count;
+        }
+
+        /**
+         * Returns the data of the stream's pages with the packet
+         *  replaced, if it can be done without changing their size,
+         *  or null if they'll need re-paging
+         */
+        private byte[] getPatchedData() {
+            byte[] old = packets.get(replaceIndex);
+            if(replacement.length > old.length) {
+                return null;
+            }
+            if(replacement.length < old.length && !paddingAllowed) {
+                return null;
+            }
+
+            int size = 0;
+            for(byte[] packet : packets) {
+                size += packet.length;
+            }
+            byte[] data = new byte[size];
+            int pos = 0;
+            for(int i=0; i<packets.size(); i++) {
+                if(i == replaceIndex) {
+                    // Any space left over stays as zeros
+                    System.arraycopy(replacement, 0, data, pos, replacement.length);
+                    pos += old.length;
+                } else {
+                    byte[] packet = packets.get(i);
+                    System.arraycopy(packet, 0, data, pos, packet.length);
+                    pos += packet.length;
+                }
+            }
+            return data;
+        }
+
+        /**
+         * Lays the packets, with the replacement, out onto new pages,
+         *  numbered on from the first old one, in the same way that
+         *  {@link OggPacketWriter} would
+         */
+        private List<OggPage> repage() {
+            OggPage first = null;
+            OggPage last = null;
+            for(OggPage page : pages) {
+                if(page.getSid() != sid) continue;
+                if(first == null) first = page;
+                last = page;
+            }
+
+            List<OggPage> newPages = new ArrayList<OggPage>();
+            int seq = first.getSequenceNumber();
+            OggPage page = new OggPage(sid, seq++);
+            newPages.add(page);
+            for(int i=0; i<packets.size(); i++) {
+                OggPacket packet = new OggPacket(i == replaceIndex ? replacement : packets.get(i));
+                if(i == 0 && first.isBeginningOfStream()) {
+                    packet.setIsBOS();
+                }
+                if(i == packets.size()-1 && last.isEndOfStream()) {
+                    packet.setIsEOS();
+                }
+
+                int size = packet.getData().length;
+                boolean emptyPacket = (size == 0);
+                int pos = 0;
+                while(pos < size || emptyPacket) {
+                    pos = page.addPacket(packet, pos);
+                    if(pos < size) {
+                        page = new OggPage(sid, seq++);
+                        page.setIsContinuation();
+                        newPages.add(page);
+                    }
+                    emptyPacket = false;
+                }
+            }
+
+            // Pages where no packet ends have no granule position
+            for(OggPage p : newPages) {
+                p.setGranulePosition(p.getNumPacketsEnded() == 0 ? -1 : last.getGranulePosition());
+            }
+            return newPages;
+        }
+    }
+}
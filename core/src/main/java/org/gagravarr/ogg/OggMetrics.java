@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+/**
+ * Implement this to collect metrics on the pages and packets
+ *  read by {@link OggPacketReader}s and written by
+ *  {@link OggPacketWriter}s, eg by passing them on to the metrics
+ *  library of your choice, or use {@link SimpleOggMetrics}.
+ * Each meter is looked up once, when the metrics are set on a
+ *  reader or writer, and then updated on every page, possibly
+ *  from several threads at once, so should be cheap and safe to
+ *  update concurrently.
+ */
+public interface OggMetrics {
+    /** Counts the pages read */
+    public static final String PAGES_READ = "ogg.read.pages";
+    /** Counts the bytes of the pages read, including headers */
+    public static final String BYTES_READ = "ogg.read.bytes";
+    /** How many packets end on each page read */
+    public static final String PACKETS_PER_PAGE_READ = "ogg.read.packets.per.page";
+    /** How full each page read is, as a percentage of the largest possible */
+    public static final String PAGE_FILL_READ = "ogg.read.page.fill";
+    /** How long checking each page's checksum takes, in nanoseconds */
+    public static final String CRC_TIME = "ogg.read.crc.time";
+    /** Counts the bytes of junk skipped to find pages */
+    public static final String RESYNC_BYTES = "ogg.read.resync.bytes";
+    /** Counts the packets read which were split over several pages */
+    public static final String SPANNED_PACKETS_READ = "ogg.read.spanned.packets";
+
+    /** Counts the pages written */
+    public static final String PAGES_WRITTEN = "ogg.write.pages";
+    /** Counts the bytes of the pages written, including headers */
+    public static final String BYTES_WRITTEN = "ogg.write.bytes";
+    /** How many packets end on each page written */
+    public static final String PACKETS_PER_PAGE_WRITTEN = "ogg.write.packets.per.page";
+    /** How full each page written is, as a percentage of the largest possible */
+    public static final String PAGE_FILL_WRITTEN = "ogg.write.page.fill";
+    /** Counts the packets written which had to be split over several pages */
+    public static final String SPANNED_PACKETS_WRITTEN = "ogg.write.spanned.packets";
+    /** How long writing out each batch of pages takes, in nanoseconds */
+    public static final String FLUSH_TIME = "ogg.write.flush.time";
+
+    public Counter getCounter(String name);
+    public Histogram getHistogram(String name);
+    public Timer getTimer(String name);
+
+    /**
+     * Counts how many times something has happened
+     */
+    public static interface Counter {
+        public void increment(long amount);
+    }
+    /**
+     * Records the distribution of some value
+     */
+    public static interface Histogram {
+        public void record(long value);
+    }
+    /**
+     * Records how long something took
+     */
+    public static interface Timer {
+        public void record(long nanos);
+    }
+}
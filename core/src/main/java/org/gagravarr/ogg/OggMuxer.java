@@ -0,0 +1,273 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Interleaves the pages of several streams being written at once,
+ *  such as a Theora video with its Vorbis soundtrack, so that they
+ *  end up in the file in time order.
+ * Each stream gets its own {@link OggPacketWriter}, which may be
+ *  used from its own thread. Pages from each are queued, and once
+ *  every stream has a page waiting (or has finished), the earliest
+ *  is written out. The queues are bounded, so a stream which gets
+ *  too far ahead of the others will wait for them to catch up.
+ * Each stream must be written from its own thread. As a stream
+ *  with a full queue waits for the others to catch up, one thread
+ *  writing to several streams would wait forever, so if the muxer
+ *  spots this it throws an IllegalStateException instead. Pages
+ *  are written out by whichever thread's page lets the muxer move
+ *  on, one at a time, so writers may also wait briefly on that.
+ * All streams must be added before any data pages are written, as
+ *  the first pages of every stream have to come at the start of the
+ *  file, and every stream's writer must be closed, otherwise the
+ *  others will end up waiting for it.
+ */
+public class OggMuxer implements Closeable {
+    /**
+     * How many pages each stream may have waiting by default
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 32;
+
+    private OggFile file;
+    private int queueSize;
+    private List<MuxedStream> streams = new ArrayList<MuxedStream>();
+    private OggPage[] toWrite = new OggPage[1];
+    private boolean dataWritten = false;
+
+    public OggMuxer(OggFile file) {
+        this(file, DEFAULT_QUEUE_SIZE);
+    }
+    public OggMuxer(OggFile file, int queueSize) {
+        this.file = file;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Adds a new stream, with a new serial number, and returns
+     *  the writer for it.
+     * @param converter Turns the stream's granule positions into
+     *  times, or null if the stream only has headers
+     */
+    public synchronized OggPacketWriter addStream(GranuleConverter converter) {
+        return addStream(file.getUnusedSerialNumber(), converter);
+    }
+    /**
+     * Adds a new stream with the given serial number, and returns
+     *  the writer for it.
+     * @param converter Turns the stream's granule positions into
+     *  times, or null if the stream only has headers
+     * @throws IllegalStateException if data pages have already been
+     *  written, as this stream's first page must go before them
+     */
+    public synchronized OggPacketWriter addStream(int sid, GranuleConverter converter) {
+        if(dataWritten) {
+            throw new IllegalStateException("Streams must all be added before any data pages are written");
+        }
+        file.addSerialNumber(sid);
+
+        MuxedStream stream = new MuxedStream(this, converter, queueSize, streams.size());
+        streams.add(stream);
+        return new OggPacketWriter(stream, sid);
+    }
+
+    /**
+     * Writes out as many pages as we can, while we know which
+     *  comes next. All the first pages go before any others, then
+     *  the rest in time order, with ties kept in stream order.
+     */
+    private synchronized void drain() throws IOException {
+        while(true) {
+            MuxedStream next = null;
+            QueuedPage nextPage = null;
+            for(MuxedStream stream : streams) {
+                QueuedPage page = stream.queue.peek();
+                if(page == null) {
+                    if(stream.finished) {
+                        continue;
+                    }
+                    // Can't tell what comes next until this one has more
+                    return;
+                }
+                if(nextPage == null || page.isBefore(nextPage)) {
+                    next = stream;
+                    nextPage = page;
+                }
+            }
+            if(next == null) {
+                // Everything has been written
+                return;
+            }
+
+            next.queue.poll();
+            if(! nextPage.page.isBeginningOfStream()) {
+                dataWritten = true;
+            }
+            toWrite[0] = nextPage.page;
+            file.writePages(toWrite);
+            toWrite[0] = null;
+        }
+    }
+
+    /**
+     * Called when a stream's queue is full, and so it must wait for
+     *  the others to catch up. If one of those it is waiting on is
+     *  written from this same thread, it never will.
+     */
+    private synchronized void checkCanWait(MuxedStream waiting) {
+        for(MuxedStream stream : streams) {
+            if(stream != waiting && !stream.finished && stream.queue.isEmpty() &&
+                    stream.writer == Thread.currentThread()) {
+                throw new IllegalStateException("Stream " + waiting.order + " can't wait for stream " +
+                        stream.order + " to catch up, as both are written from the same thread");
+            }
+        }
+    }
+
+    /**
+     * Writes out any remaining pages, and closes the file. All
+     *  the streams' writers must have been closed first.
+     */
+    public synchronized void close() throws IOException {
+        for(MuxedStream stream : streams) {
+            if(! stream.finished) {
+                throw new IllegalStateException("All streams must be closed before the muxer");
+            }
+        }
+        drain();
+        file.close();
+    }
+
+    /**
+     * Converts a granule position into a time, in microseconds,
+     *  so that pages from different streams can be ordered.
+     */
+    public static interface GranuleConverter {
+        public long getTimeMicros(long granulePosition);
+    }
+    /**
+     * Returns a converter for streams where the granule position
+     *  counts samples or frames at a fixed rate, such as audio
+     */
+    public static GranuleConverter forRate(final long granulesPerSecond) {
+        return new GranuleConverter() {
+            public long getTimeMicros(long granulePosition) {
+                return granulePosition * 1000000 / granulesPerSecond;
+            }
+        };
+    }
+    /**
+     * Returns a converter for Theora style granule positions, where
+     *  the upper bits give the last keyframe and the lower bits the
+     *  number of frames since then
+     */
+    public static GranuleConverter forKeyFrames(final long framesPerSecondNumerator,
+            final long framesPerSecondDenominator, final int keyFrameShift) {
+        return new GranuleConverter() {
+            public long getTimeMicros(long granulePosition) {
+                long keyFrame = granulePosition >> keyFrameShift;
+                long frames = granulePosition - (keyFrame << keyFrameShift);
+                return (keyFrame + frames) * 1000000 * framesPerSecondDenominator /
+                       framesPerSecondNumerator;
+            }
+        };
+    }
+
+    private static class QueuedPage {
+        private OggPage page;
+        private long time;
+        private int order;
+        private QueuedPage(OggPage page, long time, int order) {
+            this.page = page;
+            this.time = time;
+            this.order = order;
+        }
+        private boolean isBefore(QueuedPage other) {
+            if(page.isBeginningOfStream() != other.page.isBeginningOfStream()) {
+                return page.isBeginningOfStream();
+            }
+            if(time != other.time) {
+                return time < other.time;
+            }
+            return order < other.order;
+        }
+    }
+
+    /**
+     * Pages for one stream are queued up here, rather than
+     *  being written straight out
+     */
+    private static class MuxedStream extends OggFile {
+        private OggMuxer muxer;
+        private GranuleConverter converter;
+        private BlockingQueue<QueuedPage> queue;
+        private int order;
+        private long lastTime = 0;
+        private volatile boolean finished = false;
+        private volatile Thread writer;
+
+        private MuxedStream(OggMuxer muxer, GranuleConverter converter, int queueSize, int order) {
+            super((OutputStream)null);
+            this.muxer = muxer;
+            this.converter = converter;
+            this.queue = new ArrayBlockingQueue<QueuedPage>(queueSize);
+            this.order = order;
+        }
+
+        @Override
+        public OggPagingPolicy getPagingPolicy() {
+            return muxer.file.getPagingPolicy();
+        }
+
+        @Override
+        public OggMetrics getMetrics() {
+            return muxer.file.getMetrics();
+        }
+
+        @Override
+        protected void writePages(OggPage[] pages) throws IOException {
+            for(OggPage page : pages) {
+                // Pages where no packet ends don't have a time of their
+                //  own, so go with the one before
+                long granule = page.getGranulePosition();
+                if(converter != null && granule > 0) {
+                    lastTime = converter.getTimeMicros(granule);
+                }
+
+                writer = Thread.currentThread();
+                QueuedPage queued = new QueuedPage(page, lastTime, order);
+                if(! queue.offer(queued)) {
+                    muxer.checkCanWait(this);
+                    try {
+                        queue.put(queued);
+                    } catch(InterruptedException e) {
+                        throw new InterruptedIOException("Interrupted waiting to queue page");
+                    }
+                }
+                if(page.isEndOfStream()) {
+                    finished = true;
+                }
+                muxer.drain();
+            }
+        }
+    }
+}
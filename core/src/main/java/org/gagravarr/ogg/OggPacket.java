@@ -33,6 +33,16 @@ public class OggPacket extends OggPacketData {
         this.bos = bos;
         this.eos = eos;
     }
+    /**
+     * Creates a new Ogg Packet as a view onto part of
+     *  the data read from within an Ogg Page.
+     */
+    protected OggPacket(OggPage parent, byte[] data, int offset, int length, boolean bos, boolean eos) {
+        super(data, offset, length);
+        this.parent = parent;
+        this.bos = bos;
+        this.eos = eos;
+    }
     /**
      * Creates a new Ogg Packet filled with data to
      *  be later written.
@@ -92,7 +102,7 @@ public class OggPacket extends OggPacketData {
         if (parent == null) return 0;
 
         double ourShare = 1.0;
-        int ourDataLen = getData().length;
+        int ourDataLen = getDataLength();
         int pageDataLen = parent.getDataSize();
         if (pageDataLen != ourDataLen) {
             // We don't have a page to ourselves, so we can't come up
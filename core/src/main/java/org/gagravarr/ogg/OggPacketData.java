@@ -13,6 +13,8 @@
  */
 package org.gagravarr.ogg;
 
+import java.nio.ByteBuffer;
+
 /**
  * The data part of an {@link OggPacket}.
  * RFC3533 suggests that these should usually be
@@ -24,15 +26,84 @@ package org.gagravarr.ogg;
  */
 public class OggPacketData {
     private byte[] data;
+    private int offset;
+    private int length;
+    /** Is the data ours alone, with space to add more on the end? */
+    private boolean growable;
 
     protected OggPacketData(byte[] data) {
+        this(data, 0, data.length);
+    }
+    /**
+     * Creates the packet as a view onto part of a larger
+     *  array, normally the data of the {@link OggPage}
+     *  it came from, without copying.
+     */
+    protected OggPacketData(byte[] data, int offset, int length) {
         this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+    /**
+     * Creates a partial packet, whose data array is its own, and
+     *  may be bigger than needed to leave space for more
+     */
+    private OggPacketData(byte[] data, int length) {
+        this(data, 0, length);
+        this.growable = true;
+    }
+
+    /**
+     * Returns a partial packet, made up of this one with more data
+     *  added on the end, for packets split across several pages.
+     * Spare space is left for pages still to come, which grows by
+     *  doubling, so a packet spread over many pages only has to be
+     *  copied a few times in total, rather than once per page.
+     * @param more Is there still more of the packet to come?
+     */
+    protected OggPacketData append(byte[] extra, int extraOffset, int extraLength, boolean more) {
+        int newLength = length + extraLength;
+        byte[] to = data;
+        if(!growable || data.length < newLength) {
+            int capacity = newLength;
+            if(more) {
+                capacity = (int)Math.min(Integer.MAX_VALUE - 8, 2L * newLength);
+            }
+            to = new byte[capacity];
+            System.arraycopy(data, offset, to, 0, length);
+        }
+        System.arraycopy(extra, extraOffset, to, length, extraLength);
+        return new OggPacketData(to, newLength);
     }
 
     /**
      * Returns the data that makes up the packet.
+     * If the packet is a view onto part of its page,
+     *  the data is copied out on the first call.
      */
     public byte[] getData() {
+        if(offset != 0 || length != data.length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            data = copy;
+            offset = 0;
+        }
         return data;
     }
+
+    /**
+     * Returns a read-only buffer of the data that makes up
+     *  the packet, without copying it.
+     */
+    public ByteBuffer getDataBuffer() {
+        return ByteBuffer.wrap(data, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the length of the packet's data, without
+     *  needing to copy it.
+     */
+    public int getDataLength() {
+        return length;
+    }
 }
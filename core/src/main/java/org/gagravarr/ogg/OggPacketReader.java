@@ -15,15 +15,83 @@ package org.gagravarr.ogg;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Iterator;
 
 public class OggPacketReader {
+    private static final int BUFFER_SIZE = 65536;
+    /**
+     * How far to search for the next page by default
+     */
+    public static final int DEFAULT_SEARCH_LIMIT = 65536;
+    private static final byte[] BLANK_CHECKSUM = new byte[4];
+    private static final int MAP_WINDOW_SIZE = 16*1024*1024;
+
     private InputStream inp;
+    private FileChannel channel;
+    private long channelSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+
     private Iterator<OggPacketData> it;
     private OggPacket nextPacket;
+    private boolean packetViews = false;
+    private int searchLimit = DEFAULT_SEARCH_LIMIT;
+    private int maxPacketSize = -1;
+    private OggDiagnosticListener diagnostics;
+    private Meters meters;
+    /** Is the packet being read spread over several pages? */
+    private boolean spanningPages = false;
+    private OggPageIndex index;
+
+    /**
+     * Page data is read from the stream in large chunks into here,
+     *  and then decoded from it, rather than fetching a byte at a
+     *  time from the (potentially unbuffered) stream. It is always
+     *  big enough to hold the largest possible page.
+     */
+    private byte[] buffer;
+    private int bufferPos;
+    private int bufferLen;
+    /** Offset in the file of the end of the buffered data */
+    private long sourcePosition;
+    /** Offset in the file of the last page read */
+    private long lastPageOffset = -1;
+    private boolean lastPageChecksumValid;
+    /** Have we been moved to a point which may not be a page start? */
+    private boolean verifyNextPage = false;
+    /** Have we been moved to a point which may be part way through a packet? */
+    private boolean dropPartialPacket = false;
 
+    /**
+     * Creates a reader for the given stream. Note that data will be
+     *  read ahead from the stream in large blocks, so nothing else
+     *  should read from it while this reader is in use.
+     */
     public OggPacketReader(InputStream inp) {
         this.inp = inp;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+    /**
+     * Creates a reader for the given file channel, which will be
+     *  memory mapped a window at a time as it is read. The reader
+     *  tracks its own position, so several readers may safely work
+     *  on the same channel at once, and may be moved about the file
+     *  with {@link #seek(long)}.
+     */
+    public OggPacketReader(FileChannel channel) {
+        this(channel, null);
+    }
+    /**
+     * Creates a reader for the given file channel, using the
+     *  already checked index of its pages
+     */
+    protected OggPacketReader(FileChannel channel, OggPageIndex index) {
+        this.channel = channel;
+        this.channelSize = -1;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.index = index;
     }
 
     /**
@@ -50,7 +118,16 @@ public class OggPacketReader {
         OggPacketData leftOver = null;
         if(it != null && it.hasNext()) {
             OggPacketData packet = it.next();
+            if(maxPacketSize >= 0 && packet.getDataLength() > maxPacketSize) {
+                rejectOversizedPacket(packet);
+            }
             if(packet instanceof OggPacket) {
+                if(spanningPages) {
+                    if(meters != null) {
+                        meters.spannedPackets.increment(1);
+                    }
+                    spanningPages = false;
+                }
                 return (OggPacket)packet;
             }
             leftOver = packet;
@@ -58,70 +135,310 @@ public class OggPacketReader {
 
         // Find the next page, from which
         //  to get our next packet from
-        int searched = 0;
-        int pos = -1;
-        boolean found = false;
-        int r;
-        while(searched < 65536 && !found) {
-            r = inp.read();
-            if(r == -1) {
-                // No more data
-                return null;
-            }
+        OggPage page = readNextPage();
+        if(page == null) {
+            // No more data
+            return null;
+        }
 
-            switch(pos) {
-            case -1:
-                if(r == (int)'O') {
-                    pos = 0;
+        // Prime the iterator on it
+        it = page.getPacketIterator(leftOver, packetViews);
+        spanningPages = (leftOver != null);
+
+        // If we've just jumped into the middle of the file, we
+        //  can't do anything with the tail of a packet started
+        //  on an earlier page, so drop it
+        if(dropPartialPacket) {
+            if(page.isContinuation() && leftOver == null && it.hasNext()) {
+                OggPacketData partial = it.next();
+                if(! (partial instanceof OggPacket)) {
+                    return getNextPacket();
                 }
-                break;
-            case 0:
-                if(r == (int)'g') {
-                    pos = 1;
-                } else {
-                    pos = -1;
+            }
+            dropPartialPacket = false;
+        }
+        return getNextPacket();
+    }
+
+    /**
+     * Handles a packet, or the start of one, which is over the
+     *  maximum size. The rest of it will be skipped, so reading can
+     *  carry on from the packet after.
+     */
+    private void rejectOversizedPacket(OggPacketData packet) throws IOException {
+        spanningPages = false;
+        if(! (packet instanceof OggPacket)) {
+            dropPartialPacket = true;
+        }
+        throw new IOException("Packet of at least " + packet.getDataLength() +
+                " bytes is over the maximum packet size of " + maxPacketSize);
+    }
+
+    /**
+     * Finds and reads the next page in the file, skipping over
+     *  any junk before it, or returns null if no more pages remain.
+     * If we have had to skip junk, or have just been positioned at
+     *  an arbitrary point in the file, candidate pages are only
+     *  accepted if their checksum is valid, so that we re-sync onto
+     *  a real page rather than some data which looks like one.
+     */
+    protected OggPage readNextPage() throws IOException {
+        return readNextPage(null);
+    }
+    /**
+     * Finds and reads the next page in the file, as with
+     *  {@link #readNextPage()}, but decodes it into the given page
+     *  if there is one, rather than a new one. This lets callers
+     *  which only look at each page briefly avoid allocating.
+     */
+    protected OggPage readNextPage(OggPage reuse) throws IOException {
+        int searched = 0;
+        while(true) {
+            boolean found = false;
+            while((searchLimit < 0 || searched < searchLimit) && !found) {
+                if(!fill(4)) {
+                    // No more data
+                    return null;
                 }
-                break;
-            case 1:
-                if(r == (int)'g') {
-                    pos = 2;
-                } else {
-                    pos = -1;
+
+                // Check everything we have buffered for the capture pattern
+                int end = bufferLen - 3;
+                if(searchLimit >= 0) {
+                    end = Math.min(end, bufferPos + searchLimit - searched);
                 }
-                break;
-            case 2:
-                if(r == (int)'S') {
+                int pos = findCapturePattern(bufferPos, end);
+                if(pos < end) {
                     found = true;
                 } else {
-                    pos = -1;
+                    pos = end;
                 }
-                break;
+                searched += pos - bufferPos;
+                bufferPos = pos;
             }
 
             if(!found) {
+                throw new IOException("Next ogg packet header not found after searching " + searched + " bytes");
+            }
+
+            // Once we've had to skip junk, or been moved somewhere that
+            //  may not be a page start, only a page which passes its
+            //  checksum can be trusted to be a real one
+            boolean resyncing = verifyNextPage || searched > 0;
+
+            // Ensure we have the whole of the page buffered
+            int pageSize = getBufferedPageSize();
+            if(pageSize == -1) {
+                if(resyncing) {
+                    // Not a real page after all, keep looking
+                    bufferPos++;
+                    searched++;
+                    continue;
+                }
+                throw new IOException("Hit EoF part way through an Ogg page");
+            }
+
+            // Check it before going to the trouble of creating the page
+            long crcStart = (meters != null ? System.nanoTime() : 0);
+            boolean checksumValid = isChecksumValid(bufferPos, pageSize, resyncing);
+            if(meters != null) {
+                meters.crcTime.record(System.nanoTime() - crcStart);
+            }
+            if(resyncing && !checksumValid) {
+                bufferPos++;
                 searched++;
+                continue;
+            }
+
+            // Create the page
+            OggPage page;
+            try {
+                if(reuse != null) {
+                    reuse.reset(buffer, bufferPos);
+                    page = reuse;
+                } else {
+                    page = new OggPage(buffer, bufferPos);
+                }
+            } catch(IllegalArgumentException e) {
+                if(resyncing) {
+                    bufferPos++;
+                    searched++;
+                    continue;
+                }
+                throw e;
+            }
+
+            if(searched > 0 && !verifyNextPage) {
+                getDiagnosticListener().junkSkipped(getPosition() - searched, searched);
+            }
+            if(!checksumValid) {
+                getDiagnosticListener().invalidChecksum(getPosition(),
+                        page.getSid(), page.getSequenceNumber());
             }
+
+            if(meters != null) {
+                meters.pageRead(page, searched);
+            }
+
+            verifyNextPage = false;
+            lastPageOffset = getPosition();
+            lastPageChecksumValid = checksumValid;
+            bufferPos += pageSize;
+            return page;
         }
+    }
 
-        if(!found) {
-            throw new IOException("Next ogg packet header not found after searching " + searched + " bytes");
+    /**
+     * Finds the first "OggS" capture pattern which starts in the
+     *  buffer between the two positions, or returns the end position
+     *  if there isn't one. Rather than checking every position, the
+     *  last byte each could match is looked at, and as only 'O', 'g'
+     *  and 'S' occur in the pattern, most junk bytes let us move on
+     *  four places at once.
+     */
+    private int findCapturePattern(int pos, int end) {
+        final byte[] buffer = this.buffer;
+        while(pos < end) {
+            byte last = buffer[pos+3];
+            if(last == (byte)'S') {
+                if(buffer[pos] == (byte)'O' && buffer[pos+1] == (byte)'g' &&
+                   buffer[pos+2] == (byte)'g') {
+                    return pos;
+                }
+                pos += 4;
+            } else if(last == (byte)'g') {
+                pos += 1;
+            } else if(last == (byte)'O') {
+                pos += 3;
+            } else {
+                pos += 4;
+            }
         }
+        return end;
+    }
 
-        searched -= 3; // OggS
-        if(searched > 0) {
-            System.err.println("Warning - had to skip " + searched + " bytes of junk data before finding the next packet header");
+    /**
+     * Checks the checksum of the page buffered at the given position,
+     *  which is calculated with the checksum field itself zeroed.
+     * A blank checksum normally means it wasn't calculated, but junk
+     *  can easily have zeros there too, so isn't trusted when resyncing.
+     */
+    private boolean isChecksumValid(int pos, int pageSize, boolean resyncing) {
+        int checksum = (int)IOUtils.getInt4(buffer, pos+22);
+        if(checksum == 0 && !resyncing) {
+            return true;
         }
 
-        // Create the page, and prime the iterator on it
-        OggPage page = new OggPage(inp);
-        if(!page.isChecksumValid()) {
-            System.err.println("Warning - invalid checksum on page " +
-                               page.getSequenceNumber() + " of stream " +
-                               Integer.toHexString(page.getSid()) + " (" +
-                               page.getSid() + ")");
+        int crc = CRCUtils.getCRC(buffer, pos, 22, 0);
+        crc = CRCUtils.getCRC(BLANK_CHECKSUM, 0, 4, crc);
+        crc = CRCUtils.getCRC(buffer, pos+26, pageSize-26, crc);
+        return (checksum == crc);
+    }
+
+    /**
+     * Buffers the whole of the page starting at the current position,
+     *  and returns its size, or -1 if EoF is hit first
+     */
+    private int getBufferedPageSize() throws IOException {
+        if(!fill(OggPage.HEADER_SIZE)) {
+            return -1;
         }
-        it = page.getPacketIterator(leftOver);
-        return getNextPacket();
+        int numLVs = IOUtils.toInt(buffer[bufferPos+26]);
+        if(!fill(OggPage.HEADER_SIZE + numLVs)) {
+            return -1;
+        }
+        int pageSize = OggPage.HEADER_SIZE + numLVs;
+        for(int i=0; i<numLVs; i++) {
+            pageSize += IOUtils.toInt(buffer[bufferPos+OggPage.HEADER_SIZE+i]);
+        }
+        if(!fill(pageSize)) {
+            return -1;
+        }
+        return pageSize;
+    }
+
+    /**
+     * Sets the listener to be told about junk skipped and pages with
+     *  invalid checksums, or null to use {@link OggDiagnostics#getDefault()}
+     */
+    public void setDiagnosticListener(OggDiagnosticListener diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+    public OggDiagnosticListener getDiagnosticListener() {
+        if(diagnostics == null) {
+            return OggDiagnostics.getDefault();
+        }
+        return diagnostics;
+    }
+
+    /**
+     * Sets where to record metrics on the pages and packets read,
+     *  or null to not record any
+     */
+    public void setMetrics(OggMetrics metrics) {
+        if(metrics == null) {
+            meters = null;
+        } else {
+            meters = new Meters(metrics);
+        }
+    }
+
+    /**
+     * How many bytes of junk to search through for the next page,
+     *  before giving up on the stream as corrupt, or -1 to keep
+     *  searching to the end. Any page found after skipping junk
+     *  must have a valid checksum to be accepted.
+     *  Defaults to {@link #DEFAULT_SEARCH_LIMIT}.
+     */
+    public void setSearchLimit(int searchLimit) {
+        this.searchLimit = searchLimit;
+    }
+    public int getSearchLimit() {
+        return searchLimit;
+    }
+
+    /**
+     * Sets the largest packet which may be read, or -1 for no limit,
+     *  to protect against running out of memory on broken or hostile
+     *  files which claim to have huge packets spread over many pages.
+     * A bigger packet causes an {@link IOException}, but the rest of
+     *  it is skipped, so packets after it can still be read.
+     *  Defaults to no limit.
+     */
+    public void setMaxPacketSize(int maxPacketSize) {
+        this.maxPacketSize = maxPacketSize;
+    }
+    public int getMaxPacketSize() {
+        return maxPacketSize;
+    }
+
+    /**
+     * Should packets be returned as views onto the data of the
+     *  page they came from, rather than each having its own copy?
+     * Only packets which span pages will be copied in this mode,
+     *  so it reduces the work done when each packet is only looked
+     *  at once. Use {@link OggPacket#getDataBuffer()} to access the
+     *  data without copying. Defaults to false.
+     */
+    public void setPacketViews(boolean packetViews) {
+        this.packetViews = packetViews;
+    }
+    public boolean isPacketViews() {
+        return packetViews;
+    }
+
+    /**
+     * Sets the index of the pages in the file, which will be used
+     *  to jump straight to pages when seeking, rather than having
+     *  to search for them. Only used for seekable readers.
+     */
+    public void setPageIndex(OggPageIndex index) throws IOException {
+        if(index != null && isSeekable() && index.getFileSize() != getSize()) {
+            throw new IllegalArgumentException("Page Index is for a file of " + index.getFileSize() + " bytes, but this one is " + getSize());
+        }
+        this.index = index;
+    }
+    public OggPageIndex getPageIndex() {
+        return index;
     }
 
     /**
@@ -190,4 +507,308 @@ public class OggPacketReader {
             }
         }
     }
+
+    /**
+     * Ensures that at least the given number of bytes are available
+     *  in the buffer from the current position, reading more from
+     *  the stream in as big a chunk as possible if needed.
+     * @return Whether that many bytes are available, false on EoF
+     */
+    private boolean fill(int wanted) throws IOException {
+        int available = bufferLen - bufferPos;
+        if(available >= wanted) {
+            return true;
+        }
+
+        // Move the unread data to the start of the buffer
+        if(bufferPos > 0) {
+            System.arraycopy(buffer, bufferPos, buffer, 0, available);
+            bufferPos = 0;
+            bufferLen = available;
+        }
+
+        // Read as much as we can fit in
+        while(bufferLen < wanted) {
+            int r = readSource(buffer, bufferLen, buffer.length - bufferLen);
+            if(r == -1) {
+                return false;
+            }
+            bufferLen += r;
+            sourcePosition += r;
+        }
+        return true;
+    }
+
+    /**
+     * Moves to the first packet with a Sequence Number of equal or
+     *  greater than that specified. Call {@link #getNextPacket()}
+     *  to retrieve this packet.
+     * If the reader has a {@link OggPageIndex}, this jumps straight
+     *  to the page, and may move backwards as well as forwards.
+     *  Otherwise, this is the same as {@link #skipToSequenceNumber(int, int)}
+     */
+    public void seekToSequenceNumber(int sid, int sequenceNumber) throws IOException {
+        if(index == null || !isSeekable()) {
+            skipToSequenceNumber(sid, sequenceNumber);
+            return;
+        }
+
+        // Start from the previous page that ended a packet, to
+        //  get any packet which begins on it and ends on ours
+        int page = index.findPageBySequenceNumber(sid, sequenceNumber);
+        if(page != -1) {
+            int start = index.findPreviousGranulePage(sid, page);
+            seek(start == -1 ? 0 : index.getOffset(start));
+        }
+        skipToSequenceNumber(sid, sequenceNumber);
+    }
+
+    /**
+     * Moves to the first packet with a Granule Position of equal or
+     *  greater than that specified. Call {@link #getNextPacket()}
+     *  to retrieve this packet.
+     * If the reader is seekable, this is done with a bisection search
+     *  over the file, reading only a handful of pages, and may move
+     *  backwards as well as forwards. Otherwise, this is the same as
+     *  {@link #skipToGranulePosition(int, long)}.
+     * @param sid The ID of the stream who's packets we will search
+     * @param granulePosition The granule position we're looking for
+     */
+    public void seekToGranulePosition(int sid, long granulePosition) throws IOException {
+        if(!isSeekable()) {
+            skipToGranulePosition(sid, granulePosition);
+            return;
+        }
+
+        // If we have an index, we know where to go
+        if(index != null) {
+            int page = index.findPageByGranule(sid, granulePosition);
+            if(page == -1) {
+                // Not in the file, so there's nothing left to read
+                seek(getSize());
+                return;
+            }
+
+            // Start from the previous page that ended a packet, to
+            //  get any packet which begins on it and ends on ours
+            int start = index.findPreviousGranulePage(sid, page);
+            seek(start == -1 ? 0 : index.getOffset(start));
+            skipToGranulePosition(sid, granulePosition);
+            return;
+        }
+
+        // The page we want starts somewhere in lo to hi. As granules
+        //  only ever increase, check the first page with a granule
+        //  after the mid-point, and narrow down from there
+        long lo = 0;
+        long hi = getSize();
+        OggPage reuse = null;
+        while(hi - lo > BUFFER_SIZE) {
+            long mid = lo + (hi - lo) / 2;
+            seek(mid);
+
+            OggPage page = null;
+            while( (page = readNextPage(reuse)) != null ) {
+                reuse = page;
+                if(lastPageOffset >= hi) {
+                    page = null;
+                    break;
+                }
+                // Only pages where a packet ends have a granule
+                if(page.getSid() == sid && page.getGranulePosition() != -1) {
+                    break;
+                }
+            }
+
+            if(page == null || page.getGranulePosition() >= granulePosition) {
+                hi = mid;
+            } else {
+                // Start from this page, so that we get any packet
+                //  which begins on it and ends on the one we want
+                lo = lastPageOffset;
+            }
+        }
+
+        // Close enough, finish with a short scan
+        seek(lo);
+        skipToGranulePosition(sid, granulePosition);
+    }
+
+    /**
+     * Finds the granule position of the last page of the given stream
+     *  which ends a packet, by reading backwards from the end of the
+     *  file, a growing chunk at a time.
+     * This reader's position isn't changed.
+     * @return The last granule position, or -1 if the reader isn't
+     *  seekable or the stream has no such pages
+     */
+    public long findLastGranulePosition(int sid) throws IOException {
+        if(!isSeekable()) {
+            return -1;
+        }
+
+        OggPacketReader tail = new OggPacketReader(channel);
+        long end = getSize();
+        long chunk = BUFFER_SIZE;
+        OggPage reuse = null;
+        while(end > 0) {
+            long start = Math.max(0, end - chunk);
+            tail.seek(start);
+
+            // Check the pages which start within this chunk
+            long last = -1;
+            OggPage page;
+            while( (page = tail.readNextPage(reuse)) != null ) {
+                reuse = page;
+                if(tail.getLastPageOffset() >= end) {
+                    break;
+                }
+                if(page.getSid() == sid && page.getGranulePosition() != -1) {
+                    last = page.getGranulePosition();
+                }
+            }
+            if(last != -1) {
+                return last;
+            }
+
+            // Try further back
+            end = start;
+            chunk *= 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads from the stream, or from the current mapped window
+     *  of the channel, mapping the next one in as needed
+     */
+    private int readSource(byte[] dest, int offset, int length) throws IOException {
+        if(channel == null) {
+            return inp.read(dest, offset, length);
+        }
+        if(sourcePosition >= getSize()) {
+            return -1;
+        }
+
+        if(window == null || sourcePosition < windowStart ||
+                sourcePosition >= windowStart + window.capacity()) {
+            long size = Math.min(MAP_WINDOW_SIZE, channelSize - sourcePosition);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, sourcePosition, size);
+            windowStart = sourcePosition;
+        }
+        int windowPos = (int)(sourcePosition - windowStart);
+        int toRead = Math.min(length, window.capacity() - windowPos);
+        window.position(windowPos);
+        window.get(dest, offset, toRead);
+        return toRead;
+    }
+
+    /**
+     * Can this reader be moved about the file with {@link #seek(long)}?
+     */
+    public boolean isSeekable() {
+        return channel != null;
+    }
+
+    /**
+     * Returns the size of the underlying file, if seekable,
+     *  or -1 if not known
+     */
+    public long getSize() throws IOException {
+        if(channel == null) {
+            return -1;
+        }
+        if(channelSize == -1) {
+            channelSize = channel.size();
+        }
+        return channelSize;
+    }
+
+    /**
+     * Returns the offset in the file of the next unread data,
+     *  which is the end of the page currently being read from.
+     */
+    public long getPosition() {
+        return sourcePosition - (bufferLen - bufferPos);
+    }
+
+    /**
+     * Returns the offset in the file of the start of the most
+     *  recently read page, or -1 if no pages have been read yet
+     */
+    public long getLastPageOffset() {
+        return lastPageOffset;
+    }
+    /**
+     * Did the most recently read page have a valid checksum? This
+     *  was already checked as the page was read, so unlike
+     *  {@link OggPage#isChecksumValid()} it needn't be worked out again
+     */
+    public boolean wasLastPageChecksumValid() {
+        return lastPageChecksumValid;
+    }
+
+    /**
+     * Moves to the given offset in the file, which need not be the
+     *  start of a page. Reading will carry on from the first valid
+     *  page found from there, skipping the remainder of any packet
+     *  that was started on an earlier page.
+     * Only supported for readers over a {@link FileChannel}.
+     */
+    public void seek(long offset) throws IOException {
+        if(channel == null) {
+            throw new IllegalStateException("Can only seek when reading from a FileChannel");
+        }
+        if(offset < 0 || offset > getSize()) {
+            throw new IllegalArgumentException("Offset " + offset + " outside of file of size " + getSize());
+        }
+
+        // Keep what's buffered if we can, otherwise start afresh
+        long bufferStart = sourcePosition - bufferLen;
+        if(offset >= bufferStart && offset <= sourcePosition) {
+            bufferPos = (int)(offset - bufferStart);
+        } else {
+            bufferPos = 0;
+            bufferLen = 0;
+            sourcePosition = offset;
+        }
+
+        it = null;
+        nextPacket = null;
+        verifyNextPage = true;
+        dropPartialPacket = true;
+    }
+
+    /**
+     * The meters for a reader, looked up once when set
+     */
+    private static class Meters {
+        private OggMetrics.Counter pages;
+        private OggMetrics.Counter bytes;
+        private OggMetrics.Histogram packetsPerPage;
+        private OggMetrics.Histogram pageFill;
+        private OggMetrics.Timer crcTime;
+        private OggMetrics.Counter resyncBytes;
+        private OggMetrics.Counter spannedPackets;
+
+        private Meters(OggMetrics metrics) {
+            pages = metrics.getCounter(OggMetrics.PAGES_READ);
+            bytes = metrics.getCounter(OggMetrics.BYTES_READ);
+            packetsPerPage = metrics.getHistogram(OggMetrics.PACKETS_PER_PAGE_READ);
+            pageFill = metrics.getHistogram(OggMetrics.PAGE_FILL_READ);
+            crcTime = metrics.getTimer(OggMetrics.CRC_TIME);
+            resyncBytes = metrics.getCounter(OggMetrics.RESYNC_BYTES);
+            spannedPackets = metrics.getCounter(OggMetrics.SPANNED_PACKETS_READ);
+        }
+
+        private void pageRead(OggPage page, int searched) {
+            pages.increment(1);
+            bytes.increment(page.getPageSize());
+            packetsPerPage.record(page.getNumPacketsEnded());
+            pageFill.record(page.getDataSize() * 100 / (255*255));
+            if(searched > 0) {
+                resyncBytes.increment(searched);
+            }
+        }
+    }
 }
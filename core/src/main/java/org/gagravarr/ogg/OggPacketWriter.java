@@ -24,6 +24,11 @@ public class OggPacketWriter implements Closeable {
     private int sid;
     private int sequenceNumber;
     private long currentGranulePosition = 0;
+    private OggPagingPolicy pagingPolicy;
+    private Meters meters;
+
+    private int pendingPackets = 0;
+    private long pendingStartGranule = 0;
 
     private ArrayList<OggPage> buffer =
             new ArrayList<OggPage>();
@@ -33,19 +38,21 @@ public class OggPacketWriter implements Closeable {
         this.sid = sid;
 
         this.sequenceNumber = 0;
+        setMetrics(parentFile.getMetrics());
     }
 
     /**
      * Sets the current granule position.
-     * The granule position will be applied to all
-     *  un-flushed packets, and all future packets.
+     * The granule position will be applied to the page
+     *  currently being filled, and all future pages. Any
+     *  un-flushed pages already filled keep theirs.
      * As such, you should normally either call a flush
      *  just before or just after this call. 
      */
     public void setGranulePosition(long position) {
         currentGranulePosition = position;
-        for(OggPage p : buffer) {
-            p.setGranulePosition(position);
+        if(buffer.size() > 0) {
+            buffer.get(buffer.size()-1).setGranulePosition(position);
         }
     }
     public long getCurrentGranulePosition() {
@@ -56,6 +63,33 @@ public class OggPacketWriter implements Closeable {
         return sid;
     }
 
+    /**
+     * Sets the policy used by {@link #writePacket(OggPacket, long)}
+     *  to decide when to write out the pending packets. If not set,
+     *  the {@link OggFile}'s policy is used.
+     */
+    public void setPagingPolicy(OggPagingPolicy policy) {
+        this.pagingPolicy = policy;
+    }
+    public OggPagingPolicy getPagingPolicy() {
+        if(pagingPolicy == null) {
+            return file.getPagingPolicy();
+        }
+        return pagingPolicy;
+    }
+
+    /**
+     * Sets where to record metrics on the pages and packets written,
+     *  or null to not record any. Defaults to the {@link OggFile}'s.
+     */
+    public void setMetrics(OggMetrics metrics) {
+        if(metrics == null) {
+            meters = null;
+        } else {
+            meters = new Meters(metrics);
+        }
+    }
+
     private OggPage getCurrentPage(boolean forceNew) {
         if(buffer.size() == 0 || forceNew) {
             OggPage page = new OggPage(sid, sequenceNumber++); 
@@ -82,11 +116,17 @@ public class OggPacketWriter implements Closeable {
             doneFirstPacket = true;
         }
 
+        if(pendingPackets == 0) {
+            pendingStartGranule = currentGranulePosition;
+        }
+        pendingPackets++;
+
         int size = packet.getData().length;
         boolean emptyPacket = (size==0);
 
         // Add to pages in turn
         OggPage page = getCurrentPage(false);
+        OggPage firstPage = page;
         int pos = 0;
         while( pos < size || emptyPacket) {
             pos = page.addPacket(packet, pos);
@@ -97,6 +137,10 @@ public class OggPacketWriter implements Closeable {
             emptyPacket = false;
         }
         packet.setParent(page);
+
+        if(meters != null && page != firstPage) {
+            meters.spannedPackets.increment(1);
+        }
     }
 
     /**
@@ -111,6 +155,42 @@ public class OggPacketWriter implements Closeable {
         }
     }
 
+    /**
+     * Buffers the given packet, which has the given granule
+     *  position (or -1 if it doesn't have one), and writes out
+     *  pages as they fill, so that only a little data is ever
+     *  held in memory however much is written.
+     * When to write is decided by the {@link OggPagingPolicy}, by
+     *  default when the granule position changes, so each page gets
+     *  the granule of the packets on it, or once 16kb is pending.
+     */
+    public void writePacket(OggPacket packet, long granulePosition) throws IOException {
+        OggPagingPolicy policy = getPagingPolicy();
+        if(granulePosition >= 0 &&
+                granulePosition != currentGranulePosition) {
+            if(pendingPackets > 0 &&
+                    policy.isFlushNeededForGranule(granulePosition - pendingStartGranule)) {
+                flush();
+            }
+            currentGranulePosition = granulePosition;
+        }
+
+        // Only the page the packet ends on gets its granule. Any
+        //  pages it just started or continued on which are now full
+        //  keep the granule of the last packet to end on them, or
+        //  have none if no packet did
+        int firstNewPage = buffer.size();
+        bufferPacket(packet);
+        int lastPage = buffer.size()-1;
+        for(int i=firstNewPage; i<lastPage; i++) {
+            buffer.get(i).setGranulePosition(-1);
+        }
+        buffer.get(lastPage).setGranulePosition(currentGranulePosition);
+        if(policy.isFlushNeeded(getSizePendingFlush(), pendingPackets)) {
+            flush();
+        }
+    }
+
     /**
      * Returns the number of bytes (excluding headers)
      *  currently waiting to be written to disk.
@@ -131,6 +211,9 @@ public class OggPacketWriter implements Closeable {
     /**
      * Writes all pending packets to the stream,
      *  splitting across pages as needed.
+     * The stream itself is only flushed if the
+     *  {@link OggFile} has been told to, see
+     *  {@link OggFile#setAutoFlush(boolean)}
      */
     public void flush() throws IOException {
         if(closed) {
@@ -139,10 +222,17 @@ public class OggPacketWriter implements Closeable {
 
         // Write in one go
         OggPage[] pages = buffer.toArray(new OggPage[buffer.size()]); 
-        file.writePages(pages);
+        if(meters != null) {
+            long start = System.nanoTime();
+            file.writePages(pages);
+            meters.pagesWritten(pages, System.nanoTime() - start);
+        } else {
+            file.writePages(pages);
+        }
 
         // Get ready for next time!
         buffer.clear();
+        pendingPackets = 0;
     }
 
     /**
@@ -162,4 +252,35 @@ public class OggPacketWriter implements Closeable {
 
         closed = true;
     }
+
+    /**
+     * The meters for a writer, looked up once when set
+     */
+    private static class Meters {
+        private OggMetrics.Counter pages;
+        private OggMetrics.Counter bytes;
+        private OggMetrics.Histogram packetsPerPage;
+        private OggMetrics.Histogram pageFill;
+        private OggMetrics.Counter spannedPackets;
+        private OggMetrics.Timer flushTime;
+
+        private Meters(OggMetrics metrics) {
+            pages = metrics.getCounter(OggMetrics.PAGES_WRITTEN);
+            bytes = metrics.getCounter(OggMetrics.BYTES_WRITTEN);
+            packetsPerPage = metrics.getHistogram(OggMetrics.PACKETS_PER_PAGE_WRITTEN);
+            pageFill = metrics.getHistogram(OggMetrics.PAGE_FILL_WRITTEN);
+            spannedPackets = metrics.getCounter(OggMetrics.SPANNED_PACKETS_WRITTEN);
+            flushTime = metrics.getTimer(OggMetrics.FLUSH_TIME);
+        }
+
+        private void pagesWritten(OggPage[] written, long nanos) {
+            flushTime.record(nanos);
+            pages.increment(written.length);
+            for(OggPage page : written) {
+                bytes.increment(page.getPageSize());
+                packetsPerPage.record(page.getNumPacketsEnded());
+                pageFill.record(page.getDataSize() * 100 / (255*255));
+            }
+        }
+    }
 }
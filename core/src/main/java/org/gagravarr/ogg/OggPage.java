@@ -13,13 +13,24 @@
  */
 package org.gagravarr.ogg;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
 public class OggPage {
+    /**
+     * Size of the fixed part of the page header, including the
+     *  capture pattern but excluding the lacing values
+     */
+    protected static final int HEADER_SIZE = 27;
+    /**
+     * The largest a page can ever be, with the full 255 lacing
+     *  values all of 255 bytes
+     */
+    protected static final int MAX_PAGE_SIZE = HEADER_SIZE + 255 + 255*255;
+
     private int sid;
     private int seqNum;
     private long checksum;
@@ -30,56 +41,91 @@ public class OggPage {
     private boolean isContinue;
 
     private int numLVs = 0;
-    private byte[] lvs = new byte[255];
+    private byte[] lvs;
+    private int dataSize;
     private byte[] data;
-    private ByteArrayOutputStream tmpData;
+    private byte[] checksumHeader;
 
     protected OggPage(int sid, int seqNum) {
         this.sid = sid;
         this.seqNum = seqNum;
-        this.tmpData = new ByteArrayOutputStream();
+        this.lvs = new byte[255];
     }
     /**
      * InputStream should be positioned *just after*
      *  the OggS capture pattern.
      */
     protected OggPage(InputStream inp) throws IOException {
-        int version = inp.read();
-        if(version != 0) {
-            throw new IllegalArgumentException("Found Ogg page in format " + version + " but we only support version 0");
-        }
+        byte[] header = new byte[HEADER_SIZE];
+        IOUtils.readFully(inp, header, 4, HEADER_SIZE-4);
+        readHeader(header, 0);
+
+        lvs = new byte[numLVs];
+        IOUtils.readFully(inp, lvs);
+        dataSize = sumLVs();
+
+        data = new byte[dataSize];
+        IOUtils.readFully(inp, data);
+    }
+    /**
+     * Creates the page from an already read-in block of data,
+     *  which must hold the whole page, starting from the
+     *  OggS capture pattern at the given offset.
+     */
+    protected OggPage(byte[] buffer, int offset) {
+        reset(buffer, offset);
+    }
+
+    /**
+     * Re-uses this page to hold a different one, from an already
+     *  read-in block of data, starting from the OggS capture pattern
+     *  at the given offset. The existing storage is used where it
+     *  is large enough, so once a few pages have been read into it,
+     *  no further allocations are needed.
+     * Any packets previously taken from this page will share its
+     *  data, so this must only be done once they're finished with!
+     */
+    protected void reset(byte[] buffer, int offset) {
+        readHeader(buffer, offset);
 
-        int flags = inp.read();
-        if((flags & 0x01) == 0x01) {
-            isContinue = true;
+        if(lvs == null || lvs.length < numLVs) {
+            lvs = new byte[numLVs];
         }
-        if((flags & 0x02) == 0x02) {
-            isBOS = true;
+        System.arraycopy(buffer, offset+HEADER_SIZE, lvs, 0, numLVs);
+        dataSize = sumLVs();
+
+        if(data == null || data.length < dataSize) {
+            data = new byte[dataSize];
         }
-        if((flags & 0x04) == 0x04) {
-            isEOS = true;
+        System.arraycopy(buffer, offset+HEADER_SIZE+numLVs, data, 0, dataSize);
+    }
+    /**
+     * Decodes the fixed part of the header, which starts with
+     *  the OggS capture pattern at the given offset
+     */
+    private void readHeader(byte[] header, int offset) {
+        int version = IOUtils.toInt(header[offset+4]);
+        if(version != 0) {
+            throw new IllegalArgumentException("Found Ogg page in format " + version + " but we only support version 0");
         }
 
-        granulePosition = IOUtils.getInt(
-                inp.read(), inp.read(), inp.read(), inp.read(),
-                inp.read(), inp.read(), inp.read(), inp.read()
-        );
-        sid = (int)IOUtils.getInt(
-                inp.read(), inp.read(), inp.read(), inp.read()
-        );
-        seqNum = (int)IOUtils.getInt(
-                inp.read(), inp.read(), inp.read(), inp.read()
-        );
-        checksum = IOUtils.getInt(
-                inp.read(), inp.read(), inp.read(), inp.read()
-        );
-
-        numLVs = inp.read();
-        lvs = new byte[numLVs];
-        IOUtils.readFully(inp, lvs);
+        int flags = header[offset+5];
+        isContinue = ((flags & 0x01) == 0x01);
+        isBOS = ((flags & 0x02) == 0x02);
+        isEOS = ((flags & 0x04) == 0x04);
 
-        data = new byte[ getDataSize() ];
-        IOUtils.readFully(inp, data);
+        granulePosition = IOUtils.getInt8(header, offset+6);
+        sid = (int)IOUtils.getInt4(header, offset+14);
+        seqNum = (int)IOUtils.getInt4(header, offset+18);
+        checksum = IOUtils.getInt4(header, offset+22);
+        numLVs = IOUtils.toInt(header[offset+26]);
+    }
+    private int sumLVs() {
+        int size = 0;
+        for(int i=0; i<numLVs; i++) {
+            size += IOUtils.toInt(lvs[i]);
+        }
+        return size;
     }
 
     /**
@@ -104,9 +150,11 @@ public class OggPage {
                 toAdd = remains;
             }
             lvs[i] = IOUtils.fromInt(toAdd);
-            tmpData.write(packet.getData(), offset, toAdd);
+            ensureDataCapacity(dataSize + toAdd);
+            System.arraycopy(packet.getData(), offset, data, dataSize, toAdd);
 
             numLVs++;
+            dataSize += toAdd;
             offset += toAdd;
             if(toAdd < 255) {
                 break;
@@ -115,6 +163,25 @@ public class OggPage {
 
         return offset;
     }
+    /**
+     * Grows the data array, if needed, to take at least the given
+     *  number of bytes. Growth is by doubling, up to the most a
+     *  page can hold, to avoid copying for every packet added.
+     */
+    private void ensureDataCapacity(int required) {
+        if(data != null && data.length >= required) {
+            return;
+        }
+        int capacity = (data == null ? 255 : data.length * 2);
+        capacity = Math.min(capacity, 255*255);
+        capacity = Math.max(capacity, required);
+
+        byte[] newData = new byte[capacity];
+        if(data != null) {
+            System.arraycopy(data, 0, newData, 0, dataSize);
+        }
+        data = newData;
+    }
 
     /**
      * Is the checksum for the page valid?
@@ -123,9 +190,15 @@ public class OggPage {
         if(checksum == 0)
             return true;
 
-        int crc = CRCUtils.getCRC(getHeader());
-        if(data != null && data.length > 0) {
-            crc = CRCUtils.getCRC(data, crc);
+        // Re-use the same space for the header each time
+        if(checksumHeader == null) {
+            checksumHeader = new byte[HEADER_SIZE + 255];
+        }
+        int headerSize = fillHeader(checksumHeader);
+
+        int crc = CRCUtils.getCRC(checksumHeader, 0, headerSize, 0);
+        if(data != null && dataSize > 0) {
+            crc = CRCUtils.getCRC(data, 0, dataSize, crc);
         }
 
         return (checksum == crc);
@@ -142,7 +215,7 @@ public class OggPage {
         // Do we have enough lvs spare?
         // (Each LV holds up to 255 bytes, and we're
         //  not allowed more than 255 of them)
-        int reqLVs = (int)Math.ceil(bytes / 255.0);
+        int reqLVs = (bytes + 254) / 255;
 
         if(numLVs + reqLVs > 255) {
             return false;
@@ -155,21 +228,14 @@ public class OggPage {
      */
     public int getPageSize() {
         // Header is 27 bytes + number of headers
-        int size = 27 + numLVs;
-        // Data size is given by lvs
-        size += getDataSize();
-        return size;
+        return HEADER_SIZE + numLVs + dataSize;
     }
     /**
      * How big is the page, excluding headers?
      */
     public int getDataSize() {
-        // Data size is given by lvs
-        int size = 0;
-        for(int i=0; i<numLVs; i++) {
-            size += IOUtils.toInt(lvs[i]);
-        }
-        return size;
+        // Data size is given by lvs, and kept up to date as they change
+        return dataSize;
     }
 
 
@@ -183,17 +249,49 @@ public class OggPage {
         return granulePosition;
     }
     public byte[] getData() {
-        if(tmpData != null) {
-            if(data == null || tmpData.size() != data.length) {
-                data = tmpData.toByteArray();
+        if(data == null || data.length != dataSize) {
+            // Page with spare space, only hand back the real data
+            byte[] d = new byte[dataSize];
+            if(data != null) {
+                System.arraycopy(data, 0, d, 0, dataSize);
             }
+            data = d;
         }
         return data;
     }
+    /**
+     * Returns the data as a buffer, without copying it
+     */
+    protected ByteBuffer getDataBuffer() {
+        if(data == null) {
+            return ByteBuffer.allocate(0);
+        }
+        return ByteBuffer.wrap(data, 0, dataSize);
+    }
 
     protected void setGranulePosition(long position) {
         this.granulePosition = position;
     }
+    /**
+     * Used when pages are renumbered, as more or fewer pages were
+     *  needed for the packets before them
+     */
+    protected void setSequenceNumber(int seqNum) {
+        this.seqNum = seqNum;
+    }
+
+    /**
+     * Is this the first page in its stream?
+     */
+    public boolean isBeginningOfStream() {
+        return isBOS;
+    }
+    /**
+     * Is this the last page in its stream?
+     */
+    public boolean isEndOfStream() {
+        return isEOS;
+    }
 
     /**
      * Is there a subsequent page containing the
@@ -240,30 +338,66 @@ public class OggPage {
     protected int getNumLVs() {
         return numLVs;
     }
+    /**
+     * How many packets end on this page, which is
+     *  the number of LVs less than 255
+     */
+    protected int getNumPacketsEnded() {
+        int ended = 0;
+        for(int i=0; i<numLVs; i++) {
+            if(lvs[i] != (byte)255) {
+                ended++;
+            }
+        }
+        return ended;
+    }
 
 
     public void writeHeader(OutputStream out) throws IOException {
-        byte[] header = getHeader();
-
-        // Ensure we've moved from tmpdata to data
-        getData();
+        byte[] header = new byte[HEADER_SIZE + numLVs];
+        writeHeader(header);
+        out.write(header);
+    }
+    /**
+     * Generates the checksum, and puts the header including
+     *  it into the given array, which must have space for the
+     *  full 255 lacing values if re-used between pages.
+     * @return The size of the header
+     */
+    protected int writeHeader(byte[] header) {
+        int headerSize = fillHeader(header);
 
         // Generate the checksum and store
-        int crc = CRCUtils.getCRC(header);
-        if(data != null && data.length > 0) {
-            crc = CRCUtils.getCRC(data, crc);
+        int crc = CRCUtils.getCRC(header, 0, headerSize, 0);
+        if(data != null && dataSize > 0) {
+            crc = CRCUtils.getCRC(data, 0, dataSize, crc);
         }
         IOUtils.putInt4(header, 22, crc);
         checksum = crc;
 
-        // Write out
-        out.write(header);
+        return headerSize;
+    }
+    /**
+     * Writes the data of the page, which follows the header
+     */
+    protected void writeData(OutputStream out) throws IOException {
+        if(data != null && dataSize > 0) {
+            out.write(data, 0, dataSize);
+        }
     }
     /**
      * Gets the header, but with a blank CRC field
      */
     protected byte[] getHeader() {
-        byte[] header = new byte[27 + numLVs];
+        byte[] header = new byte[HEADER_SIZE + numLVs];
+        fillHeader(header);
+        return header;
+    }
+    /**
+     * Writes the header, with a blank CRC field, into the
+     *  given array, returning how long it is
+     */
+    private int fillHeader(byte[] header) {
         header[0] = (byte)'O';
         header[1] = (byte)'g';
         header[2] = (byte)'g';
@@ -290,9 +424,11 @@ public class OggPage {
         // Checksum @ 22 left blank for now
 
         header[26] = IOUtils.fromInt(numLVs);
-        System.arraycopy(lvs, 0, header, 27, numLVs);
+        System.arraycopy(lvs, 0, header, HEADER_SIZE, numLVs);
+        // Checksum must be blank, in case this is being re-used
+        IOUtils.putInt4(header, 22, 0);
 
-        return header;
+        return HEADER_SIZE + numLVs;
     }
 
 
@@ -303,10 +439,19 @@ public class OggPage {
 
 
     public OggPacketIterator getPacketIterator() {
-        return new OggPacketIterator(null);
+        return new OggPacketIterator(null, false);
     }
     public OggPacketIterator getPacketIterator(OggPacketData previousPart) {
-        return new OggPacketIterator(previousPart);
+        return new OggPacketIterator(previousPart, false);
+    }
+    /**
+     * Returns an iterator over the packets in the page. If views
+     *  are requested, packets which are wholly within this page
+     *  will share the page's data rather than having their own
+     *  copy, and only packets spanning pages will be copied.
+     */
+    public OggPacketIterator getPacketIterator(OggPacketData previousPart, boolean views) {
+        return new OggPacketIterator(previousPart, views);
     }
     /**
      * Returns a full {@link OggPacket} if it can, otherwise
@@ -315,11 +460,13 @@ public class OggPage {
      */
     protected class OggPacketIterator implements Iterator<OggPacketData> {
         private OggPacketData prevPart;
+        private boolean views;
         private int currentLV = 0;
         private int currentOffset = 0;
 
-        private OggPacketIterator(OggPacketData previousPart) {
+        private OggPacketIterator(OggPacketData previousPart, boolean views) {
             this.prevPart = previousPart;
+            this.views = views;
         }
 
         public boolean hasNext() {
@@ -354,27 +501,34 @@ public class OggPage {
             }
 
             // Get the data
-            byte[] pd = new byte[packetSize];
-            for(int i=currentLV; i<(currentLV + packetLVs); i++) {
-                int size = IOUtils.toInt( lvs[i] );
-                int offset = (i-currentLV)*255;
-                System.arraycopy(data, currentOffset+offset, pd, offset, size);
-            }
-            // Tack on anything spare from last time too
+            byte[] pd;
+            int pdOffset = 0;
+            int pdLength = packetSize;
             if(prevPart != null) {
-                int prevSize = prevPart.getData().length;
-                byte[] fpd = new byte[prevSize+pd.length];
-                System.arraycopy(prevPart.getData(), 0, fpd, 0, prevSize);
-                System.arraycopy(pd, 0, fpd, prevSize, pd.length);
-
+                // Tack on to what was spare from last time
+                OggPacketData joined = prevPart.append(data, currentOffset, packetSize, continues);
                 prevPart = null;
-                pd = fpd;
+                if(continues) {
+                    // Still more to come on later pages
+                    currentLV += packetLVs;
+                    currentOffset += packetSize;
+                    return joined;
+                }
+                pd = joined.getData();
+                pdLength = pd.length;
+            } else if(views) {
+                // Share the page's data
+                pd = data;
+                pdOffset = currentOffset;
+            } else {
+                pd = new byte[packetSize];
+                System.arraycopy(data, currentOffset, pd, 0, packetSize);
             }
 
             // Create
             OggPacketData packet;
             if(continues) {
-                packet = new OggPacketData(pd);
+                packet = new OggPacketData(pd, pdOffset, pdLength);
             } else {
                 boolean packetBOS = false;
                 boolean packetEOS = false;
@@ -385,7 +539,7 @@ public class OggPage {
                     packetEOS = true;
                 }
 
-                packet = new OggPacket(OggPage.this, pd, packetBOS, packetEOS);
+                packet = new OggPacket(OggPage.this, pd, pdOffset, pdLength, packetBOS, packetEOS);
             }
 
             // Wind on
@@ -0,0 +1,328 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of all the {@link OggPage}s in a file, recording where
+ *  each one starts along with its stream, sequence number, granule
+ *  position and flags. This allows a reader to jump straight to
+ *  the page it wants, without having to search for it.
+ * Details are held in primitive arrays, so the index is compact,
+ *  and it can be saved alongside the file to avoid re-building it.
+ * Once built or loaded, an index may be used by several readers
+ *  on different threads at once.
+ */
+public class OggPageIndex {
+    private static final byte[] MAGIC = new byte[] { 'O','g','g','I' };
+    private static final int VERSION = 1;
+
+    protected static final byte FLAG_CONTINUATION = 0x01;
+    protected static final byte FLAG_BOS = 0x02;
+    protected static final byte FLAG_EOS = 0x04;
+
+    private long fileSize;
+    private int count;
+    private long[] offsets;
+    private int[] sids;
+    private int[] seqNums;
+    private long[] granules;
+    private byte[] flags;
+
+    /**
+     * For each stream, its pages, and those with a granule, built on
+     *  demand. Readers on several threads may share the index, so
+     *  these must be safe to fill from any of them.
+     */
+    private Map<Integer,int[]> streamPages = new ConcurrentHashMap<Integer, int[]>();
+    private Map<Integer,int[]> granulePages = new ConcurrentHashMap<Integer, int[]>();
+
+    protected OggPageIndex(long fileSize) {
+        this(fileSize, 64);
+    }
+    private OggPageIndex(long fileSize, int capacity) {
+        this.fileSize = fileSize;
+        this.offsets = new long[capacity];
+        this.sids = new int[capacity];
+        this.seqNums = new int[capacity];
+        this.granules = new long[capacity];
+        this.flags = new byte[capacity];
+    }
+
+    /**
+     * Builds the index by reading every page from the
+     *  start of the given seekable file.
+     */
+    protected static OggPageIndex build(OggPacketReader r) throws IOException {
+        OggPageIndex index = new OggPageIndex(r.getSize());
+        r.seek(0);
+
+        OggPage page = null;
+        while( (page = r.readNextPage(page)) != null ) {
+            index.add(r.getLastPageOffset(), page);
+        }
+        return index;
+    }
+
+    protected void add(long offset, OggPage page) {
+        if(count == offsets.length) {
+            grow(count * 2);
+        }
+
+        byte f = 0;
+        if(page.isContinuation()) {
+            f |= FLAG_CONTINUATION;
+        }
+        if(page.isBeginningOfStream()) {
+            f |= FLAG_BOS;
+        }
+        if(page.isEndOfStream()) {
+            f |= FLAG_EOS;
+        }
+
+        offsets[count] = offset;
+        sids[count] = page.getSid();
+        seqNums[count] = page.getSequenceNumber();
+        granules[count] = page.getGranulePosition();
+        flags[count] = f;
+        count++;
+
+        streamPages.clear();
+        granulePages.clear();
+    }
+
+    private void grow(int capacity) {
+        long[] newOffsets = new long[capacity];
+        int[] newSids = new int[capacity];
+        int[] newSeqNums = new int[capacity];
+        long[] newGranules = new long[capacity];
+        byte[] newFlags = new byte[capacity];
+        System.arraycopy(offsets, 0, newOffsets, 0, count);
+        System.arraycopy(sids, 0, newSids, 0, count);
+        System.arraycopy(seqNums, 0, newSeqNums, 0, count);
+        System.arraycopy(granules, 0, newGranules, 0, count);
+        System.arraycopy(flags, 0, newFlags, 0, count);
+        offsets = newOffsets;
+        sids = newSids;
+        seqNums = newSeqNums;
+        granules = newGranules;
+        flags = newFlags;
+    }
+
+    /**
+     * The size of the file which was indexed, which can be used
+     *  to spot if a saved index no longer matches its file
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+    /**
+     * How many pages are in the file
+     */
+    public int getPageCount() {
+        return count;
+    }
+
+    public long getOffset(int page) {
+        checkPage(page);
+        return offsets[page];
+    }
+    public int getSid(int page) {
+        checkPage(page);
+        return sids[page];
+    }
+    public int getSequenceNumber(int page) {
+        checkPage(page);
+        return seqNums[page];
+    }
+    public long getGranulePosition(int page) {
+        checkPage(page);
+        return granules[page];
+    }
+    public boolean isContinuation(int page) {
+        checkPage(page);
+        return (flags[page] & FLAG_CONTINUATION) != 0;
+    }
+    public boolean isBeginningOfStream(int page) {
+        checkPage(page);
+        return (flags[page] & FLAG_BOS) != 0;
+    }
+    public boolean isEndOfStream(int page) {
+        checkPage(page);
+        return (flags[page] & FLAG_EOS) != 0;
+    }
+    private void checkPage(int page) {
+        if(page < 0 || page >= count) {
+            throw new IndexOutOfBoundsException("Page " + page + " not found, only " + count + " pages");
+        }
+    }
+
+    /**
+     * Finds the page of the given stream with the given sequence
+     *  number, or -1 if there isn't one
+     */
+    public int findPageBySequenceNumber(int sid, int sequenceNumber) {
+        int[] pages = getStreamPages(sid, false);
+        int lo = 0;
+        int hi = pages.length;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(seqNums[pages[mid]] < sequenceNumber) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if(lo < pages.length && seqNums[pages[lo]] == sequenceNumber) {
+            return pages[lo];
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first page of the given stream which ends a packet
+     *  and has a granule position of at least that given, or -1 if
+     *  there isn't one. This takes O(log n) once the stream's pages
+     *  have been looked up the first time.
+     */
+    public int findPageByGranule(int sid, long granulePosition) {
+        int[] pages = getStreamPages(sid, true);
+        int lo = 0;
+        int hi = pages.length;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(granules[pages[mid]] < granulePosition) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if(lo == pages.length) {
+            return -1;
+        }
+        return pages[lo];
+    }
+
+    /**
+     * Finds the last page of the given stream, before the given
+     *  page, which ends a packet, or -1 if there isn't one
+     */
+    public int findPreviousGranulePage(int sid, int page) {
+        int[] pages = getStreamPages(sid, true);
+        int idx = Arrays.binarySearch(pages, page);
+        if(idx < 0) {
+            idx = -idx - 1;
+        }
+        if(idx == 0) {
+            return -1;
+        }
+        return pages[idx-1];
+    }
+
+    /**
+     * Returns the pages of the given stream, in order, optionally
+     *  only those which end a packet and so have a granule
+     */
+    private int[] getStreamPages(int sid, boolean withGranule) {
+        Map<Integer,int[]> cache = (withGranule ? granulePages : streamPages);
+        int[] pages = cache.get(sid);
+        if(pages == null) {
+            int found = 0;
+            pages = new int[count];
+            for(int i=0; i<count; i++) {
+                if(sids[i] == sid && (!withGranule || granules[i] != -1)) {
+                    pages[found++] = i;
+                }
+            }
+            int[] trimmed = new int[found];
+            System.arraycopy(pages, 0, trimmed, 0, found);
+            pages = trimmed;
+            cache.put(sid, pages);
+        }
+        return pages;
+    }
+
+    /**
+     * Saves the index, so that it can later be re-loaded
+     *  with {@link #read(InputStream)}
+     */
+    public void write(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        IOUtils.writeInt8(out, fileSize);
+        IOUtils.writeInt4(out, count);
+
+        byte[] entry = new byte[8+4+4+8+1];
+        for(int i=0; i<count; i++) {
+            IOUtils.putInt8(entry, 0, offsets[i]);
+            IOUtils.putInt4(entry, 8, sids[i]);
+            IOUtils.putInt4(entry, 12, seqNums[i]);
+            IOUtils.putInt8(entry, 16, granules[i]);
+            entry[24] = flags[i];
+            out.write(entry);
+        }
+    }
+
+    /**
+     * Loads an index previously saved with {@link #write(OutputStream)}
+     */
+    public static OggPageIndex read(InputStream inp) throws IOException {
+        byte[] header = new byte[4+1+8+4];
+        IOUtils.readFully(inp, header);
+        if(! IOUtils.byteRangeMatches(MAGIC, header, 0)) {
+            throw new IllegalArgumentException("Not an Ogg Page Index");
+        }
+        if(header[4] != VERSION) {
+            throw new IllegalArgumentException("Found Ogg Page Index version " + header[4] + " but we only support version " + VERSION);
+        }
+        long fileSize = IOUtils.getInt8(header, 5);
+        long count = IOUtils.getInt4(header, 13);
+
+        // Every page has at least a full header, which limits how
+        //  many there can really be in a file of that size
+        if(fileSize < 0 || count < 0 || count > Integer.MAX_VALUE ||
+                count > fileSize / OggPage.HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid Ogg Page Index of " + count +
+                    " pages for a file of " + fileSize + " bytes");
+        }
+
+        // Grow as entries are read, rather than trusting the count
+        //  enough to allocate for all of them up-front
+        OggPageIndex index = new OggPageIndex(fileSize, (int)Math.max(Math.min(count, 4096), 1));
+        byte[] entry = new byte[8+4+4+8+1];
+        for(int i=0; i<count; i++) {
+            IOUtils.readFully(inp, entry);
+            if(i == index.offsets.length) {
+                index.grow(i * 2);
+            }
+            index.offsets[i] = IOUtils.getInt8(entry, 0);
+            index.sids[i] = (int)IOUtils.getInt4(entry, 8);
+            index.seqNums[i] = (int)IOUtils.getInt4(entry, 12);
+            index.granules[i] = IOUtils.getInt8(entry, 16);
+            index.flags[i] = entry[24];
+            index.count = i+1;
+        }
+        return index;
+    }
+
+    public String toString() {
+        return "Ogg Page Index - " + count + " pages over " + fileSize + " bytes";
+    }
+}
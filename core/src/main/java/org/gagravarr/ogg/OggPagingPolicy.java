@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+/**
+ * Decides when an {@link OggPacketWriter} should write out the
+ *  packets it has pending, and so where the page boundaries fall.
+ * Bigger pages mean less Ogg overhead, smaller ones mean less
+ *  latency, so pick to suit - archiving to disk wants the former,
+ *  live streaming the latter. Sub-class to provide other rules.
+ * The defaults match the historic behaviour, of a new page for
+ *  every new granule position, or once 16kb is pending.
+ */
+public class OggPagingPolicy {
+    /**
+     * RFC 3533 suggests that pages should normally be in
+     *  the 4-8kb range, we default to a little bigger
+     */
+    public static final int DEFAULT_TARGET_PAGE_SIZE = 16384;
+
+    private int targetPageSize = DEFAULT_TARGET_PAGE_SIZE;
+    private int maxPacketsPerPage = -1;
+    private long maxPageGranules = 0;
+    private boolean flushEveryPacket = false;
+
+    public OggPagingPolicy() {}
+
+    /**
+     * Returns a policy which writes out every packet as soon as
+     *  it is given, at the cost of more Ogg overhead, for live
+     *  streams where latency matters most. Use this along with
+     *  {@link OggFile#setAutoFlush(boolean)}.
+     */
+    public static OggPagingPolicy lowLatency() {
+        OggPagingPolicy policy = new OggPagingPolicy();
+        policy.setFlushEveryPacket(true);
+        return policy;
+    }
+    /**
+     * Returns a policy which fills pages as much as it can, without
+     *  splitting on granule changes, for the smallest overhead
+     */
+    public static OggPagingPolicy lowOverhead() {
+        OggPagingPolicy policy = new OggPagingPolicy();
+        policy.setTargetPageSize(OggPage.MAX_PAGE_SIZE - OggPage.HEADER_SIZE - 255 - 255);
+        policy.setMaxPageGranules(-1);
+        return policy;
+    }
+
+    /**
+     * Once more than this many bytes of packet data are pending,
+     *  they will be written. Defaults to 16kb, use -1 for no limit.
+     */
+    public int getTargetPageSize() {
+        return targetPageSize;
+    }
+    public void setTargetPageSize(int targetPageSize) {
+        this.targetPageSize = targetPageSize;
+    }
+
+    /**
+     * Once this many packets are pending, they will be written.
+     *  Defaults to -1, for no limit.
+     */
+    public int getMaxPacketsPerPage() {
+        return maxPacketsPerPage;
+    }
+    public void setMaxPacketsPerPage(int maxPacketsPerPage) {
+        this.maxPacketsPerPage = maxPacketsPerPage;
+    }
+
+    /**
+     * How many granules the packets on one page may cover. If a
+     *  packet with a later granule position would take it over this,
+     *  the pending packets are written first. Defaults to 0, for a
+     *  new page every time the granule changes, use -1 for no limit.
+     */
+    public long getMaxPageGranules() {
+        return maxPageGranules;
+    }
+    public void setMaxPageGranules(long maxPageGranules) {
+        this.maxPageGranules = maxPageGranules;
+    }
+
+    /**
+     * Should every packet be written as soon as it is given?
+     */
+    public boolean isFlushEveryPacket() {
+        return flushEveryPacket;
+    }
+    public void setFlushEveryPacket(boolean flushEveryPacket) {
+        this.flushEveryPacket = flushEveryPacket;
+    }
+
+    /**
+     * Should the pending packets be written out, before adding one
+     *  with a new granule position, given how many granules the
+     *  page would then cover?
+     */
+    protected boolean isFlushNeededForGranule(long pageGranules) {
+        if(maxPageGranules < 0) {
+            return false;
+        }
+        return pageGranules > maxPageGranules;
+    }
+
+    /**
+     * Should the pending packets be written out, now that a packet
+     *  has been added, given how much is now pending?
+     */
+    protected boolean isFlushNeeded(int pendingBytes, int pendingPackets) {
+        if(flushEveryPacket) {
+            return true;
+        }
+        if(targetPageSize >= 0 && pendingBytes > targetPageSize) {
+            return true;
+        }
+        if(maxPacketsPerPage > 0 && pendingPackets >= maxPacketsPerPage) {
+            return true;
+        }
+        return false;
+    }
+
+    public String toString() {
+        return "Ogg Paging Policy - target " + targetPageSize + " bytes, max " +
+               maxPacketsPerPage + " packets, max " + maxPageGranules + " granules" +
+               (flushEveryPacket ? ", flushing every packet" : "");
+    }
+}
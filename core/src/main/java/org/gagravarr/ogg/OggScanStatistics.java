@@ -0,0 +1,316 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Page level statistics on a whole file, or a range of it, as
+ *  found by {@link OggFile#scan(int)}. This covers the number of
+ *  pages and their sizes, any with invalid checksums, and for each
+ *  stream its range of granule positions and any gaps in the page
+ *  sequence numbers, which indicate missing or corrupt pages.
+ * Parts of the file which couldn't be read as pages at all, such
+ *  as more junk than a reader will search through, are skipped
+ *  and counted as unscanned, rather than stopping the scan.
+ */
+public class OggScanStatistics {
+    private long pages;
+    private long pageBytes;
+    private long headerBytes;
+    private long invalidChecksums;
+    private long unscannedRanges;
+    private long unscannedBytes;
+    private Map<Integer,StreamStatistics> streams =
+            new LinkedHashMap<Integer, StreamStatistics>();
+
+    protected OggScanStatistics() {}
+
+    /**
+     * Scans the pages which start from the given offset, up to
+     *  (but excluding) the given end offset. Pages which spill
+     *  over the end are included, and a page which spills over
+     *  the start is left for the range before.
+     * Where no page can be read, the reader is moved on by its
+     *  search limit and tries again, with the bytes up to the next
+     *  page found recorded as unscanned.
+     */
+    protected static OggScanStatistics scan(OggPacketReader r, long start, long end) throws IOException {
+        OggScanStatistics stats = new OggScanStatistics();
+        r.seek(start);
+
+        // Where the last good page finished, and where we last
+        //  tried again from if it couldn't be read past there
+        long scannedTo = start;
+        long retryAt = -1;
+
+        OggPage page = null;
+        while(true) {
+            try {
+                page = r.readNextPage(page);
+            } catch(IOException e) {
+                // Too much junk to search through, or a cut-off page,
+                //  so skip on past the part searched and try again
+                int searchLimit = r.getSearchLimit();
+                retryAt = Math.max(retryAt, scannedTo) + Math.max(1, searchLimit);
+                if(searchLimit >= 0 && retryAt < end) {
+                    r.seek(retryAt);
+                    continue;
+                }
+                page = null;
+            }
+
+            long pageOffset = (page == null ? end : Math.min(end, r.getLastPageOffset()));
+            if(retryAt != -1) {
+                if(pageOffset > scannedTo) {
+                    stats.unscannedRanges++;
+                    stats.unscannedBytes += pageOffset - scannedTo;
+                }
+                retryAt = -1;
+            }
+            if(page == null || r.getLastPageOffset() >= end) {
+                break;
+            }
+
+            stats.add(page, r.wasLastPageChecksumValid());
+            scannedTo = r.getLastPageOffset() + page.getPageSize();
+        }
+        return stats;
+    }
+
+    /**
+     * Records the page, using the checksum result found by the
+     *  reader, rather than working it out again
+     */
+    protected void add(OggPage page, boolean checksumValid) {
+        pages++;
+        pageBytes += page.getPageSize();
+        headerBytes += page.getPageSize() - page.getDataSize();
+        if(! checksumValid) {
+            invalidChecksums++;
+        }
+
+        StreamStatistics stream = streams.get(page.getSid());
+        if(stream == null) {
+            stream = new StreamStatistics(page.getSid());
+            streams.put(page.getSid(), stream);
+        }
+        stream.add(page);
+    }
+
+    /**
+     * Adds on the statistics of the range which directly follows ours
+     */
+    protected void merge(OggScanStatistics next) {
+        pages += next.pages;
+        pageBytes += next.pageBytes;
+        headerBytes += next.headerBytes;
+        invalidChecksums += next.invalidChecksums;
+        unscannedRanges += next.unscannedRanges;
+        unscannedBytes += next.unscannedBytes;
+
+        for(StreamStatistics nextStream : next.streams.values()) {
+            StreamStatistics stream = streams.get(nextStream.sid);
+            if(stream == null) {
+                streams.put(nextStream.sid, nextStream);
+            } else {
+                stream.merge(nextStream);
+            }
+        }
+    }
+
+    /**
+     * How many pages were found
+     */
+    public long getPageCount() {
+        return pages;
+    }
+    /**
+     * How many bytes the pages took, including their headers
+     */
+    public long getPageBytes() {
+        return pageBytes;
+    }
+    /**
+     * How many bytes of the pages were headers, rather than data
+     */
+    public long getHeaderBytes() {
+        return headerBytes;
+    }
+    /**
+     * How many pages had checksums which didn't match their contents.
+     *  (Those at the very start of a scanned range can't be told apart
+     *  from junk, so get skipped instead.)
+     */
+    public long getInvalidChecksumCount() {
+        return invalidChecksums;
+    }
+
+    /**
+     * How many parts of the file couldn't be read as pages, such
+     *  as ones with more junk than the reader will search through,
+     *  so were skipped over
+     */
+    public long getUnscannedRangeCount() {
+        return unscannedRanges;
+    }
+    /**
+     * How many bytes were skipped over without being able to
+     *  read them as pages
+     */
+    public long getUnscannedBytes() {
+        return unscannedBytes;
+    }
+
+    /**
+     * Returns the statistics for each stream, in the order found
+     */
+    public Collection<StreamStatistics> getStreams() {
+        return streams.values();
+    }
+    /**
+     * Returns the statistics for the given stream, or null if
+     *  there were no pages for it
+     */
+    public StreamStatistics getStream(int sid) {
+        return streams.get(sid);
+    }
+
+    public String toString() {
+        return "Ogg Scan - " + pages + " pages, " + pageBytes + " bytes, " +
+               invalidChecksums + " invalid checksums, " + unscannedBytes + " unscanned bytes, " +
+               streams.size() + " streams";
+    }
+
+    /**
+     * Page level statistics for one stream
+     */
+    public static class StreamStatistics {
+        private int sid;
+        private long pages;
+        private long dataBytes;
+        private int firstSequenceNumber = -1;
+        private int lastSequenceNumber = -1;
+        private long sequenceGaps;
+        private long firstGranule = -1;
+        private long lastGranule = -1;
+        private boolean beginningOfStream;
+        private boolean endOfStream;
+
+        private StreamStatistics(int sid) {
+            this.sid = sid;
+        }
+
+        private void add(OggPage page) {
+            if(pages == 0) {
+                firstSequenceNumber = page.getSequenceNumber();
+            } else if(page.getSequenceNumber() != lastSequenceNumber+1) {
+                sequenceGaps++;
+            }
+            lastSequenceNumber = page.getSequenceNumber();
+
+            // Only pages where a packet ends have a granule
+            long granule = page.getGranulePosition();
+            if(granule != -1) {
+                if(firstGranule == -1) {
+                    firstGranule = granule;
+                }
+                lastGranule = granule;
+            }
+
+            pages++;
+            dataBytes += page.getDataSize();
+            if(page.isBeginningOfStream()) {
+                beginningOfStream = true;
+            }
+            if(page.isEndOfStream()) {
+                endOfStream = true;
+            }
+        }
+
+        private void merge(StreamStatistics next) {
+            if(next.firstSequenceNumber != lastSequenceNumber+1) {
+                sequenceGaps++;
+            }
+            sequenceGaps += next.sequenceGaps;
+            lastSequenceNumber = next.lastSequenceNumber;
+
+            if(firstGranule == -1) {
+                firstGranule = next.firstGranule;
+            }
+            if(next.lastGranule != -1) {
+                lastGranule = next.lastGranule;
+            }
+
+            pages += next.pages;
+            dataBytes += next.dataBytes;
+            beginningOfStream |= next.beginningOfStream;
+            endOfStream |= next.endOfStream;
+        }
+
+        public int getSid() {
+            return sid;
+        }
+        public long getPageCount() {
+            return pages;
+        }
+        /**
+         * How many bytes of packet data the stream's pages held
+         */
+        public long getDataBytes() {
+            return dataBytes;
+        }
+        public int getFirstSequenceNumber() {
+            return firstSequenceNumber;
+        }
+        public int getLastSequenceNumber() {
+            return lastSequenceNumber;
+        }
+        /**
+         * How many times a page's sequence number didn't follow on
+         *  from the one before, normally because of missing pages
+         */
+        public long getSequenceGapCount() {
+            return sequenceGaps;
+        }
+        /**
+         * The first granule position given, or -1 if none were
+         */
+        public long getFirstGranulePosition() {
+            return firstGranule;
+        }
+        /**
+         * The last granule position given, or -1 if none were
+         */
+        public long getLastGranulePosition() {
+            return lastGranule;
+        }
+        public boolean hasBeginningOfStream() {
+            return beginningOfStream;
+        }
+        public boolean hasEndOfStream() {
+            return endOfStream;
+        }
+
+        public String toString() {
+            return "Ogg Stream " + Integer.toHexString(sid) + " - " + pages + " pages, " +
+                   "sequence " + firstSequenceNumber + "-" + lastSequenceNumber + ", " +
+                   "granules " + firstGranule + "-" + lastGranule + ", " +
+                   sequenceGaps + " gaps";
+        }
+    }
+}
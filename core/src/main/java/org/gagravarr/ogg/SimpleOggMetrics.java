@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A simple, in-memory implementation of {@link OggMetrics}, which
+ *  keeps running totals for each meter, for reporting or for
+ *  passing on elsewhere periodically.
+ * Counters are striped over several slots, picked by thread, so
+ *  that readers on many threads don't all contend on one value.
+ */
+public class SimpleOggMetrics implements OggMetrics {
+    private ConcurrentMap<String,SimpleCounter> counters =
+            new ConcurrentHashMap<String, SimpleCounter>();
+    private ConcurrentMap<String,SimpleHistogram> histograms =
+            new ConcurrentHashMap<String, SimpleHistogram>();
+
+    public SimpleCounter getCounter(String name) {
+        SimpleCounter counter = counters.get(name);
+        if(counter == null) {
+            counters.putIfAbsent(name, new SimpleCounter());
+            counter = counters.get(name);
+        }
+        return counter;
+    }
+    public SimpleHistogram getHistogram(String name) {
+        SimpleHistogram histogram = histograms.get(name);
+        if(histogram == null) {
+            histograms.putIfAbsent(name, new SimpleHistogram());
+            histogram = histograms.get(name);
+        }
+        return histogram;
+    }
+    /**
+     * Timers are histograms of times in nanoseconds
+     */
+    public SimpleHistogram getTimer(String name) {
+        return getHistogram(name);
+    }
+
+    /**
+     * Returns the current value of every counter, by name
+     */
+    public Map<String,Long> getCounts() {
+        Map<String,Long> counts = new TreeMap<String, Long>();
+        for(Map.Entry<String,SimpleCounter> e : counters.entrySet()) {
+            counts.put(e.getKey(), e.getValue().get());
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    public String toString() {
+        StringBuffer s = new StringBuffer("Ogg Metrics -");
+        for(Map.Entry<String,Long> e : getCounts().entrySet()) {
+            s.append(' ').append(e.getKey()).append('=').append(e.getValue());
+        }
+        for(Map.Entry<String,SimpleHistogram> e : new TreeMap<String, SimpleHistogram>(histograms).entrySet()) {
+            s.append(' ').append(e.getKey()).append('=').append(e.getValue());
+        }
+        return s.toString();
+    }
+
+    /**
+     * A counter, spread over several slots to reduce contention
+     */
+    public static class SimpleCounter implements Counter {
+        private static final int STRIPES = 16;
+        /** Slots are spaced out to keep them on different cache lines */
+        private static final int SPACING = 8;
+        private AtomicLongArray values = new AtomicLongArray(STRIPES * SPACING);
+
+        public void increment(long amount) {
+            int stripe = (int)Thread.currentThread().getId() & (STRIPES-1);
+            values.addAndGet(stripe * SPACING, amount);
+        }
+        public long get() {
+            long total = 0;
+            for(int i=0; i<STRIPES; i++) {
+                total += values.get(i * SPACING);
+            }
+            return total;
+        }
+
+        public String toString() {
+            return Long.toString(get());
+        }
+    }
+
+    /**
+     * Records the count, total, minimum and maximum of the values,
+     *  along with how many fell into each power of two sized bucket
+     */
+    public static class SimpleHistogram implements Histogram, Timer {
+        private SimpleCounter count = new SimpleCounter();
+        private SimpleCounter total = new SimpleCounter();
+        private AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+        private AtomicLongArray buckets = new AtomicLongArray(64);
+
+        public void record(long value) {
+            count.increment(1);
+            total.increment(value);
+
+            long current;
+            while(value < (current = min.get())) {
+                if(min.compareAndSet(current, value)) break;
+            }
+            while(value > (current = max.get())) {
+                if(max.compareAndSet(current, value)) break;
+            }
+
+            buckets.incrementAndGet(getBucket(value));
+        }
+
+        /**
+         * Bucket 0 holds values of zero or less, and bucket n
+         *  holds values from 2^(n-1) up to (2^n)-1
+         */
+        public static int getBucket(long value) {
+            if(value <= 0) {
+                return 0;
+            }
+            return 64 - Long.numberOfLeadingZeros(value);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+        public long getTotal() {
+            return total.get();
+        }
+        public double getMean() {
+            long c = count.get();
+            if(c == 0) {
+                return 0;
+            }
+            return (double)total.get() / c;
+        }
+        /**
+         * The smallest value recorded, or 0 if there were none
+         */
+        public long getMin() {
+            return count.get() == 0 ? 0 : min.get();
+        }
+        /**
+         * The largest value recorded, or 0 if there were none
+         */
+        public long getMax() {
+            return count.get() == 0 ? 0 : max.get();
+        }
+        public long getBucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        public String toString() {
+            return "[count=" + getCount() + ", mean=" + getMean() +
+                   ", min=" + getMin() + ", max=" + getMax() + "]";
+        }
+    }
+}
@@ -62,6 +62,32 @@ public class OggAudioStatistics {
         }
 
         // Calculate the duration from the granules, if found
+        calculateDuration(info);
+    }
+
+    /**
+     * Calculate only the duration, which for a seekable file is
+     *  done by reading just the last few pages, rather than all
+     *  of the audio. Other statistics won't be available.
+     * For non-seekable files, or streams which aren't an
+     *  {@link OggSeekableAudioStream}, this is the same as
+     *  {@link #calculate()}
+     */
+    public void calculateDurationOnly() throws IOException {
+        long granule = -1;
+        if (audio instanceof OggSeekableAudioStream) {
+            granule = ((OggSeekableAudioStream)audio).getLastGranulePosition();
+        }
+        if (granule == -1) {
+            calculate();
+            return;
+        }
+
+        lastGranule = granule;
+        calculateDuration(headers.getInfo());
+    }
+
+    private void calculateDuration(OggAudioInfoHeader info) {
         if (lastGranule > 0) {
             long samples = lastGranule - info.getPreSkip();
             double sampleRate = info.getSampleRate();
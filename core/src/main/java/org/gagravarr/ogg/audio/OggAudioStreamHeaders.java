@@ -15,6 +15,7 @@ package org.gagravarr.ogg.audio;
 
 import org.gagravarr.flac.FlacFirstOggPacket;
 import org.gagravarr.flac.FlacTags;
+import org.gagravarr.ogg.OggDiagnosticListener;
 import org.gagravarr.ogg.OggPacket;
 import org.gagravarr.ogg.OggStreamAudioData;
 import org.gagravarr.ogg.OggStreamIdentifier;
@@ -86,12 +87,15 @@ public class OggAudioStreamHeaders implements OggAudioHeaders {
      * Creates an appropriate high level packet
      */
     protected OggStreamPacket createNext(OggPacket packet) {
+        return createNext(packet, null);
+    }
+    private OggStreamPacket createNext(OggPacket packet, OggDiagnosticListener diagnostics) {
         if (type == OggStreamIdentifier.OGG_VORBIS) {
-            return VorbisPacketFactory.create(packet);
+            return VorbisPacketFactory.create(packet, diagnostics);
         } else if (type == OggStreamIdentifier.SPEEX_AUDIO) {
-            return SpeexPacketFactory.create(packet);
+            return SpeexPacketFactory.create(packet, diagnostics);
         } else if (type == OggStreamIdentifier.OPUS_AUDIO) {
-            return OpusPacketFactory.create(packet);
+            return OpusPacketFactory.create(packet, diagnostics);
         } else if (type == OggStreamIdentifier.OGG_FLAC) {
             // TODO Finish FLAC support
             return null;
@@ -106,10 +110,19 @@ public class OggAudioStreamHeaders implements OggAudioHeaders {
      * @return Do any more headers remain to be populated?
      */
     public boolean populate(OggPacket packet) {
+        return populate(packet, null);
+    }
+    /**
+     * Populates with the next header, reporting any problems
+     *  with the comments to the given listener
+     *
+     * @return Do any more headers remain to be populated?
+     */
+    public boolean populate(OggPacket packet, OggDiagnosticListener diagnostics) {
         // TODO Finish the flac support properly
         if (type == OggStreamIdentifier.OGG_FLAC) {
             if (tags == null) {
-                tags = new FlacTags(packet);
+                tags = new FlacTags(packet, false, diagnostics);
                 return true;
             } else {
                 // TODO Finish FLAC support
@@ -117,7 +130,7 @@ public class OggAudioStreamHeaders implements OggAudioHeaders {
             }
         }
 
-        OggStreamPacket sPacket = createNext(packet);
+        OggStreamPacket sPacket = createNext(packet, diagnostics);
         if (sPacket instanceof OggAudioTagsHeader) {
             tags = (OggAudioTagsHeader)sPacket;
 
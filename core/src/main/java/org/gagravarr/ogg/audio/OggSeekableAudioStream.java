@@ -0,0 +1,29 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg.audio;
+
+import java.io.IOException;
+
+/**
+ * An {@link OggAudioStream} which, when read from a seekable file,
+ *  can find where the audio ends without reading all of it.
+ */
+public interface OggSeekableAudioStream extends OggAudioStream {
+    /**
+     * Returns the granule position at the end of the audio, found
+     *  by reading backwards from the end of the file, or -1 if the
+     *  file isn't seekable.
+     */
+    public long getLastGranulePosition() throws IOException;
+}
@@ -18,6 +18,7 @@ import static org.gagravarr.opus.OpusPacket.MAGIC_TAGS_BYTES;
 
 import org.gagravarr.ogg.HighLevelOggStreamPacket;
 import org.gagravarr.ogg.IOUtils;
+import org.gagravarr.ogg.OggDiagnosticListener;
 import org.gagravarr.ogg.OggPacket;
 
 /**
@@ -54,6 +55,14 @@ public class OpusPacketFactory extends HighLevelOggStreamPacket {
     *  instance based on the type.
     */
    public static OpusPacket create(OggPacket packet) {
+      return create(packet, null);
+   }
+   /**
+    * Creates the appropriate {@link OpusPacket}
+    *  instance based on the type, reporting any problems
+    *  with the comments to the given listener.
+    */
+   public static OpusPacket create(OggPacket packet, OggDiagnosticListener diagnostics) {
        // Special header types detection
        if(isOpusSpecial(packet)) {
            byte type = packet.getData()[4];
@@ -61,7 +70,7 @@ public class OpusPacketFactory extends HighLevelOggStreamPacket {
            case (byte)'H': // OpusHead
                return new OpusInfo(packet);
            case (byte)'T': // OpusTags
-               return new OpusTags(packet);
+               return new OpusTags(packet, false, diagnostics);
            }
        }
 
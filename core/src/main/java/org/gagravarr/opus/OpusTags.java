@@ -16,6 +16,7 @@ package org.gagravarr.opus;
 import java.io.OutputStream;
 
 import org.gagravarr.ogg.IOUtils;
+import org.gagravarr.ogg.OggDiagnosticListener;
 import org.gagravarr.ogg.OggPacket;
 import org.gagravarr.ogg.audio.OggAudioTagsHeader;
 import org.gagravarr.vorbis.VorbisComments;
@@ -27,7 +28,20 @@ import org.gagravarr.vorbis.VorbisStyleComments;
  */
 public class OpusTags extends VorbisStyleComments implements OpusPacket, OggAudioTagsHeader {
    public OpusTags(OggPacket packet) {
-      super(packet, MAGIC_TAGS_BYTES.length);
+      this(packet, false);
+   }
+   /**
+    * @param lazyParsing Should comments only be decoded when asked for?
+    */
+   public OpusTags(OggPacket packet, boolean lazyParsing) {
+      this(packet, lazyParsing, null);
+   }
+   /**
+    * @param lazyParsing Should comments only be decoded when asked for?
+    * @param diagnostics Where to report malformed comments, or null for the default
+    */
+   public OpusTags(OggPacket packet, boolean lazyParsing, OggDiagnosticListener diagnostics) {
+      super(packet, MAGIC_TAGS_BYTES.length, lazyParsing, diagnostics);
       
       // Verify the type
       if (! IOUtils.byteRangeMatches(MAGIC_TAGS_BYTES, getData(), 0)) {
@@ -15,10 +15,10 @@ package org.gagravarr.speex;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -30,13 +30,13 @@ import org.gagravarr.ogg.OggStreamIdentifier;
 import org.gagravarr.ogg.OggStreamIdentifier.OggStreamType;
 import org.gagravarr.ogg.audio.OggAudioHeaders;
 import org.gagravarr.ogg.audio.OggAudioSetupHeader;
-import org.gagravarr.ogg.audio.OggAudioStream;
+import org.gagravarr.ogg.audio.OggSeekableAudioStream;
 
 /**
  * This is a wrapper around an OggFile that lets you
  *  get at all the interesting bits of a Speex file.
  */
-public class SpeexFile implements OggAudioStream, OggAudioHeaders, Closeable {
+public class SpeexFile implements OggSeekableAudioStream, OggAudioHeaders, Closeable {
     private OggFile ogg;
     private OggPacketReader r;
     private OggPacketWriter w;
@@ -46,12 +46,13 @@ public class SpeexFile implements OggAudioStream, OggAudioHeaders, Closeable {
     private SpeexTags tags;
 
     private List<SpeexAudioData> writtenPackets;
+    private boolean headersWritten = false;
 
     /**
      * Opens the given file for reading
      */
     public SpeexFile(File f) throws IOException, FileNotFoundException {
-        this(new OggFile(new FileInputStream(f)));
+        this(new OggFile(new RandomAccessFile(f, "r").getChannel()));
     }
     /**
      * Opens the given file for reading
@@ -81,7 +82,7 @@ public class SpeexFile implements OggAudioStream, OggAudioHeaders, Closeable {
 
         // First two packets are required to be info then tags
         info = (SpeexInfo)SpeexPacketFactory.create( p );
-        tags = (SpeexTags)SpeexPacketFactory.create( r.getNextPacketWithSid(sid) );
+        tags = (SpeexTags)SpeexPacketFactory.create( r.getNextPacketWithSid(sid), r.getDiagnosticListener() );
 
         // Everything else should be audio data
     }
@@ -131,7 +132,7 @@ public class SpeexFile implements OggAudioStream, OggAudioHeaders, Closeable {
             if(sp instanceof SpeexAudioData) {
                 return (SpeexAudioData)sp;
             } else {
-                System.err.println("Skipping non audio packet " + sp + " mid audio stream");
+                r.getDiagnosticListener().nonAudioPacketSkipped(sid, sp);
             }
         }
         return null;
@@ -140,10 +141,24 @@ public class SpeexFile implements OggAudioStream, OggAudioHeaders, Closeable {
     /**
      * Skips the audio data to the next packet with a granule
      *  of at least the given granule position.
-     * Note that skipping backwards is not currently supported!
+     * If the file was opened from a {@link File} (or other seekable
+     *  source), this is a quick bisection search which may also move
+     *  backwards. Otherwise, skipping backwards is not supported!
      */
     public void skipToGranule(long granulePosition) throws IOException {
-        r.skipToGranulePosition(sid, granulePosition);
+        r.seekToGranulePosition(sid, granulePosition);
+    }
+
+    /**
+     * Returns the granule position at the end of the audio, found
+     *  by reading backwards from the end of the file, or -1 if the
+     *  file isn't seekable. The current read position isn't changed.
+     */
+    public long getLastGranulePosition() throws IOException {
+        if(r == null) {
+            return -1;
+        }
+        return r.findLastGranulePosition(sid);
     }
 
     /**
@@ -179,10 +194,51 @@ public class SpeexFile implements OggAudioStream, OggAudioHeaders, Closeable {
      *  out. Data won't be written out yet, you
      *  need to call {@link #close()} to do that,
      *  because we assume you'll still be populating
-     *  the Info/Comment/Setup objects
+     *  the Info/Comment/Setup objects.
+     * If {@link #writeHeaders()} has already been
+     *  called, the data is instead written out now,
+     *  and any problem doing so is thrown unchecked.
      */
     public void writeAudioData(SpeexAudioData data) {
-        writtenPackets.add(data);
+        if(headersWritten) {
+            try {
+                writeAudioPacket(data);
+            } catch(IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            writtenPackets.add(data);
+        }
+    }
+    private void writeAudioPacket(SpeexAudioData vd) throws IOException {
+        w.writePacket(vd.write(), vd.getGranulePosition());
+    }
+
+    /**
+     * Writes out the Info and Tags objects now, rather
+     *  than waiting for {@link #close()}, along with any
+     *  audio data already buffered. From then on, audio
+     *  data is written out as it is given, a page at a
+     *  time, rather than being held in memory until the
+     *  end. Use this when streaming, or for long files.
+     * The headers can't be changed once this is called.
+     */
+    public void writeHeaders() throws IOException {
+        if(w == null) {
+            throw new IllegalStateException("Not in write mode");
+        }
+        if(headersWritten) {
+            return;
+        }
+        w.bufferPacket(info.write(), true);
+        w.bufferPacket(tags.write(), false);
+        w.flush();
+
+        for(SpeexAudioData vd : writtenPackets) {
+            writeAudioPacket(vd);
+        }
+        writtenPackets.clear();
+        headersWritten = true;
     }
 
     /**
@@ -198,25 +254,7 @@ public class SpeexFile implements OggAudioStream, OggAudioHeaders, Closeable {
             ogg = null;
         }
         if(w != null) {
-            w.bufferPacket(info.write(), true);
-            w.bufferPacket(tags.write(), false);
-
-            long lastGranule = 0;
-            for(SpeexAudioData vd : writtenPackets) {
-                // Update the granule position as we go
-                if(vd.getGranulePosition() >= 0 &&
-                        lastGranule != vd.getGranulePosition()) {
-                    w.flush();
-                    lastGranule = vd.getGranulePosition();
-                    w.setGranulePosition(lastGranule);
-                }
-
-                // Write the data, flushing if needed
-                w.bufferPacket(vd.write());
-                if(w.getSizePendingFlush() > 16384) {
-                    w.flush();
-                }
-            }
+            writeHeaders();
 
             w.close();
             w = null;
@@ -15,6 +15,7 @@ package org.gagravarr.speex;
 
 import org.gagravarr.ogg.HighLevelOggStreamPacket;
 import org.gagravarr.ogg.IOUtils;
+import org.gagravarr.ogg.OggDiagnosticListener;
 import org.gagravarr.ogg.OggPacket;
 
 /**
@@ -50,12 +51,20 @@ public class SpeexPacketFactory extends HighLevelOggStreamPacket {
     *  instance based on the type.
     */
    public static SpeexPacket create(OggPacket packet) {
+      return create(packet, null);
+   }
+   /**
+    * Creates the appropriate {@link SpeexPacket}
+    *  instance based on the type, reporting any problems
+    *  with the comments to the given listener.
+    */
+   public static SpeexPacket create(OggPacket packet, OggDiagnosticListener diagnostics) {
        // Special header types detection
        if(isSpeexSpecial(packet)) {
            return new SpeexInfo(packet);
        }
        if (packet.getSequenceNumber() == 1 && packet.getGranulePosition() == 0) {
-           return new SpeexTags(packet);
+           return new SpeexTags(packet, false, diagnostics);
        }
 
        return new SpeexAudioData(packet);
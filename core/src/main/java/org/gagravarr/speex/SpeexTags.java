@@ -15,6 +15,7 @@ package org.gagravarr.speex;
 
 import java.io.OutputStream;
 
+import org.gagravarr.ogg.OggDiagnosticListener;
 import org.gagravarr.ogg.OggPacket;
 import org.gagravarr.ogg.audio.OggAudioTagsHeader;
 import org.gagravarr.vorbis.VorbisComments;
@@ -26,7 +27,20 @@ import org.gagravarr.vorbis.VorbisStyleComments;
  */
 public class SpeexTags extends VorbisStyleComments implements SpeexPacket, OggAudioTagsHeader {
    public SpeexTags(OggPacket packet) {
-      super(packet, 0);
+      this(packet, false);
+   }
+   /**
+    * @param lazyParsing Should comments only be decoded when asked for?
+    */
+   public SpeexTags(OggPacket packet, boolean lazyParsing) {
+      this(packet, lazyParsing, null);
+   }
+   /**
+    * @param lazyParsing Should comments only be decoded when asked for?
+    * @param diagnostics Where to report malformed comments, or null for the default
+    */
+   public SpeexTags(OggPacket packet, boolean lazyParsing, OggDiagnosticListener diagnostics) {
+      super(packet, 0, lazyParsing, diagnostics);
       
       // Verify the Packet # and Granule Position
       if (packet.getSequenceNumber() != 1 && packet.getGranulePosition() != 0) {
@@ -15,6 +15,7 @@ package org.gagravarr.theora;
 
 import java.io.OutputStream;
 
+import org.gagravarr.ogg.OggDiagnosticListener;
 import org.gagravarr.ogg.OggPacket;
 import org.gagravarr.vorbis.VorbisComments;
 import org.gagravarr.vorbis.VorbisStyleComments;
@@ -25,7 +26,14 @@ import org.gagravarr.vorbis.VorbisStyleComments;
  */
 public class TheoraComments extends VorbisStyleComments implements TheoraPacket {
    public TheoraComments(OggPacket packet) {
-      super(packet, 7);
+      this(packet, false, null);
+   }
+   /**
+    * @param lazyParsing Should comments only be decoded when asked for?
+    * @param diagnostics Where to report malformed comments, or null for the default
+    */
+   public TheoraComments(OggPacket packet, boolean lazyParsing, OggDiagnosticListener diagnostics) {
+      super(packet, 7, lazyParsing, diagnostics);
       
       // Verify the type
       if (getData()[0] != (byte)TYPE_COMMENTS) {
@@ -37,11 +45,11 @@ public class TheoraComments extends VorbisStyleComments implements TheoraPacket
    }
 
    /**
-    * 8 bytes - type + theora
+    * 7 bytes - type + theora
     */
    @Override
    protected int getHeaderSize() {
-      return 8;
+      return 7;
    }
    /**
     * We think that Theora follows the Vorbis model, and has
@@ -59,10 +59,12 @@ public class TheoraFile extends HighLevelOggStreamPacket implements Closeable {
 
     private SkeletonStream skeleton;
     private Map<Integer,OggAudioStreamHeaders> soundtracks;
-    private Map<OggAudioStreamHeaders, OggPacketWriter> soundtrackWriters;
+    private Map<Integer, OggPacketWriter> soundtrackWriters;
 
     private LinkedList<AudioVisualDataAndSid> pendingPackets;
     private List<AudioVisualDataAndSid> writtenPackets;
+    private OggPacketWriter sw;
+    private boolean headersWritten = false;
 
     /**
      * Opens the given file for reading
@@ -114,7 +116,7 @@ public class TheoraFile extends HighLevelOggStreamPacket implements Closeable {
                 }
             } else {
                 if (psid == sid) {
-                    TheoraPacket tp = TheoraPacketFactory.create(p);
+                    TheoraPacket tp = TheoraPacketFactory.create(p, r.getDiagnosticListener());
 
                     // First three packets must be info, comments, setup
                     if (comments == null) {
@@ -139,7 +141,7 @@ public class TheoraFile extends HighLevelOggStreamPacket implements Closeable {
                         pendingPackets.add(new AudioVisualDataAndSid(
                                                audio.createAudio(p), psid));
                     } else {
-                        boolean ongoing = audio.populate(p);
+                        boolean ongoing = audio.populate(p, r.getDiagnosticListener());
                         if (! ongoing) {
                             headerCompleteSoundtracks.add(psid);
                         }
@@ -185,7 +187,7 @@ public class TheoraFile extends HighLevelOggStreamPacket implements Closeable {
 
         this.writtenPackets = new ArrayList<AudioVisualDataAndSid>();
         this.soundtracks = new HashMap<Integer, OggAudioStreamHeaders>();
-        this.soundtrackWriters = new HashMap<OggAudioStreamHeaders, OggPacketWriter>();
+        this.soundtrackWriters = new HashMap<Integer, OggPacketWriter>();
 
         this.info = info;
         this.comments = comments;
@@ -257,6 +259,9 @@ public class TheoraFile extends HighLevelOggStreamPacket implements Closeable {
         if (w == null) {
             throw new IllegalStateException("Not in write mode");
         }
+        if (headersWritten) {
+            throw new IllegalStateException("Soundtracks must be added before the headers are written");
+        }
 
         // If it doesn't have a sid yet, get it one
         OggPacketWriter aw = null;
@@ -277,7 +282,7 @@ public class TheoraFile extends HighLevelOggStreamPacket implements Closeable {
 
         // Record the new audio stream
         soundtracks.put(audioSid, (OggAudioStreamHeaders)audio);
-        soundtrackWriters.put((OggAudioStreamHeaders)audio, aw);
+        soundtrackWriters.put(audioSid, aw);
 
         // Report the sid
         return audioSid;
@@ -335,10 +340,13 @@ public class TheoraFile extends HighLevelOggStreamPacket implements Closeable {
      *  out. Data won't be written out yet, you
      *  need to call {@link #close()} to do that,
      *  because we assume you'll still be populating
-     *  the Info/Comment/Setup objects
+     *  the Info/Comment/Setup objects.
+     * If {@link #writeHeaders()} has already been
+     *  called, the data is instead written out now,
+     *  and any problem doing so is thrown unchecked.
      */
     public void writeVideoData(TheoraVideoData data) {
-        writtenPackets.add(new AudioVisualDataAndSid(data, sid));
+        writeData(new AudioVisualDataAndSid(data, sid));
     }
     /**
      * Buffers the given audio ready for writing
@@ -346,14 +354,101 @@ public class TheoraFile extends HighLevelOggStreamPacket implements Closeable {
      * Data won't be written out yet, you
      *  need to call {@link #close()} to do that,
      *  because we assume you'll still be populating
-     *  the Info/Comment/Setup objects
+     *  the Info/Comment/Setup objects.
+     * If {@link #writeHeaders()} has already been
+     *  called, the data is instead written out now,
+     *  and any problem doing so is thrown unchecked.
      */
     public void writeAudioData(OggStreamAudioData data, int audioSid) {
         if (! soundtracks.containsKey(audioSid)) {
             throw new IllegalArgumentException("Unknown audio stream with id " + audioSid);
         }
 
-        writtenPackets.add(new AudioVisualDataAndSid(data, audioSid));
+        writeData(new AudioVisualDataAndSid(data, audioSid));
+    }
+    private void writeData(AudioVisualDataAndSid avData) {
+        if (headersWritten) {
+            try {
+                writeDataPacket(avData);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            writtenPackets.add(avData);
+        }
+    }
+    private void writeDataPacket(AudioVisualDataAndSid avData) throws IOException {
+        OggPacketWriter avw = w;
+        if (avData.sid != sid) {
+            avw = soundtrackWriters.get(avData.sid);
+        }
+
+        // Each stream tracks its own granule position
+        avw.writePacket(avData.data.write(), avData.data.getGranulePosition());
+    }
+
+    /**
+     * Writes out the headers of all the streams now, rather
+     *  than waiting for {@link #close()}, along with any video
+     *  and audio data already buffered. From then on, data is
+     *  written out as it is given, a page at a time, rather
+     *  than being held in memory until the end.
+     * The headers can't be changed, and no more soundtracks
+     *  can be added, once this is called.
+     */
+    public void writeHeaders() throws IOException {
+        if (w == null) {
+            throw new IllegalStateException("Not in write mode");
+        }
+        if (headersWritten) {
+            return;
+        }
+
+        // First, write the initial packet of each stream
+        // Skeleton (if present) goes first, then video, then audio(s)
+        if (skeleton != null) {
+            sw = ogg.getPacketWriter();
+            sw.bufferPacket(skeleton.getFishead().write(), true);
+        }
+
+        w.bufferPacket(info.write(), true);
+
+        for (Integer audioSid : soundtrackWriters.keySet()) {
+            OggPacketWriter aw = soundtrackWriters.get(audioSid);
+            aw.bufferPacket(soundtracks.get(audioSid).getInfo().write(), true);
+        }
+
+        // Next, provide the rest of the skeleton information, to
+        //  make it easy to work out what's what
+        if (skeleton != null) {
+            for (SkeletonFisbone bone : skeleton.getFisbones()) {
+                sw.bufferPacket(bone.write(), true);
+            }
+            for (SkeletonKeyFramePacket frame : skeleton.getKeyFrames()) {
+                sw.bufferPacket(frame.write(), true);
+            }
+        }
+
+        // Next is the rest of the Theora headers
+        w.bufferPacket(comments.write(), true);
+        w.bufferPacket(setup.write(), true);
+
+        // Finish the headers with the soundtrack stream remaining headers
+        for (Integer audioSid : soundtrackWriters.keySet()) {
+            OggPacketWriter aw = soundtrackWriters.get(audioSid);
+            OggAudioStreamHeaders audio = soundtracks.get(audioSid);
+            aw.bufferPacket(audio.getTags().write(), true);
+            if (audio.getSetup() != null) {
+                aw.bufferPacket(audio.getSetup().write(), true);
+            }
+        }
+
+        // Write anything we've already been given
+        for (AudioVisualDataAndSid avData : writtenPackets) {
+            writeDataPacket(avData);
+        }
+        writtenPackets.clear();
+        headersWritten = true;
     }
 
     /**
@@ -369,68 +464,7 @@ public class TheoraFile extends HighLevelOggStreamPacket implements Closeable {
             ogg = null;
         }
         if (w != null) {
-            // First, write the initial packet of each stream
-            // Skeleton (if present) goes first, then video, then audio(s)
-            OggPacketWriter sw = null;
-            if (skeleton != null) {
-                sw = ogg.getPacketWriter();
-                sw.bufferPacket(skeleton.getFishead().write(), true);
-            }
-
-            w.bufferPacket(info.write(), true);
-
-            for (OggAudioStreamHeaders audio : soundtrackWriters.keySet()) {
-                OggPacketWriter aw = soundtrackWriters.get(audio);
-                aw.bufferPacket(audio.getInfo().write(), true);
-            }
-
-            // Next, provide the rest of the skeleton information, to
-            //  make it easy to work out what's what
-            if (skeleton != null) {
-                for (SkeletonFisbone bone : skeleton.getFisbones()) {
-                    sw.bufferPacket(bone.write(), true);
-                }
-                for (SkeletonKeyFramePacket frame : skeleton.getKeyFrames()) {
-                    sw.bufferPacket(frame.write(), true);
-                }
-            }
-
-            // Next is the rest of the Theora headers
-            w.bufferPacket(comments.write(), true);
-            w.bufferPacket(setup.write(), true);
-
-            // Finish the headers with the soundtrack stream remaining headers
-            for (OggAudioStreamHeaders audio : soundtrackWriters.keySet()) {
-                OggPacketWriter aw = soundtrackWriters.get(audio);
-                aw.bufferPacket(audio.getTags().write(), true);
-                if (audio.getSetup() != null) {
-                    aw.bufferPacket(audio.getSetup().write(), true);
-                }
-            }
-
-            // Write the audio visual data, along with their granules
-            long lastGranule = 0;
-            for (AudioVisualDataAndSid avData : writtenPackets) {
-                OggPacketWriter avw = w;
-                if (avData.sid != sid) {
-                    avw = soundtrackWriters.get(avData.sid);
-                }
-
-                // Update the granule position as we go
-                // TODO Is this the correct logic for multi-stream writing?
-                if(avData.data.getGranulePosition() >= 0 &&
-                        lastGranule != avData.data.getGranulePosition()) {
-                    avw.flush();
-                    lastGranule = avData.data.getGranulePosition();
-                    avw.setGranulePosition(lastGranule);
-                }
-
-                // Write the data, flushing if needed
-                avw.bufferPacket(avData.data.write());
-                if(avw.getSizePendingFlush() > 16384) {
-                    avw.flush();
-                }
-            }
+            writeHeaders();
 
             // Close down all our writers
             w.close();
@@ -15,6 +15,7 @@ package org.gagravarr.theora;
 
 import org.gagravarr.ogg.HighLevelOggStreamPacket;
 import org.gagravarr.ogg.IOUtils;
+import org.gagravarr.ogg.OggDiagnosticListener;
 import org.gagravarr.ogg.OggPacket;
 
 import static org.gagravarr.theora.TheoraPacket.TYPE_IDENTIFICATION;
@@ -78,15 +79,23 @@ public class TheoraPacketFactory extends HighLevelOggStreamPacket {
      *  instance based on the type.
      */
     public static TheoraPacket create(OggPacket packet) {
-        byte type = packet.getData()[0];
-
+        return create(packet, null);
+    }
+    /**
+     * Creates the appropriate {@link TheoraPacket}
+     *  instance based on the type, reporting any problems
+     *  with the comments to the given listener.
+     */
+    public static TheoraPacket create(OggPacket packet, OggDiagnosticListener diagnostics) {
         // Special header types detection
+        // (Video packets may be empty, to repeat the previous frame)
         if(isTheoraSpecial(packet)) {
+            byte type = packet.getData()[0];
             switch(type) {
             case (byte)TYPE_IDENTIFICATION:
                 return new TheoraInfo(packet);
             case (byte)TYPE_COMMENTS:
-                return new TheoraComments(packet);
+                return new TheoraComments(packet, false, diagnostics);
             case (byte)TYPE_SETUP:
                 return new TheoraSetup(packet);
             }
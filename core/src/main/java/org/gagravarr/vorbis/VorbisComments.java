@@ -16,6 +16,7 @@ package org.gagravarr.vorbis;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.gagravarr.ogg.OggDiagnosticListener;
 import org.gagravarr.ogg.OggPacket;
 import org.gagravarr.ogg.audio.OggAudioTagsHeader;
 
@@ -24,7 +25,20 @@ import org.gagravarr.ogg.audio.OggAudioTagsHeader;
  */
 public class VorbisComments extends VorbisStyleComments implements VorbisPacket, OggAudioTagsHeader {
     public VorbisComments(OggPacket pkt) {
-        super(pkt, HEADER_LENGTH_METADATA);
+        this(pkt, false);
+    }
+    /**
+     * @param lazyParsing Should comments only be decoded when asked for?
+     */
+    public VorbisComments(OggPacket pkt, boolean lazyParsing) {
+        this(pkt, lazyParsing, null);
+    }
+    /**
+     * @param lazyParsing Should comments only be decoded when asked for?
+     * @param diagnostics Where to report malformed comments, or null for the default
+     */
+    public VorbisComments(OggPacket pkt, boolean lazyParsing, OggDiagnosticListener diagnostics) {
+        super(pkt, HEADER_LENGTH_METADATA, lazyParsing, diagnostics);
     }
     public VorbisComments() {
         super();
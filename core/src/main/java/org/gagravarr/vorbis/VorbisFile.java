@@ -15,10 +15,10 @@ package org.gagravarr.vorbis;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -29,13 +29,13 @@ import org.gagravarr.ogg.OggPacketWriter;
 import org.gagravarr.ogg.OggStreamIdentifier;
 import org.gagravarr.ogg.OggStreamIdentifier.OggStreamType;
 import org.gagravarr.ogg.audio.OggAudioHeaders;
-import org.gagravarr.ogg.audio.OggAudioStream;
+import org.gagravarr.ogg.audio.OggSeekableAudioStream;
 
 /**
  * This is a wrapper around an OggFile that lets you
  *  get at all the interesting bits of a Vorbis file.
  */
-public class VorbisFile implements OggAudioStream, OggAudioHeaders, Closeable {
+public class VorbisFile implements OggSeekableAudioStream, OggAudioHeaders, Closeable {
     private OggFile ogg;
     private OggPacketReader r;
     private OggPacketWriter w;
@@ -46,12 +46,13 @@ public class VorbisFile implements OggAudioStream, OggAudioHeaders, Closeable {
     private VorbisSetup setup;
 
     private List<VorbisAudioData> writtenPackets;
+    private boolean headersWritten = false;
 
     /**
      * Opens the given file for reading
      */
     public VorbisFile(File f) throws IOException, FileNotFoundException {
-        this(new OggFile(new FileInputStream(f)));
+        this(new OggFile(new RandomAccessFile(f, "r").getChannel()));
     }
     /**
      * Opens the given file for reading
@@ -81,7 +82,7 @@ public class VorbisFile implements OggAudioStream, OggAudioHeaders, Closeable {
 
         // First three packets are required to be info, comments, setup
         info = (VorbisInfo)VorbisPacketFactory.create( p );
-        comment = (VorbisComments)VorbisPacketFactory.create( r.getNextPacketWithSid(sid) );
+        comment = (VorbisComments)VorbisPacketFactory.create( r.getNextPacketWithSid(sid), r.getDiagnosticListener() );
         setup = (VorbisSetup)VorbisPacketFactory.create( r.getNextPacketWithSid(sid) );
 
         // Everything else should be audio data
@@ -133,7 +134,7 @@ public class VorbisFile implements OggAudioStream, OggAudioHeaders, Closeable {
             if(vp instanceof VorbisAudioData) {
                 return (VorbisAudioData)vp;
             } else {
-                System.err.println("Skipping non audio packet " + vp + " mid audio stream");
+                r.getDiagnosticListener().nonAudioPacketSkipped(sid, vp);
             }
         }
         return null;
@@ -142,10 +143,24 @@ public class VorbisFile implements OggAudioStream, OggAudioHeaders, Closeable {
     /**
      * Skips the audio data to the next packet with a granule
      *  of at least the given granule position.
-     * Note that skipping backwards is not currently supported!
+     * If the file was opened from a {@link File} (or other seekable
+     *  source), this is a quick bisection search which may also move
+     *  backwards. Otherwise, skipping backwards is not supported!
      */
     public void skipToGranule(long granulePosition) throws IOException {
-        r.skipToGranulePosition(sid, granulePosition);
+        r.seekToGranulePosition(sid, granulePosition);
+    }
+
+    /**
+     * Returns the granule position at the end of the audio, found
+     *  by reading backwards from the end of the file, or -1 if the
+     *  file isn't seekable. The current read position isn't changed.
+     */
+    public long getLastGranulePosition() throws IOException {
+        if(r == null) {
+            return -1;
+        }
+        return r.findLastGranulePosition(sid);
     }
 
     /**
@@ -181,10 +196,52 @@ public class VorbisFile implements OggAudioStream, OggAudioHeaders, Closeable {
      *  out. Data won't be written out yet, you
      *  need to call {@link #close()} to do that,
      *  because we assume you'll still be populating
-     *  the Info/Comment/Setup objects
+     *  the Info/Comment/Setup objects.
+     * If {@link #writeHeaders()} has already been
+     *  called, the data is instead written out now,
+     *  and any problem doing so is thrown unchecked.
      */
     public void writeAudioData(VorbisAudioData data) {
-        writtenPackets.add(data);
+        if(headersWritten) {
+            try {
+                writeAudioPacket(data);
+            } catch(IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            writtenPackets.add(data);
+        }
+    }
+    private void writeAudioPacket(VorbisAudioData vd) throws IOException {
+        w.writePacket(vd.write(), vd.getGranulePosition());
+    }
+
+    /**
+     * Writes out the Info, Comments and Setup objects now, rather
+     *  than waiting for {@link #close()}, along with any
+     *  audio data already buffered. From then on, audio
+     *  data is written out as it is given, a page at a
+     *  time, rather than being held in memory until the
+     *  end. Use this when streaming, or for long files.
+     * The headers can't be changed once this is called.
+     */
+    public void writeHeaders() throws IOException {
+        if(w == null) {
+            throw new IllegalStateException("Not in write mode");
+        }
+        if(headersWritten) {
+            return;
+        }
+        w.bufferPacket(info.write(), true);
+        w.bufferPacket(comment.write(), false);
+        w.bufferPacket(setup.write(), true);
+        w.flush();
+
+        for(VorbisAudioData vd : writtenPackets) {
+            writeAudioPacket(vd);
+        }
+        writtenPackets.clear();
+        headersWritten = true;
     }
 
     /**
@@ -200,26 +257,7 @@ public class VorbisFile implements OggAudioStream, OggAudioHeaders, Closeable {
             ogg = null;
         }
         if(w != null) {
-            w.bufferPacket(info.write(), true);
-            w.bufferPacket(comment.write(), false);
-            w.bufferPacket(setup.write(), true);
-
-            long lastGranule = 0;
-            for(VorbisAudioData vd : writtenPackets) {
-                // Update the granule position as we go
-                if(vd.getGranulePosition() >= 0 &&
-                        lastGranule != vd.getGranulePosition()) {
-                    w.flush();
-                    lastGranule = vd.getGranulePosition();
-                    w.setGranulePosition(lastGranule);
-                }
-
-                // Write the data, flushing if needed
-                w.bufferPacket(vd.write());
-                if(w.getSizePendingFlush() > 16384) {
-                    w.flush();
-                }
-            }
+            writeHeaders();
 
             w.close();
             w = null;
@@ -14,6 +14,7 @@
 package org.gagravarr.vorbis;
 
 import org.gagravarr.ogg.IOUtils;
+import org.gagravarr.ogg.OggDiagnosticListener;
 import org.gagravarr.ogg.OggPacket;
 import static org.gagravarr.vorbis.VorbisPacket.TYPE_COMMENTS;
 import static org.gagravarr.vorbis.VorbisPacket.TYPE_INFO;
@@ -74,6 +75,14 @@ public class VorbisPacketFactory {
      *  instance based on the type.
      */
     public static VorbisPacket create(OggPacket packet) {
+        return create(packet, null);
+    }
+    /**
+     * Creates the appropriate {@link VorbisPacket}
+     *  instance based on the type, reporting any problems
+     *  with the comments to the given listener.
+     */
+    public static VorbisPacket create(OggPacket packet, OggDiagnosticListener diagnostics) {
         // Special header types detection
         if (isVorbisSpecial(packet)) {
             byte type = packet.getData()[0];
@@ -81,7 +90,7 @@ public class VorbisPacketFactory {
             case TYPE_INFO:
                 return new VorbisInfo(packet);
             case TYPE_COMMENTS:
-                return new VorbisComments(packet);
+                return new VorbisComments(packet, false, diagnostics);
             case TYPE_SETUP:
                 return new VorbisSetup(packet);
             }
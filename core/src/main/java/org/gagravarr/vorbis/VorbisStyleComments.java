@@ -22,8 +22,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.gagravarr.flac.FlacPicture;
 import org.gagravarr.ogg.HighLevelOggStreamPacket;
 import org.gagravarr.ogg.IOUtils;
+import org.gagravarr.ogg.OggDiagnosticListener;
+import org.gagravarr.ogg.OggDiagnostics;
 import org.gagravarr.ogg.OggPacket;
 import org.gagravarr.ogg.audio.OggAudioTagsHeader;
 
@@ -38,13 +41,82 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
     public static final String KEY_GENRE = "genre";
     public static final String KEY_TRACKNUMBER = "tracknumber";
     public static final String KEY_DATE = "date";
+    public static final String KEY_METADATA_BLOCK_PICTURE = "metadata_block_picture";
+
+    /**
+     * Shared instances of the commonly used tags, so that the
+     *  comments of many files don't each hold their own copies
+     */
+    private static final Map<String, String> CANONICAL_TAGS =
+                             new HashMap<String, String>();
+    static {
+        String[] tags = new String[] {
+            KEY_ARTIST, KEY_ALBUM, KEY_TITLE, KEY_GENRE, KEY_TRACKNUMBER,
+            KEY_DATE, KEY_METADATA_BLOCK_PICTURE,
+            "albumartist", "composer", "performer", "conductor",
+            "comment", "description", "copyright", "license",
+            "organization", "location", "contact", "isrc", "version",
+            "discnumber", "disctotal", "tracktotal", "totaltracks",
+            "totaldiscs", "encoder", "encoded-by", "lyrics", "language",
+            "label", "bpm", "compilation",
+            "replaygain_track_gain", "replaygain_track_peak",
+            "replaygain_album_gain", "replaygain_album_peak",
+            "replaygain_reference_loudness",
+            "musicbrainz_trackid", "musicbrainz_albumid",
+            "musicbrainz_artistid", "musicbrainz_albumartistid",
+            "musicbrainz_releasegroupid", "musicbrainz_releasetrackid",
+            "musicbrainz_workid", "musicbrainz_discid",
+            "musicbrainz_albumtype", "musicbrainz_albumstatus",
+            "releasecountry", "asin", "barcode", "catalognumber",
+            "artistsort", "albumartistsort", "albumsort", "titlesort",
+            "composersort", "r128_track_gain", "r128_album_gain"
+        };
+        for(String tag : tags) {
+            CANONICAL_TAGS.put(tag, tag);
+        }
+    }
 
     private String vendor;
     private Map<String, List<String>> comments =
                              new HashMap<String, List<String>>();
 
+    /**
+     * When lazily parsing, the packet data holding the comments
+     *  not yet decoded, with where each one starts, where its
+     *  equals sign is, and where it ends. Starts are set to -1
+     *  once decoded or removed.
+     */
+    private byte[] lazyData;
+    private int[] lazyStarts;
+    private int[] lazyEquals;
+    private int[] lazyEnds;
+    private int lazyCount;
+    private int lazyRemaining;
+
     public VorbisStyleComments(OggPacket pkt, int dataBeginsAt) {
+        this(pkt, dataBeginsAt, false);
+    }
+    /**
+     * @param lazyParsing Should the comments only be decoded when a
+     *  tag is asked for, rather than all up-front? This saves time and
+     *  memory for files with many tags, or large ones such as embedded
+     *  pictures, when only a few are needed. The comments found are the
+     *  same either way, and asking for all of them decodes them all.
+     */
+    public VorbisStyleComments(OggPacket pkt, int dataBeginsAt, boolean lazyParsing) {
+        this(pkt, dataBeginsAt, lazyParsing, null);
+    }
+    /**
+     * @param diagnostics Where to report any malformed comments, such as
+     *  the listener of the reader the packet came from, or null to use
+     *  {@link OggDiagnostics#getDefault()}
+     */
+    public VorbisStyleComments(OggPacket pkt, int dataBeginsAt, boolean lazyParsing,
+                               OggDiagnosticListener diagnostics) {
         super(pkt);
+        if(diagnostics == null) {
+            diagnostics = OggDiagnostics.getDefault();
+        }
         byte[] d = pkt.getData();
 
         int vlen = getInt4(d, dataBeginsAt);
@@ -54,20 +126,44 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
         int numComments = getInt4(d, offset);
         offset += 4;
 
+        // Find where each comment is, but don't decode them yet.
+        // Each needs at least 4 bytes, which limits how many there
+        //  can really be if the count is corrupt
+        int maxComments = Math.max(0, Math.min(numComments, (d.length - offset) / 4));
+        lazyStarts = new int[maxComments];
+        lazyEquals = new int[maxComments];
+        lazyEnds = new int[maxComments];
+
         for(int i=0; i<numComments; i++) {
             int len = getInt4(d, offset);
             offset += 4;
-            String c = IOUtils.getUTF8(d, offset, len);
-            offset += len;
+            if(len < 0 || offset + len > d.length) {
+                throw new IllegalArgumentException("Comment of length " + len +
+                        " at " + offset + " runs past the end of the packet");
+            }
 
-            int equals = c.indexOf('=');
+            // Equals is ASCII so can't be part of a multi-byte character
+            int equals = -1;
+            for(int j=offset; j<offset+len; j++) {
+                if(d[j] == '=') {
+                    equals = j;
+                    break;
+                }
+            }
             if(equals == -1) {
-                System.err.println("Warning - unable to parse comment '"+c+"'");
+                diagnostics.malformedComment(IOUtils.getUTF8(d, offset, len));
             } else {
-                String tag = normaliseTag(c.substring(0, equals));
-                String value = c.substring(equals+1);
-                addComment(tag, value);
+                lazyStarts[lazyCount] = offset;
+                lazyEquals[lazyCount] = equals;
+                lazyEnds[lazyCount] = offset + len;
+                lazyCount++;
             }
+            offset += len;
+        }
+        lazyData = d;
+        lazyRemaining = lazyCount;
+        if(lazyRemaining == 0) {
+            clearLazyComments();
         }
 
         if(offset < d.length && hasFramingBit()) {
@@ -76,6 +172,10 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
                 throw new IllegalArgumentException("Framing bit not set, invalid");
             }
         }
+
+        if(!lazyParsing) {
+            decodeAllComments();
+        }
     }
 
     public VorbisStyleComments() {
@@ -97,6 +197,37 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
      *  ASCII 0x61 through 0x7A inclusive (characters a-z).
      */
     protected static String normaliseTag(String tag) {
+        // Most tags are plain ASCII, which can be lower cased
+        //  without toLowerCase(), and are often already normalised
+        int length = tag.length();
+        boolean normalised = true;
+        for(int i=0; i<length; i++) {
+            char c = tag.charAt(i);
+            if(c >= 0x80) {
+                return getCanonicalTag(normaliseNonAsciiTag(tag));
+            }
+            if(c < 0x20 || c > 0x7d || c == 0x3d || (c >= 'A' && c <= 'Z')) {
+                normalised = false;
+            }
+        }
+        if(normalised) {
+            return getCanonicalTag(tag);
+        }
+
+        char[] nt = new char[length];
+        int ntLength = 0;
+        for(int i=0; i<length; i++) {
+            char c = tag.charAt(i);
+            if(c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if(c >= 0x20 && c <= 0x7d && c != 0x3d) {
+                nt[ntLength++] = c;
+            }
+        }
+        return getCanonicalTag(new String(nt, 0, ntLength));
+    }
+    private static String normaliseNonAsciiTag(String tag) {
         StringBuffer nt = new StringBuffer();
         for(char c : tag.toLowerCase().toCharArray()) {
             if((int)c >= 0x20 && (int)c <= 0x7d &&
@@ -106,8 +237,126 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
         }
         return nt.toString();
     }
+    /**
+     * Returns the shared instance of a common normalised tag,
+     *  or the tag itself if it isn't a common one
+     */
+    private static String getCanonicalTag(String normalisedTag) {
+        String canonical = CANONICAL_TAGS.get(normalisedTag);
+        return (canonical == null ? normalisedTag : canonical);
+    }
+
+    /**
+     * Decodes any comments for the given tag which haven't
+     *  been yet, adding them to those already decoded
+     */
+    private void decodeComments(String normalisedTag) {
+        if(lazyRemaining == 0) return;
+
+        List<String> decoded = null;
+        for(int i=0; i<lazyCount; i++) {
+            if(lazyStarts[i] != -1 && isTag(i, normalisedTag)) {
+                if(decoded == null) {
+                    decoded = new ArrayList<String>();
+                }
+                decoded.add(getLazyValue(i));
+                markDecoded(i);
+            }
+        }
+        if(decoded != null) {
+            List<String> existing = comments.get(normalisedTag);
+            if(existing != null) {
+                decoded.addAll(existing);
+            }
+            comments.put(normalisedTag, decoded);
+        }
+    }
+    /**
+     * Decodes all the comments not yet decoded, in one pass
+     *  in file order, rather than looking for each tag in turn
+     */
+    private void decodeAllComments() {
+        if(lazyRemaining == 0) return;
+
+        Map<String, List<String>> decoded = new HashMap<String, List<String>>();
+        for(int i=0; i<lazyCount; i++) {
+            if(lazyStarts[i] != -1) {
+                String tag = normaliseTag(getLazyTag(i));
+                List<String> values = decoded.get(tag);
+                if(values == null) {
+                    values = new ArrayList<String>();
+                    decoded.put(tag, values);
+                }
+                values.add(getLazyValue(i));
+            }
+        }
+        for(Map.Entry<String, List<String>> e : decoded.entrySet()) {
+            List<String> existing = comments.get(e.getKey());
+            if(existing != null) {
+                e.getValue().addAll(existing);
+            }
+            comments.put(e.getKey(), e.getValue());
+        }
+        clearLazyComments();
+    }
+    /**
+     * Forgets about any undecoded comments for the given tag
+     */
+    private void dropComments(String normalisedTag) {
+        for(int i=0; i<lazyCount && lazyRemaining > 0; i++) {
+            if(lazyStarts[i] != -1 && isTag(i, normalisedTag)) {
+                markDecoded(i);
+            }
+        }
+    }
+    private void markDecoded(int i) {
+        lazyStarts[i] = -1;
+        lazyRemaining--;
+        if(lazyRemaining == 0) {
+            clearLazyComments();
+        }
+    }
+    private void clearLazyComments() {
+        lazyData = null;
+        lazyStarts = null;
+        lazyEquals = null;
+        lazyEnds = null;
+        lazyCount = 0;
+        lazyRemaining = 0;
+    }
+    private String getLazyTag(int i) {
+        return IOUtils.getUTF8(lazyData, lazyStarts[i], lazyEquals[i]-lazyStarts[i]);
+    }
+    private String getLazyValue(int i) {
+        return IOUtils.getUTF8(lazyData, lazyEquals[i]+1, lazyEnds[i]-lazyEquals[i]-1);
+    }
+    /**
+     * Is the undecoded comment for the given tag? Checks the bytes
+     *  directly for plain ASCII tags, without creating any strings
+     */
+    private boolean isTag(int i, String normalisedTag) {
+        int matched = 0;
+        for(int pos=lazyStarts[i]; pos<lazyEquals[i]; pos++) {
+            int c = lazyData[pos] & 0xff;
+            if(c >= 0x80) {
+                return normaliseTag(getLazyTag(i)).equals(normalisedTag);
+            }
+            if(c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if(c < 0x20 || c > 0x7d) {
+                continue;
+            }
+            if(matched >= normalisedTag.length() || normalisedTag.charAt(matched) != c) {
+                return false;
+            }
+            matched++;
+        }
+        return matched == normalisedTag.length();
+    }
 
     protected String getSingleComment(String normalisedTag) {
+        decodeComments(normalisedTag);
         List<String> c = comments.get(normalisedTag);
         if(c != null && c.size() > 0) {
             return c.get(0);
@@ -181,7 +430,9 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
      *  tags which aren't present.
      */
     public List<String> getComments(String tag) {
-        List<String> c = comments.get( normaliseTag(tag) );
+        String nt = normaliseTag(tag);
+        decodeComments(nt);
+        List<String> c = comments.get(nt);
         if(c == null) {
             return new ArrayList<String>();
         } else {
@@ -189,17 +440,45 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
         }
     }
 
+    /**
+     * Returns the pictures, such as cover art, embedded as base64
+     *  in METADATA_BLOCK_PICTURE comments. The images are decoded as
+     *  they are read, and if the comments are being parsed lazily,
+     *  are read straight from the packet without ever being turned
+     *  into Strings, see the <code>lazyParsing</code> argument of
+     *  {@link #VorbisStyleComments(OggPacket, int, boolean, OggDiagnosticListener)}.
+     */
+    public List<FlacPicture> getPictures() throws IOException {
+        List<FlacPicture> pictures = new ArrayList<FlacPicture>();
+        for(int i=0; i<lazyCount && lazyRemaining > 0; i++) {
+            if(lazyStarts[i] != -1 && isTag(i, KEY_METADATA_BLOCK_PICTURE)) {
+                pictures.add(FlacPicture.fromBase64(lazyData, lazyEquals[i]+1,
+                                                    lazyEnds[i]-lazyEquals[i]-1));
+            }
+        }
+        List<String> decoded = comments.get(KEY_METADATA_BLOCK_PICTURE);
+        if(decoded != null) {
+            for(String value : decoded) {
+                pictures.add(FlacPicture.fromBase64(value));
+            }
+        }
+        return pictures;
+    }
+
     /**
      * Removes all comments for a given tag.
      */
     public void removeComments(String tag) {
-        comments.remove( normaliseTag(tag) );
+        String nt = normaliseTag(tag);
+        dropComments(nt);
+        comments.remove(nt);
     }
     /**
      * Removes all comments across all tags
      */
     public void removeAllComments() {
         comments.clear();
+        clearLazyComments();
     }
 
     /**
@@ -207,6 +486,7 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
      */
     public void addComment(String tag, String comment) {
         String nt = normaliseTag(tag);
+        decodeComments(nt);
         if(! comments.containsKey(nt)) {
             comments.put(nt, new ArrayList<String>());
         }
@@ -218,6 +498,7 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
      */
     public void setComments(String tag, List<String> comments) {
         String nt = normaliseTag(tag);
+        dropComments(nt);
         if(this.comments.containsKey(nt)) {
             this.comments.remove(nt);
         }
@@ -229,6 +510,7 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
      * Returns all the comments
      */
     public Map<String, List<String>> getAllComments() {
+        decodeAllComments();
         return comments;
     }
 
@@ -243,6 +525,8 @@ public abstract class VorbisStyleComments extends HighLevelOggStreamPacket imple
 
     @Override
     public OggPacket write() {
+        decodeAllComments();
+
         // Serialise the comments
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try {
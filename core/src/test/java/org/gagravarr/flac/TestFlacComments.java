@@ -13,11 +13,22 @@
  */
 package org.gagravarr.flac;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
+import org.gagravarr.ogg.IOUtils;
 import org.gagravarr.ogg.OggFile;
 import org.gagravarr.ogg.OggPacketReader;
 
@@ -59,9 +70,12 @@ public class TestFlacComments extends TestCase {
     }
 
     private void doTestComments(FlacTags tags) {
+        doTestComments(tags, 7);
+    }
+    private void doTestComments(FlacTags tags, int numTags) {
         assertEquals("reference libFLAC 1.2.1 20070917", tags.getVendor());
 
-        assertEquals(7, tags.getAllComments().size());
+        assertEquals(numTags, tags.getAllComments().size());
 
         assertEquals("Test Title", tags.getTitle());
         assertEquals(1, tags.getComments("TiTlE").size());
@@ -87,5 +101,187 @@ public class TestFlacComments extends TestCase {
         assertEquals("Another Test Comment", tags.getComments("COMMent").get(1));
     }
 
-    // TODO Write related tests
+    public void testEditFlacInPlace() throws IOException {
+        File f = copyTestFlacFile();
+        long size = f.length();
+        byte[] audio = readAudio(f, 8478);
+
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        FlacNativeMetadataEditor editor = new FlacNativeMetadataEditor(raf.getChannel());
+        assertEquals(8478, editor.getAudioOffset());
+        editor.getTags().addComment("DESCRIPTION", "Fits in the padding");
+        editor.addPicture(new byte[1000]);
+        assertEquals(true, editor.writeInPlace());
+        raf.close();
+
+        // Same size, with the audio where it was
+        assertEquals(size, f.length());
+        assertTrue(Arrays.equals(audio, readAudio(f, 8478)));
+
+        FlacNativeFile flac = new FlacNativeFile(new FileInputStream(f));
+        doTestComments(flac.getTags(), 8);
+        assertEquals("Fits in the padding", flac.getTags().getComments("DESCRIPTION").get(0));
+        flac.close();
+
+        // Padding grows back when the picture is taken away
+        raf = new RandomAccessFile(f, "rw");
+        editor = new FlacNativeMetadataEditor(raf.getChannel());
+        assertEquals(3, editor.getBlocks().size());
+        editor.removePictures();
+        assertEquals(2, editor.getBlocks().size());
+        assertEquals(true, editor.writeInPlace());
+        raf.close();
+
+        raf = new RandomAccessFile(f, "r");
+        editor = new FlacNativeMetadataEditor(raf.getChannel());
+        assertEquals(2, editor.getBlocks().size());
+        assertEquals(8478, editor.getAudioOffset());
+        raf.close();
+    }
+
+    public void testEditFlacGrown() throws IOException {
+        File f = copyTestFlacFile();
+        byte[] audio = readAudio(f, 8478);
+
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        FlacNativeMetadataEditor editor = new FlacNativeMetadataEditor(raf.getChannel());
+        char[] big = new char[10000];
+        Arrays.fill(big, 'x');
+        editor.getTags().addComment("DESCRIPTION", new String(big));
+        assertEquals(false, editor.writeInPlace());
+
+        File out = File.createTempFile("vorbisjava", ".flac");
+        out.deleteOnExit();
+        OutputStream os = new FileOutputStream(out);
+        editor.write(os);
+        os.close();
+        raf.close();
+
+        // Re-written, with fresh padding after the new tags
+        raf = new RandomAccessFile(out, "r");
+        editor = new FlacNativeMetadataEditor(raf.getChannel());
+        long audioOffset = editor.getAudioOffset();
+        assertEquals(10000, editor.getTags().getComments("DESCRIPTION").get(0).length());
+        raf.close();
+        assertTrue(audioOffset > 8478 + 10000 - 8192);
+        assertTrue(Arrays.equals(audio, readAudio(out, audioOffset)));
+
+        FlacNativeFile flac = new FlacNativeFile(new FileInputStream(out));
+        doTestComments(flac.getTags(), 8);
+        assertEquals(44100, flac.getInfo().getSampleRate());
+        flac.close();
+    }
+
+    public void testPictures() throws IOException {
+        File f = copyTestFlacFile();
+        byte[] image = new byte[20000];
+        new Random(7).nextBytes(image);
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        IOUtils.writeInt4BE(block, FlacPicture.TYPE_BACK_COVER);
+        IOUtils.writeInt4BE(block, 10);
+        block.write("image/jpeg".getBytes("ASCII"));
+        IOUtils.writeInt4BE(block, 0);
+        IOUtils.writeInt4BE(block, 100);
+        IOUtils.writeInt4BE(block, 200);
+        IOUtils.writeInt4BE(block, 24);
+        IOUtils.writeInt4BE(block, 0);
+        IOUtils.writeInt4BE(block, image.length);
+        block.write(image);
+
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        FlacNativeMetadataEditor editor = new FlacNativeMetadataEditor(raf.getChannel());
+        editor.addPicture(block.toByteArray());
+        assertEquals(false, editor.writeInPlace());
+        File out = File.createTempFile("vorbisjava", ".flac");
+        out.deleteOnExit();
+        OutputStream os = new FileOutputStream(out);
+        editor.write(os);
+        os.close();
+        raf.close();
+
+        // Streamed from the file
+        raf = new RandomAccessFile(out, "r");
+        List<FlacPicture> pictures = FlacNativeFile.readPictures(raf.getChannel());
+        assertEquals(1, pictures.size());
+        assertEquals(FlacPicture.TYPE_BACK_COVER, pictures.get(0).getPictureType());
+        assertEquals("image/jpeg", pictures.get(0).getMimeType());
+        assertEquals("", pictures.get(0).getDescription());
+        assertEquals(200, pictures.get(0).getHeight());
+        assertTrue(Arrays.equals(image, readAll(pictures.get(0).getImageData())));
+        raf.close();
+
+        // Or read with the rest of the metadata
+        FlacNativeFile flac = new FlacNativeFile(new FileInputStream(out));
+        pictures = flac.getPictures();
+        assertEquals(1, pictures.size());
+        assertEquals(100, pictures.get(0).getWidth());
+        assertTrue(Arrays.equals(image, readAll(pictures.get(0).getImageData())));
+        flac.close();
+    }
+
+    public void testMalformedPictures() throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        block.write(FlacMetadataBlock.PICTURE);
+        block.write(new byte[3]);
+        IOUtils.writeInt4BE(block, FlacPicture.TYPE_FRONT_COVER);
+        IOUtils.writeInt4BE(block, 9);
+        block.write("image/png".getBytes("ASCII"));
+        IOUtils.writeInt4BE(block, 0);
+        block.write(new byte[16]);
+        // Claims to be shorter than it really is
+        IOUtils.writeInt4BE(block, 5);
+        block.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        byte[] data = block.toByteArray();
+        IOUtils.putInt3BE(data, 1, data.length-4);
+
+        // Wrong image lengths are read, but written back unchanged
+        FlacMetadataBlock read = FlacMetadataBlock.create(new ByteArrayInputStream(data));
+        assertEquals(FlacPicture.class, read.getClass());
+        assertEquals(5, ((FlacPicture)read).getImageLength());
+        assertTrue(Arrays.equals(data, read.getData()));
+
+        // Broken details leave the block as an unhandled one
+        byte[] truncated = new byte[20];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        IOUtils.putInt3BE(truncated, 1, truncated.length-4);
+        read = FlacMetadataBlock.create(new ByteArrayInputStream(truncated));
+        assertEquals(FlacUnhandledMetadataBlock.class, read.getClass());
+        assertEquals(FlacMetadataBlock.PICTURE, read.getType());
+        assertTrue(Arrays.equals(truncated, read.getData()));
+    }
+
+    private byte[] readAll(InputStream inp) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int read;
+        while((read = inp.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+        inp.close();
+        return baos.toByteArray();
+    }
+
+    private File copyTestFlacFile() throws IOException {
+        File f = File.createTempFile("vorbisjava", ".flac");
+        f.deleteOnExit();
+        InputStream in = getTestFlacFile();
+        OutputStream out = new FileOutputStream(f);
+        byte[] buffer = new byte[4096];
+        int read;
+        while((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        out.close();
+        return f;
+    }
+    private byte[] readAudio(File f, long offset) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        byte[] audio = new byte[(int)(raf.length() - offset)];
+        raf.seek(offset);
+        raf.readFully(audio);
+        raf.close();
+        return audio;
+    }
 }
@@ -14,6 +14,7 @@
 package org.gagravarr.ogg;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -328,6 +329,126 @@ public class TestBasicRead extends TestCase {
         assertEquals(null, p);
     }
 
+    /**
+     * Checks that we still find all the pages when there's junk
+     *  before and between them, and the stream only hands us
+     *  back a few bytes at a time
+     */
+    public void testPacketsWithJunk() throws IOException {
+        // Read the file in, and split it into its pages
+        ByteArrayOutputStream orig = new ByteArrayOutputStream();
+        InputStream inp = getTestFile();
+        int r;
+        while((r = inp.read()) != -1) {
+            orig.write(r);
+        }
+        byte[] file = orig.toByteArray();
+
+        // Add some junk at the start, and between each page
+        ByteArrayOutputStream junked = new ByteArrayOutputStream();
+        int pages = 0;
+        for(int i=0; i<file.length; i++) {
+            if(i+3 < file.length && file[i] == 'O' && file[i+1] == 'g' &&
+               file[i+2] == 'g' && file[i+3] == 'S') {
+                junked.write(new byte[] {'O','g','g', 0, 1, 2, 'O'});
+                pages++;
+            }
+            junked.write(file[i]);
+        }
+
+        // Only return a handful of bytes on each read
+        InputStream trickle = new ByteArrayInputStream(junked.toByteArray()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+
+        // Should get the same packets as when reading normally
+        OggPacketReader expected = new OggFile(getTestFile()).getPacketReader();
+        OggPacketReader actual = new OggFile(trickle).getPacketReader();
+        OggDiagnostics diagnostics = new OggDiagnostics();
+        actual.setDiagnosticListener(diagnostics);
+        int packets = 0;
+        OggPacket e, a;
+        while((e = expected.getNextPacket()) != null) {
+            a = actual.getNextPacket();
+            assertNotNull(a);
+            assertEquals(e.getSid(), a.getSid());
+            assertEquals(e.getSequenceNumber(), a.getSequenceNumber());
+            assertEquals(e.getGranulePosition(), a.getGranulePosition());
+            assertTrue(Arrays.equals(e.getData(), a.getData()));
+            packets++;
+        }
+        assertEquals(null, actual.getNextPacket());
+        assertEquals(12, packets);
+
+        // The junk before each page should have been reported
+        assertEquals(pages, diagnostics.getJunkSkipCount());
+        assertEquals(pages*7, diagnostics.getJunkBytes());
+        assertEquals(0, diagnostics.getInvalidChecksumCount());
+    }
+
+    /**
+     * Checks that junk which looks like a page is skipped over,
+     *  and that the search gives up at the limit
+     */
+    public void testJunkSearchLimit() throws IOException {
+        ByteArrayOutputStream orig = new ByteArrayOutputStream();
+        InputStream inp = getTestFile();
+        int r;
+        while((r = inp.read()) != -1) {
+            orig.write(r);
+        }
+
+        // Lots of junk first, including fake capture patterns
+        ByteArrayOutputStream junked = new ByteArrayOutputStream();
+        junked.write('x');
+        for(int i=0; i<20000; i++) {
+            junked.write(new byte[] {'O','g','g','S', 0, 2, 'g', 'O'});
+        }
+        junked.write(orig.toByteArray());
+        byte[] data = junked.toByteArray();
+
+        // Too much junk for the default limit
+        OggPacketReader reader = new OggFile(new ByteArrayInputStream(data)).getPacketReader();
+        assertEquals(OggPacketReader.DEFAULT_SEARCH_LIMIT, reader.getSearchLimit());
+        try {
+            reader.getNextPacket();
+            fail("Should give up searching");
+        } catch(IOException e) {}
+
+        // Or for a tighter one
+        reader = new OggFile(new ByteArrayInputStream(data, 159991, data.length)).getPacketReader();
+        reader.setSearchLimit(5);
+        try {
+            reader.getNextPacket();
+            fail("Should give up searching");
+        } catch(IOException e) {}
+
+        // Without a limit, the fake pages are skipped and all found
+        OggPacketReader expected = new OggFile(getTestFile()).getPacketReader();
+        OggFile ogg = new OggFile(new ByteArrayInputStream(data));
+        OggDiagnostics diagnostics = new OggDiagnostics();
+        ogg.setDiagnosticListener(diagnostics);
+        reader = ogg.getPacketReader();
+        reader.setSearchLimit(-1);
+        int packets = 0;
+        OggPacket e, a;
+        while((e = expected.getNextPacket()) != null) {
+            a = reader.getNextPacket();
+            assertNotNull(a);
+            assertEquals(e.getSid(), a.getSid());
+            assertEquals(e.getSequenceNumber(), a.getSequenceNumber());
+            assertTrue(Arrays.equals(e.getData(), a.getData()));
+            packets++;
+        }
+        assertEquals(null, reader.getNextPacket());
+        assertEquals(12, packets);
+        assertEquals(1, diagnostics.getJunkSkipCount());
+        assertEquals(160001, diagnostics.getJunkBytes());
+    }
+
     public void testCRC() throws IOException {
         InputStream inp = getTestFile();
         inp.read();
@@ -381,6 +502,64 @@ public class TestBasicRead extends TestCase {
         assertTrue( page.isChecksumValid() );
     }
 
+    public void testPageReuse() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        InputStream inp = getTestFile();
+        byte[] b = new byte[4096];
+        int read;
+        while( (read = inp.read(b)) != -1 ) {
+            baos.write(b, 0, read);
+        }
+        byte[] file = baos.toByteArray();
+
+        // Start with the big page
+        OggPage page = new OggPage(file, 58);
+        assertEquals(1, page.getSequenceNumber());
+        assertEquals(0x0f, page.getNumLVs());
+        assertEquals(3745, page.getPageSize());
+        assertTrue( page.isChecksumValid() );
+        byte[] data = page.getData();
+
+        // Re-use it for the smaller last page
+        page.reset(file, 3803);
+        assertEquals(2, page.getSequenceNumber());
+        assertEquals(0x3c0, page.getGranulePosition());
+        assertEquals(false, page.isBeginningOfStream());
+        assertEquals(true, page.isEndOfStream());
+        assertEquals(438, page.getPageSize());
+        assertEquals(0x09, page.getNumLVs());
+        assertEquals(402, page.getDataSize());
+        assertTrue( page.isChecksumValid() );
+        assertEquals(402, page.getData().length);
+
+        OggPacketIterator it = page.getPacketIterator();
+        assertTrue(it.hasNext());
+        OggPacket p = (OggPacket)it.next();
+        assertEquals(0x23, p.getData().length);
+        assertEquals(false, p.isBeginningOfStream());
+
+        // And finally the first, which has different flags
+        page.reset(file, 0);
+        assertEquals(0, page.getSequenceNumber());
+        assertEquals(true, page.isBeginningOfStream());
+        assertEquals(false, page.isEndOfStream());
+        assertEquals(0x1e, page.getDataSize());
+        assertEquals(58, page.getPageSize());
+        assertEquals( 0x69e0b860, page.getChecksum() );
+        assertTrue( page.isChecksumValid() );
+
+        // Matches a fresh page
+        OggPage fresh = new OggPage(file, 0);
+        assertTrue(Arrays.equals(fresh.getData(), page.getData()));
+        assertTrue(Arrays.equals(fresh.getHeader(), page.getHeader()));
+
+        // Corrupt it, and the re-used header space mustn't hide that
+        file[30]++;
+        page.reset(file, 0);
+        assertEquals(false, page.isChecksumValid());
+        assertEquals(3745 - 27 - 0x0f, data.length);
+    }
+
     /**
      * Issue-5 - Certain pages are giving "invalid checksum" warnings
      */
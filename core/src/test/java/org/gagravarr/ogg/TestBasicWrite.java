@@ -15,8 +15,13 @@ package org.gagravarr.ogg;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -211,4 +216,170 @@ public class TestBasicWrite extends TestCase {
 		
 		assertEquals(null, r.getNextPacket());
 	}
+	
+	public void testPagingPolicy() throws IOException {
+		// By default, a new page for each new granule
+		assertEquals(100, countPages(null, false));
+		
+		// Or flush every time even with the same granule, which
+		//  means an extra empty page to mark the end
+		assertEquals(1, countPages(null, true));
+		assertEquals(101, countPages(OggPagingPolicy.lowLatency(), false));
+		assertEquals(101, countPages(OggPagingPolicy.lowLatency(), true));
+		
+		// Can ignore the granule
+		OggPagingPolicy policy = new OggPagingPolicy();
+		policy.setMaxPageGranules(-1);
+		assertEquals(1, countPages(policy, false));
+		assertEquals(1, countPages(OggPagingPolicy.lowOverhead(), false));
+		
+		// Or allow a few granules per page
+		policy.setMaxPageGranules(45);
+		assertEquals(20, countPages(policy, false));
+		
+		// Limit on the number of packets, plus the end marker
+		policy.setMaxPageGranules(-1);
+		policy.setMaxPacketsPerPage(10);
+		assertEquals(11, countPages(policy, false));
+		
+		// Limit on the size
+		policy.setMaxPacketsPerPage(-1);
+		policy.setTargetPageSize(1000);
+		assertEquals(10, countPages(policy, false));
+	}
+	/**
+	 * When several pages are pending, each must only get the
+	 *  granule of the last packet to end on it
+	 */
+	public void testPagingPolicyGranules() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		OggFile ogg = new OggFile(baos);
+		OggPacketWriter w = ogg.getPacketWriter(1234);
+		w.setPagingPolicy(OggPagingPolicy.lowOverhead());
+		for(int i=0; i<400; i++) {
+			w.writePacket(new OggPacket(new byte[300]), i*100);
+		}
+		w.close();
+		ogg.close();
+		
+		OggPacketReader r = new OggFile(new ByteArrayInputStream(baos.toByteArray())).getPacketReader();
+		int pages = 0;
+		int packetsEnded = 0;
+		OggPage page = null;
+		while( (page = r.readNextPage()) != null ) {
+			pages++;
+			packetsEnded += page.getNumPacketsEnded();
+			if(page.getNumPacketsEnded() == 0) {
+				assertEquals(-1, page.getGranulePosition());
+			} else {
+				assertEquals(Math.min(packetsEnded-1, 399)*100, page.getGranulePosition());
+			}
+		}
+		assertTrue(pages > 1);
+		assertTrue(packetsEnded >= 400);
+	}
+	
+	/**
+	 * Writes 100 packets of 100 bytes, with a granule
+	 *  increasing by 10 for each, and counts the pages
+	 */
+	private int countPages(OggPagingPolicy policy, boolean sameGranule) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		OggFile ogg = new OggFile(baos);
+		OggPacketWriter w = ogg.getPacketWriter(1234);
+		if(policy != null) {
+			w.setPagingPolicy(policy);
+			assertEquals(policy, w.getPagingPolicy());
+		} else {
+			assertEquals(ogg.getPagingPolicy(), w.getPagingPolicy());
+		}
+		
+		for(int i=0; i<100; i++) {
+			w.writePacket(new OggPacket(new byte[100]), sameGranule ? 10 : i*10);
+		}
+		w.close();
+		ogg.close();
+		
+		OggPacketReader r = new OggFile(new ByteArrayInputStream(baos.toByteArray())).getPacketReader();
+		int pages = 0;
+		OggPage page = null;
+		OggPage last = null;
+		while( (page = r.readNextPage()) != null ) {
+			pages++;
+			last = page;
+		}
+		assertEquals(true, last.isEndOfStream());
+		assertEquals(sameGranule ? 10 : 990, last.getGranulePosition());
+		
+		// Packets all come back whole
+		r = new OggFile(new ByteArrayInputStream(baos.toByteArray())).getPacketReader();
+		int packets = 0;
+		OggPacket p;
+		while( (p = r.getNextPacket()) != null ) {
+			if(p.getData().length == 0 && p.isEndOfStream()) {
+				// Marker packet when nothing was left pending at the end
+				continue;
+			}
+			assertEquals(100, p.getData().length);
+			packets++;
+		}
+		assertEquals(100, packets);
+		
+		return pages;
+	}
+	
+	public void testChannelWrite() throws IOException {
+		// Write normally
+		final int[] flushes = new int[1];
+		ByteArrayOutputStream baos = new ByteArrayOutputStream() {
+			public void flush() {
+				flushes[0]++;
+			}
+		};
+		OggFile ogg = new OggFile(baos);
+		writeMixedPackets(ogg);
+		assertEquals(0, flushes[0]);
+		ogg.flush();
+		assertEquals(1, flushes[0]);
+		ogg.close();
+		byte[] expected = baos.toByteArray();
+		
+		// Flushing each time if asked
+		flushes[0] = 0;
+		baos.reset();
+		ogg = new OggFile(baos);
+		ogg.setAutoFlush(true);
+		writeMixedPackets(ogg);
+		assertTrue(flushes[0] > 1);
+		assertTrue(Arrays.equals(expected, baos.toByteArray()));
+		
+		// Write to a plain channel
+		ByteArrayOutputStream chout = new ByteArrayOutputStream();
+		ogg = new OggFile(Channels.newChannel(chout));
+		writeMixedPackets(ogg);
+		ogg.close();
+		assertTrue(Arrays.equals(expected, chout.toByteArray()));
+		
+		// Write to a file, which gathers the header and data
+		File f = File.createTempFile("ogg-write", ".ogg");
+		f.deleteOnExit();
+		ogg = new OggFile(new FileOutputStream(f));
+		writeMixedPackets(ogg);
+		ogg.close();
+		
+		assertEquals(expected.length, f.length());
+		byte[] written = new byte[expected.length];
+		FileInputStream fin = new FileInputStream(f);
+		IOUtils.readFully(fin, written);
+		fin.close();
+		assertTrue(Arrays.equals(expected, written));
+	}
+	private void writeMixedPackets(OggFile ogg) throws IOException {
+		OggPacketWriter w = ogg.getPacketWriter(1234);
+		for(int i=0; i<20; i++) {
+			w.writePacket(new OggPacket(new byte[i*1000]), i/4);
+		}
+		w.bufferPacket(new OggPacket(new byte[70000]), true);
+		w.close();
+	}
 }
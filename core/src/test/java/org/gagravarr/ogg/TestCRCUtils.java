@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the Ogg CRC calculations
+ */
+public class TestCRCUtils extends TestCase {
+    /**
+     * The simple, one byte at a time, version to check against
+     */
+    private static int getSimpleCRC(byte[] data, int offset, int length, int crc) {
+        for(int i=offset; i<offset+length; i++) {
+            crc ^= (data[i] & 0xff) << 24;
+            for(int j=0; j<8; j++) {
+                if( (crc & 0x80000000) != 0 ) {
+                    crc = ((crc << 1) ^ CRCUtils.CRC_POLYNOMIAL);
+                } else {
+                    crc <<= 1;
+                }
+            }
+        }
+        return crc;
+    }
+
+    public void testKnownValues() {
+        assertEquals(0, CRCUtils.getCRC(new byte[0]));
+        assertEquals(getSimpleCRC(new byte[] {1,2,3,4}, 0, 4, 0),
+                     CRCUtils.getCRC(new byte[] {1,2,3,4}));
+        // The Ogg CRC of "123456789"
+        assertEquals(0x89a1897f, CRCUtils.getCRC(IOUtils.toUTF8Bytes("123456789")));
+    }
+
+    public void testRanges() {
+        Random r = new Random(42);
+        byte[] data = new byte[1000];
+        r.nextBytes(data);
+
+        for(int offset=0; offset<20; offset++) {
+            for(int length=0; length<100; length+=3) {
+                int expected = getSimpleCRC(data, offset, length, 0);
+                assertEquals(expected, CRCUtils.getCRC(data, offset, length, 0));
+
+                ByteBuffer bb = ByteBuffer.wrap(data, offset, length);
+                assertEquals(expected, CRCUtils.getCRC(bb, 0));
+                assertEquals(offset, bb.position());
+
+                ByteBuffer direct = ByteBuffer.allocateDirect(length);
+                direct.put(data, offset, length).flip();
+                assertEquals(expected, CRCUtils.getCRC(direct, 0));
+            }
+        }
+
+        // Continuing on from a previous CRC should match doing it in one go
+        int whole = CRCUtils.getCRC(data);
+        int split = CRCUtils.getCRC(data, 0, 333, 0);
+        split = CRCUtils.getCRC(data, 333, data.length-333, split);
+        assertEquals(getSimpleCRC(data, 0, data.length, 0), whole);
+        assertEquals(whole, split);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for processing the streams of a file on their own threads
+ */
+public class TestDemuxing extends TestCase {
+	private InputStream getTestFile() throws IOException {
+		return this.getClass().getResourceAsStream("/testTheoraVORBISSkeleton.ogg");
+	}
+
+	public void testDemuxInOrder() throws IOException {
+		// Process normally, on this thread
+		RecordingListener inline = new RecordingListener(false);
+		new OggFile(getTestFile(), inline);
+		assertEquals(3, inline.packets.size());
+		assertEquals(3, inline.ended.size());
+
+		// Now on a thread per stream, with very little queued
+		RecordingListener parallel = new RecordingListener(true);
+		OggPacketReader r = new OggFile(getTestFile()).getPacketReader();
+		new OggDemuxer(r, parallel, Executors.defaultThreadFactory(), 1).demux();
+
+		// Each stream got the same packets in the same order
+		assertEquals(inline.packets, parallel.packets);
+		assertEquals(new HashSet<Integer>(inline.ended), new HashSet<Integer>(parallel.ended));
+
+		// And each was processed on its own thread
+		Set<Thread> threads = new HashSet<Thread>(parallel.threads.values());
+		assertEquals(3, threads.size());
+		assertFalse(threads.contains(Thread.currentThread()));
+
+		// Same via OggFile
+		parallel = new RecordingListener(false);
+		new OggFile(getTestFile(), parallel, Executors.defaultThreadFactory());
+		assertEquals(inline.packets, parallel.packets);
+	}
+
+	public void testFailure() throws IOException {
+		OggStreamListener listener = new OggStreamListener() {
+			public OggStreamReader[] processNewStream(int sid, byte[] magicData) {
+				return new OggStreamReader[] { new OggStreamReader() {
+					public void processPacket(OggPacket packet) {
+						throw new IllegalStateException("Broken");
+					}
+				}};
+			}
+			public void processStreamEnd(int sid) {}
+		};
+
+		OggPacketReader r = new OggFile(getTestFile()).getPacketReader();
+		try {
+			new OggDemuxer(r, listener).demux();
+			fail("Reader failure should be passed on");
+		} catch(IllegalStateException e) {
+			assertEquals("Broken", e.getMessage());
+		}
+	}
+
+	/**
+	 * Records the sequence numbers and sizes of the packets
+	 *  of each stream, along with which thread processed them
+	 */
+	private static class RecordingListener implements OggStreamListener {
+		private boolean slow;
+		private Map<Integer,List<String>> packets =
+			Collections.synchronizedMap(new HashMap<Integer, List<String>>());
+		private Map<Integer,Thread> threads =
+			Collections.synchronizedMap(new HashMap<Integer, Thread>());
+		private List<Integer> ended =
+			Collections.synchronizedList(new ArrayList<Integer>());
+
+		private RecordingListener(boolean slow) {
+			this.slow = slow;
+		}
+
+		public OggStreamReader[] processNewStream(final int sid, byte[] magicData) {
+			final List<String> seen = new ArrayList<String>();
+			packets.put(sid, seen);
+			return new OggStreamReader[] { new OggStreamReader() {
+				public void processPacket(OggPacket packet) {
+					assertEquals(sid, packet.getSid());
+					if(slow) {
+						Thread.yield();
+					}
+					threads.put(sid, Thread.currentThread());
+					seen.add(packet.getSequenceNumber() + "/" + packet.getData().length);
+				}
+			}};
+		}
+		public void processStreamEnd(int sid) {
+			ended.add(sid);
+		}
+	}
+}
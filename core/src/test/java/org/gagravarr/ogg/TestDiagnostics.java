@@ -0,0 +1,180 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.gagravarr.vorbis.VorbisComments;
+import org.gagravarr.vorbis.VorbisFile;
+
+/**
+ * Tests that problems found when reading go to the listener
+ *  set on the file, rather than the default one
+ */
+public class TestDiagnostics extends TestCase {
+	private static final int SID = 0x4321;
+
+	/**
+	 * Writes a stream of a few packets, one per page
+	 */
+	private byte[] createFile() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		OggFile ogg = new OggFile(baos);
+		OggPacketWriter w = ogg.getPacketWriter(SID);
+		for(int i=0; i<4; i++) {
+			w.writePacket(new OggPacket(new byte[] { (byte)i, 1, 2, 3 }), i*10);
+		}
+		w.close();
+		ogg.close();
+		return baos.toByteArray();
+	}
+	private int getFirstPageSize(byte[] data) throws IOException {
+		OggPacketReader r = new OggFile(new ByteArrayInputStream(data)).getPacketReader();
+		return r.readNextPage().getPageSize();
+	}
+	private OggFile open(byte[] data, OggDiagnosticListener listener) {
+		OggFile ogg = new OggFile(new ByteArrayInputStream(data));
+		ogg.setDiagnosticListener(listener);
+		return ogg;
+	}
+
+	public void testJunkSkipped() throws IOException {
+		byte[] data = createFile();
+		int firstPage = getFirstPageSize(data);
+
+		// Put some junk after the first page
+		byte[] junky = new byte[data.length + 37];
+		System.arraycopy(data, 0, junky, 0, firstPage);
+		System.arraycopy(data, firstPage, junky, firstPage+37, data.length-firstPage);
+
+		RecordingDiagnostics listener = new RecordingDiagnostics();
+		long defaultJunk = getDefaultCounts().getJunkSkipCount();
+		OggPacketReader r = open(junky, listener).getPacketReader();
+		int packets = 0;
+		while(r.getNextPacket() != null) {
+			packets++;
+		}
+		assertEquals(4, packets);
+
+		assertEquals(1, listener.getJunkSkipCount());
+		assertEquals(37, listener.getJunkBytes());
+		assertEquals(Long.valueOf(firstPage), listener.offsets.get(0));
+		assertEquals(0, listener.getInvalidChecksumCount());
+		assertEquals(defaultJunk, getDefaultCounts().getJunkSkipCount());
+	}
+
+	public void testInvalidChecksum() throws IOException {
+		byte[] data = createFile();
+		int firstPage = getFirstPageSize(data);
+
+		// Damage the packet on the second page
+		data[firstPage + OggPage.HEADER_SIZE + 1 + 1] ^= 0xff;
+
+		RecordingDiagnostics listener = new RecordingDiagnostics();
+		long defaultInvalid = getDefaultCounts().getInvalidChecksumCount();
+		OggPacketReader r = open(data, listener).getPacketReader();
+		while(r.getNextPacket() != null) {}
+
+		assertEquals(1, listener.getInvalidChecksumCount());
+		assertEquals(Long.valueOf(firstPage), listener.offsets.get(0));
+		assertEquals(Integer.valueOf(1), listener.sequenceNumbers.get(0));
+		assertEquals(0, listener.getJunkSkipCount());
+		assertEquals(defaultInvalid, getDefaultCounts().getInvalidChecksumCount());
+
+		// The reader remembers what it found for each page
+		r = open(data, listener).getPacketReader();
+		OggPage page = null;
+		while((page = r.readNextPage(page)) != null) {
+			assertEquals(page.isChecksumValid(), r.wasLastPageChecksumValid());
+			assertEquals(page.getSequenceNumber() != 1, r.wasLastPageChecksumValid());
+		}
+	}
+
+	public void testMalformedComment() throws IOException {
+		// Take the headers of a real file, and break one comment
+		VorbisFile vf = new VorbisFile(new OggFile(
+				getClass().getResourceAsStream("/testVORBIS.ogg")));
+		VorbisComments comments = vf.getComment();
+		comments.addComment("BROKEN", "yes");
+		byte[] commentData = comments.write().getData();
+		byte[] broken = "broken=yes".getBytes("ASCII");
+		for(int i=0; i<commentData.length-broken.length; i++) {
+			if(IOUtils.byteRangeMatches(broken, commentData, i)) {
+				commentData[i+6] = '_';
+			}
+		}
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		OggFile ogg = new OggFile(baos);
+		OggPacketWriter w = ogg.getPacketWriter(vf.getSid());
+		w.writePacket(vf.getInfo().write(), 0);
+		w.writePacket(new OggPacket(commentData), 0);
+		w.writePacket(vf.getSetup().write(), 0);
+		w.close();
+		ogg.close();
+		vf.close();
+
+		RecordingDiagnostics listener = new RecordingDiagnostics();
+		long defaultMalformed = getDefaultCounts().getMalformedCommentCount();
+		vf = new VorbisFile(open(baos.toByteArray(), listener));
+		assertEquals("Test Title", vf.getComment().getTitle());
+		assertEquals(0, vf.getComment().getComments("broken").size());
+
+		assertEquals(1, listener.getMalformedCommentCount());
+		assertEquals("broken_yes", listener.comments.get(0));
+		assertEquals(defaultMalformed, getDefaultCounts().getMalformedCommentCount());
+		vf.close();
+
+		// Comments read on their own still go to the default
+		new VorbisComments(new OggPacket(commentData));
+		assertEquals(defaultMalformed+1, getDefaultCounts().getMalformedCommentCount());
+	}
+
+	private OggDiagnostics getDefaultCounts() {
+		return (OggDiagnostics)OggDiagnostics.getDefault();
+	}
+
+	/**
+	 * Counts problems, and remembers the details of each
+	 */
+	private static class RecordingDiagnostics extends OggDiagnostics {
+		private List<Long> offsets = new ArrayList<Long>();
+		private List<Integer> sequenceNumbers = new ArrayList<Integer>();
+		private List<String> comments = new ArrayList<String>();
+
+		@Override
+		public void junkSkipped(long offset, long bytes) {
+			super.junkSkipped(offset, bytes);
+			offsets.add(offset);
+		}
+		@Override
+		public void invalidChecksum(long offset, int sid, int sequenceNumber) {
+			super.invalidChecksum(offset, sid, sequenceNumber);
+			assertEquals(SID, sid);
+			offsets.add(offset);
+			sequenceNumbers.add(sequenceNumber);
+		}
+		@Override
+		public void malformedComment(String comment) {
+			super.malformedComment(comment);
+			comments.add(comment);
+		}
+	}
+}
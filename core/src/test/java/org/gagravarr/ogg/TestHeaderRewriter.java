@@ -0,0 +1,324 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.gagravarr.opus.OpusFile;
+import org.gagravarr.opus.OpusTags;
+import org.gagravarr.vorbis.VorbisComments;
+import org.gagravarr.vorbis.VorbisFile;
+
+/**
+ * Tests for replacing header packets, such as comments, without
+ *  re-writing the rest of the file
+ */
+public class TestHeaderRewriter extends TestCase {
+	private File copyTestFile(String name) throws IOException {
+		File f = File.createTempFile("vorbisjava", ".ogg");
+		f.deleteOnExit();
+
+		InputStream in = this.getClass().getResourceAsStream(name);
+		OutputStream out = new FileOutputStream(f);
+		byte[] buffer = new byte[4096];
+		int read;
+		while((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		out.close();
+		return f;
+	}
+	private File createTempFile() throws IOException {
+		File f = File.createTempFile("vorbisjava", ".ogg");
+		f.deleteOnExit();
+		return f;
+	}
+
+	public void testSmallerCommentsInPlace() throws IOException {
+		File f = copyTestFile("/testVORBIS.ogg");
+		long size = f.length();
+		List<byte[]> before = getPackets(f, -1);
+
+		VorbisFile vf = new VorbisFile(f);
+		VorbisComments comments = vf.getComment();
+		int sid = vf.getSid();
+		vf.close();
+		comments.removeAllComments();
+		comments.addComment("TITLE", "Short");
+
+		// Only fits if it can be padded out
+		OggHeaderRewriter rewriter = new OggHeaderRewriter(sid, 1, comments.write());
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		assertEquals(false, rewriter.rewriteInPlace(raf.getChannel()));
+
+		rewriter.setPaddingAllowed(true);
+		assertEquals(true, rewriter.rewriteInPlace(raf.getChannel()));
+		raf.close();
+		assertEquals(size, f.length());
+
+		// Comments changed, nothing else did
+		vf = new VorbisFile(f);
+		assertEquals("Short", vf.getComment().getTitle());
+		assertEquals(null, vf.getComment().getArtist());
+		assertEquals(2, vf.getInfo().getChannels());
+		vf.close();
+
+		List<byte[]> after = getPackets(f, -1);
+		assertEquals(before.size(), after.size());
+		for(int i=0; i<before.size(); i++) {
+			if(i == 1) continue;
+			assertTrue(Arrays.equals(before.get(i), after.get(i)));
+		}
+		assertValidPages(f);
+	}
+
+	public void testLargerCommentsRepaged() throws IOException {
+		File f = copyTestFile("/testVORBIS.ogg");
+		List<byte[]> before = getPackets(f, -1);
+		Map<Integer,Integer> pagesBefore = countPages(f);
+
+		VorbisFile vf = new VorbisFile(f);
+		VorbisComments comments = vf.getComment();
+		int sid = vf.getSid();
+		vf.close();
+		char[] big = new char[200000];
+		Arrays.fill(big, 'x');
+		comments.addComment("DESCRIPTION", new String(big));
+
+		// Won't fit, so the file is left alone
+		OggHeaderRewriter rewriter = new OggHeaderRewriter(sid, 1, comments.write());
+		rewriter.setPaddingAllowed(true);
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		assertEquals(false, rewriter.rewriteInPlace(raf.getChannel()));
+		raf.close();
+		assertEquals(before.size(), getPackets(f, -1).size());
+
+		// Re-page it into a new file
+		File out = createTempFile();
+		raf = new RandomAccessFile(f, "r");
+		OutputStream os = new FileOutputStream(out);
+		rewriter.rewrite(raf.getChannel(), os);
+		os.close();
+		raf.close();
+
+		vf = new VorbisFile(out);
+		assertEquals("Test Title", vf.getComment().getTitle());
+		assertEquals(200000, vf.getComment().getComments("DESCRIPTION").get(0).length());
+		assertEquals(2, vf.getInfo().getChannels());
+		assertNotNull(vf.getSetup());
+		vf.close();
+
+		List<byte[]> after = getPackets(out, -1);
+		assertEquals(before.size(), after.size());
+		for(int i=0; i<before.size(); i++) {
+			if(i == 1) continue;
+			assertTrue(Arrays.equals(before.get(i), after.get(i)));
+		}
+
+		// Needed more pages, so later ones were renumbered
+		Map<Integer,Integer> pagesAfter = countPages(out);
+		assertTrue(pagesAfter.get(sid) > pagesBefore.get(sid));
+		assertValidPages(out);
+	}
+
+	public void testOpusTags() throws IOException {
+		File f = copyTestFile("/testOPUS_11.opus");
+		List<byte[]> before = getPackets(f, -1);
+
+		OpusFile of = new OpusFile(f);
+		OpusTags tags = of.getTags();
+		int sid = of.getSid();
+		of.close();
+		tags.addComment("DESCRIPTION", "Added without touching the audio");
+
+		File out = createTempFile();
+		OggHeaderRewriter rewriter = new OggHeaderRewriter(sid, 1, tags.write());
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		OutputStream os = new FileOutputStream(out);
+		rewriter.rewrite(raf.getChannel(), os);
+		os.close();
+		raf.close();
+
+		of = new OpusFile(out);
+		assertEquals("Added without touching the audio", of.getTags().getComments("DESCRIPTION").get(0));
+		of.close();
+
+		List<byte[]> after = getPackets(out, -1);
+		assertEquals(before.size(), after.size());
+		for(int i=2; i<before.size(); i++) {
+			assertTrue(Arrays.equals(before.get(i), after.get(i)));
+		}
+		assertValidPages(out);
+	}
+
+	/**
+	 * Pages which are renumbered get new checksums, so a corrupt
+	 *  one must be refused rather than made to look valid
+	 */
+	public void testCorruptPageRefused() throws IOException {
+		File f = copyTestFile("/testVORBIS.ogg");
+
+		VorbisFile vf = new VorbisFile(f);
+		VorbisComments comments = vf.getComment();
+		int sid = vf.getSid();
+		vf.close();
+		char[] big = new char[200000];
+		Arrays.fill(big, 'x');
+		comments.addComment("DESCRIPTION", new String(big));
+
+		// Damage the data of the last page
+		OggFile ogg = new OggFile(new RandomAccessFile(f, "r").getChannel());
+		OggPacketReader r = ogg.getPacketReader();
+		long lastOffset = -1;
+		while(r.readNextPage() != null) {
+			lastOffset = r.getLastPageOffset();
+		}
+		ogg.close();
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.seek(f.length() - 1);
+		int last = raf.read();
+		raf.seek(f.length() - 1);
+		raf.write(last ^ 0xff);
+		raf.close();
+		assertTrue(lastOffset > 0);
+
+		OggHeaderRewriter rewriter = new OggHeaderRewriter(sid, 1, comments.write());
+		raf = new RandomAccessFile(f, "r");
+		OutputStream os = new FileOutputStream(createTempFile());
+		try {
+			rewriter.rewrite(raf.getChannel(), os);
+			fail("Corrupt page shouldn't be re-written");
+		} catch(IOException e) {
+			assertTrue(e.getMessage().contains("offset " + lastOffset));
+		}
+		os.close();
+		raf.close();
+	}
+
+	/**
+	 * Other streams' pages must be left alone, and only the
+	 *  one stream renumbered
+	 */
+	public void testMultiplexed() throws IOException {
+		File f = copyTestFile("/testTheoraVORBIS.ogg");
+
+		OggFile ogg = new OggFile(new RandomAccessFile(f, "r").getChannel());
+		VorbisFile vf = new VorbisFile(ogg);
+		VorbisComments comments = vf.getComment();
+		int sid = vf.getSid();
+		vf.close();
+
+		Map<Integer,Integer> pagesBefore = countPages(f);
+		int otherSid = -1;
+		for(int s : pagesBefore.keySet()) {
+			if(s != sid) otherSid = s;
+		}
+		assertTrue(otherSid != -1);
+		List<byte[]> otherBefore = getPackets(f, otherSid);
+		List<byte[]> vorbisBefore = getPackets(f, sid);
+
+		char[] big = new char[70000];
+		Arrays.fill(big, 'y');
+		comments.addComment("DESCRIPTION", new String(big));
+
+		File out = createTempFile();
+		OggHeaderRewriter rewriter = new OggHeaderRewriter(sid, 1, comments.write());
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		OutputStream os = new FileOutputStream(out);
+		rewriter.rewrite(raf.getChannel(), os);
+		os.close();
+		raf.close();
+
+		Map<Integer,Integer> pagesAfter = countPages(out);
+		assertEquals(pagesBefore.get(otherSid), pagesAfter.get(otherSid));
+		assertTrue(pagesAfter.get(sid) > pagesBefore.get(sid));
+
+		List<byte[]> otherAfter = getPackets(out, otherSid);
+		assertEquals(otherBefore.size(), otherAfter.size());
+		for(int i=0; i<otherBefore.size(); i++) {
+			assertTrue(Arrays.equals(otherBefore.get(i), otherAfter.get(i)));
+		}
+		List<byte[]> vorbisAfter = getPackets(out, sid);
+		assertEquals(vorbisBefore.size(), vorbisAfter.size());
+		VorbisComments read = new VorbisComments(new OggPacket(vorbisAfter.get(1)));
+		assertEquals(70000, read.getComments("DESCRIPTION").get(0).length());
+		assertValidPages(out);
+	}
+
+	/**
+	 * Returns the data of all packets, or just those of one stream
+	 */
+	private List<byte[]> getPackets(File f, int sid) throws IOException {
+		OggFile ogg = new OggFile(new RandomAccessFile(f, "r").getChannel());
+		OggPacketReader r = ogg.getPacketReader();
+		List<byte[]> packets = new ArrayList<byte[]>();
+		OggPacket p;
+		while((p = r.getNextPacket()) != null) {
+			if(sid == -1 || p.getSid() == sid) {
+				packets.add(p.getData());
+			}
+		}
+		ogg.close();
+		return packets;
+	}
+	private Map<Integer,Integer> countPages(File f) throws IOException {
+		OggFile ogg = new OggFile(new RandomAccessFile(f, "r").getChannel());
+		OggPacketReader r = ogg.getPacketReader();
+		Map<Integer,Integer> pages = new HashMap<Integer, Integer>();
+		OggPage page;
+		while((page = r.readNextPage()) != null) {
+			Integer count = pages.get(page.getSid());
+			pages.put(page.getSid(), count == null ? 1 : count+1);
+		}
+		ogg.close();
+		return pages;
+	}
+	/**
+	 * Checks that the pages all have valid checksums, and
+	 *  sequence numbers with no gaps, and that there's no junk
+	 */
+	private void assertValidPages(File f) throws IOException {
+		OggFile ogg = new OggFile(new RandomAccessFile(f, "r").getChannel());
+		OggPacketReader r = ogg.getPacketReader();
+		Map<Integer,Integer> seqs = new HashMap<Integer, Integer>();
+		long expectedOffset = 0;
+		OggPage page;
+		while((page = r.readNextPage()) != null) {
+			assertEquals(expectedOffset, r.getLastPageOffset());
+			assertTrue(page.isChecksumValid());
+
+			Integer last = seqs.get(page.getSid());
+			if(last != null) {
+				assertEquals(last+1, page.getSequenceNumber());
+			}
+			seqs.put(page.getSid(), page.getSequenceNumber());
+			expectedOffset += page.getPageSize();
+		}
+		assertEquals(f.length(), expectedOffset);
+		ogg.close();
+	}
+}
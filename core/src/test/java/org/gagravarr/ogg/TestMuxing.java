@@ -0,0 +1,202 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.gagravarr.ogg.OggMuxer.GranuleConverter;
+
+/**
+ * Tests for interleaving several streams written at once
+ */
+public class TestMuxing extends TestCase {
+	private static final int AUDIO_SID = 0x1111;
+	private static final int VIDEO_SID = 0x2222;
+	private static final int SKELETON_SID = 0x3333;
+
+	public void testConverters() {
+		GranuleConverter audio = OggMuxer.forRate(48000);
+		assertEquals(0, audio.getTimeMicros(0));
+		assertEquals(20000, audio.getTimeMicros(960));
+		assertEquals(2000000, audio.getTimeMicros(96000));
+
+		// Keyframe at 20, 5 frames on, is frame 25 = 1 second at 25fps
+		GranuleConverter video = OggMuxer.forKeyFrames(25, 1, 6);
+		assertEquals(1000000, video.getTimeMicros((20<<6) + 5));
+		assertEquals(40000, video.getTimeMicros(1));
+	}
+
+	public void testInterleave() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		OggFile ogg = new OggFile(baos);
+		ogg.setPagingPolicy(OggPagingPolicy.lowLatency());
+		OggMuxer muxer = new OggMuxer(ogg, 4);
+
+		final GranuleConverter audioTime = OggMuxer.forRate(48000);
+		final GranuleConverter videoTime = OggMuxer.forKeyFrames(25, 1, 6);
+		final OggPacketWriter skeleton = muxer.addStream(SKELETON_SID, null);
+		final OggPacketWriter audio = muxer.addStream(AUDIO_SID, audioTime);
+		final OggPacketWriter video = muxer.addStream(VIDEO_SID, videoTime);
+
+		// Skeleton is just headers
+		skeleton.writePacket(new OggPacket(new byte[] {'f','i','s','h'}), 0);
+		skeleton.close();
+
+		// Audio and Video are written on their own threads, with
+		//  the audio running well ahead if allowed
+		final Exception[] failed = new Exception[1];
+		Thread at = new Thread() {
+			public void run() {
+				try {
+					audio.writePacket(new OggPacket(new byte[] {'a',0}), 0);
+					for(int i=1; i<=500; i++) {
+						audio.writePacket(new OggPacket(new byte[100]), i*960);
+					}
+					audio.close();
+				} catch(Exception e) {
+					failed[0] = e;
+				}
+			}
+		};
+		Thread vt = new Thread() {
+			public void run() {
+				try {
+					video.writePacket(new OggPacket(new byte[] {'v',0}), 0);
+					for(int i=1; i<=250; i++) {
+						int keyFrame = (i / 10) * 10;
+						Thread.yield();
+						video.writePacket(new OggPacket(new byte[1000]),
+								(keyFrame<<6) + (i-keyFrame));
+					}
+					video.close();
+				} catch(Exception e) {
+					failed[0] = e;
+				}
+			}
+		};
+		at.start();
+		vt.start();
+		at.join();
+		vt.join();
+		assertNull(failed[0]);
+		muxer.close();
+
+		// Check the pages came out in order
+		OggPacketReader r = new OggFile(new ByteArrayInputStream(baos.toByteArray())).getPacketReader();
+		OggPage page;
+		int pages = 0;
+		boolean seenNonBOS = false;
+		long lastTime = 0;
+		int[] counts = new int[3];
+		while( (page = r.readNextPage()) != null ) {
+			pages++;
+			if(page.isBeginningOfStream()) {
+				assertFalse("BOS pages must come first", seenNonBOS);
+			} else {
+				seenNonBOS = true;
+			}
+
+			long granule = page.getGranulePosition();
+			long time = 0;
+			if(page.getSid() == AUDIO_SID) {
+				time = audioTime.getTimeMicros(granule);
+				counts[0]++;
+			} else if(page.getSid() == VIDEO_SID) {
+				time = videoTime.getTimeMicros(granule);
+				counts[1]++;
+			} else {
+				assertEquals(SKELETON_SID, page.getSid());
+				counts[2]++;
+			}
+			assertTrue("Page at " + time + " after " + lastTime, time >= lastTime);
+			lastTime = time;
+		}
+
+		// Each packet got its own page, plus the end markers
+		assertEquals(502, counts[0]);
+		assertEquals(252, counts[1]);
+		assertEquals(2, counts[2]);
+		assertEquals(756, pages);
+
+		// Can't close the muxer until all the streams are done
+		ogg = new OggFile(new ByteArrayOutputStream());
+		muxer = new OggMuxer(ogg);
+		muxer.addStream(null);
+		try {
+			muxer.close();
+			fail("Stream still open");
+		} catch(IllegalStateException e) {}
+	}
+
+	public void testSerialNumbers() throws IOException {
+		OggFile ogg = new OggFile(new ByteArrayOutputStream());
+		OggMuxer muxer = new OggMuxer(ogg);
+		OggPacketWriter w1 = muxer.addStream(null);
+		OggPacketWriter w2 = muxer.addStream(AUDIO_SID, null);
+		assertEquals(AUDIO_SID, w2.getSid());
+		assertTrue(w1.getSid() != w2.getSid());
+
+		w1.close();
+		w2.close();
+		muxer.close();
+	}
+
+	/**
+	 * Streams can't be added once data pages have been written,
+	 *  as their first pages would end up part way through
+	 */
+	public void testLateStream() throws IOException {
+		OggFile ogg = new OggFile(new ByteArrayOutputStream());
+		ogg.setPagingPolicy(OggPagingPolicy.lowLatency());
+		OggMuxer muxer = new OggMuxer(ogg);
+		OggPacketWriter w = muxer.addStream(AUDIO_SID, OggMuxer.forRate(48000));
+
+		// Only the first page so far, so still fine
+		w.writePacket(new OggPacket(new byte[10]), 0);
+		OggPacketWriter w2 = muxer.addStream(VIDEO_SID, null);
+		w2.close();
+
+		w.writePacket(new OggPacket(new byte[10]), 960);
+		try {
+			muxer.addStream(null);
+			fail("Data pages already written");
+		} catch(IllegalStateException e) {}
+
+		w.close();
+		muxer.close();
+	}
+
+	/**
+	 * One thread writing two streams would wait forever once one
+	 *  gets too far ahead, so must fail instead
+	 */
+	public void testSameThreadStreams() throws IOException {
+		OggFile ogg = new OggFile(new ByteArrayOutputStream());
+		ogg.setPagingPolicy(OggPagingPolicy.lowLatency());
+		OggMuxer muxer = new OggMuxer(ogg, 2);
+		OggPacketWriter audio = muxer.addStream(AUDIO_SID, OggMuxer.forRate(48000));
+		OggPacketWriter other = muxer.addStream(VIDEO_SID, OggMuxer.forRate(48000));
+		other.writePacket(new OggPacket(new byte[10]), 0);
+		try {
+			for(int i=0; i<10; i++) {
+				audio.writePacket(new OggPacket(new byte[10]), i*960);
+			}
+			fail("Would have waited forever");
+		} catch(IllegalStateException e) {}
+	}
+}
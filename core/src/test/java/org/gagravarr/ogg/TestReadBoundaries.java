@@ -15,6 +15,7 @@ package org.gagravarr.ogg;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import junit.framework.TestCase;
 
@@ -157,4 +158,39 @@ public class TestReadBoundaries extends TestCase {
 		OggPacketReader r = ogg.getPacketReader();
 		doTest(r);
 	}
+	
+	public void testProcessPacketViews() throws IOException {
+		OggPacketReader r = new OggPacketReader( getTestFile() );
+		r.setPacketViews(true);
+		
+		// Packets within a page share its data, but are read-only
+		OggPacket p = r.getNextPacket();
+		assertEquals(6, p.getDataLength());
+		ByteBuffer b = p.getDataBuffer();
+		assertEquals(true, b.isReadOnly());
+		assertEquals(6, b.remaining());
+		assertEquals(0, b.get(0));
+		assertEquals(5, b.get(5));
+		
+		p = r.getNextPacket();
+		assertEquals(6, p.getDataLength());
+		assertEquals(0, p.getDataBuffer().get(0));
+		p = r.getNextPacket();
+		assertEquals(6, p.getDataLength());
+		assertEquals(10, p.getDataBuffer().get(0));
+		
+		// Spanning packet gets put back together
+		p = r.getNextPacket();
+		assertEquals(1028, p.getDataLength());
+		b = p.getDataBuffer();
+		byte[] d = new byte[b.remaining()];
+		b.get(d);
+		assertEquals(getBytes(1028), d);
+		assertEquals(null, r.getNextPacket());
+		
+		// Getting the data as an array still works
+		r = new OggPacketReader( getTestFile() );
+		r.setPacketViews(true);
+		doTest(r);
+	}
 }
@@ -13,8 +13,16 @@
  */
 package org.gagravarr.ogg;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -25,6 +33,10 @@ public class TestReadSkipping extends TestCase {
 	private InputStream getTestFile() throws IOException {
 		return this.getClass().getResourceAsStream("/testVORBIS.ogg");
 	}
+	private FileChannel getTestFileChannel() throws IOException {
+		File f = new File(this.getClass().getResource("/testVORBIS.ogg").getFile());
+		return new RandomAccessFile(f, "r").getChannel();
+	}
 	
 	public void testSkipToSequence() throws Exception {
 		OggFile ogg;
@@ -143,4 +155,343 @@ public class TestReadSkipping extends TestCase {
 		assertEquals(0x3c0, p.getGranulePosition());
 		assertEquals(2, p.getSequenceNumber());
 	}
+	
+	public void testChannelRead() throws Exception {
+		OggFile stream = new OggFile(getTestFile());
+		OggFile mapped = new OggFile(getTestFileChannel());
+		assertEquals(false, stream.isSeekable());
+		assertEquals(true, mapped.isSeekable());
+		
+		// Should get the same packets both ways
+		OggPacketReader sr = stream.getPacketReader();
+		OggPacketReader mr = mapped.getPacketReader();
+		assertEquals(4241, mr.getSize());
+		OggPacket sp, mp;
+		while( (sp = sr.getNextPacket()) != null ) {
+			mp = mr.getNextPacket();
+			assertNotNull(mp);
+			assertEquals(sp.getSequenceNumber(), mp.getSequenceNumber());
+			assertEquals(sp.getDataLength(), mp.getDataLength());
+		}
+		assertEquals(null, mr.getNextPacket());
+		assertEquals(4241, mr.getPosition());
+		
+		// Can't seek a stream
+		try {
+			sr.seek(0);
+			fail("Streams can't be seeked");
+		} catch(IllegalStateException e) {}
+		mapped.close();
+	}
+	
+	public void testSeek() throws Exception {
+		OggFile ogg = new OggFile(getTestFileChannel());
+		OggPacketReader r;
+		OggPacket p;
+		
+		// Pages are at 0, 58 and 3803
+		r = ogg.getPacketReaderAt(58);
+		p = r.getNextPacket();
+		assertEquals(1, p.getSequenceNumber());
+		assertEquals(0xdb, p.getDataLength());
+		assertEquals(58, r.getLastPageOffset());
+		
+		r.seek(3803);
+		p = r.getNextPacket();
+		assertEquals(2, p.getSequenceNumber());
+		assertEquals(0x23, p.getDataLength());
+		assertEquals(3803, r.getLastPageOffset());
+		
+		// Mid-page, will move on to the next real one
+		r.seek(1);
+		p = r.getNextPacket();
+		assertEquals(1, p.getSequenceNumber());
+		assertEquals(0xdb, p.getDataLength());
+		
+		r.seek(200);
+		p = r.getNextPacket();
+		assertEquals(2, p.getSequenceNumber());
+		assertEquals(0x23, p.getDataLength());
+		
+		// Back to the start
+		r.seek(0);
+		p = r.getNextPacket();
+		assertEquals(true, p.isBeginningOfStream());
+		assertEquals(0, p.getSequenceNumber());
+		
+		// Past the last page
+		r.seek(3804);
+		assertEquals(null, r.getNextPacket());
+		
+		ogg.close();
+	}
+	
+	/**
+	 * Writes a file big enough to need several rounds of bisection,
+	 *  with two interleaved streams, one of which has packets that
+	 *  span pages
+	 */
+	private File writeLargeFile() throws IOException {
+		File f = File.createTempFile("vorbisjava", ".ogg");
+		f.deleteOnExit();
+		
+		OggFile ogg = new OggFile(new FileOutputStream(f));
+		OggPacketWriter small = ogg.getPacketWriter(0x1234);
+		OggPacketWriter big = ogg.getPacketWriter(0x4321);
+		for(int i=0; i<2000; i++) {
+			small.bufferPacket(new OggPacket(TestReadBoundaries.getBytes(200)));
+			big.bufferPacket(new OggPacket(TestReadBoundaries.getBytes(i%7 == 0 ? 70000 : 500)));
+			if(i % 10 == 9) {
+				small.setGranulePosition(i*100);
+				small.flush();
+				big.setGranulePosition(i*100);
+				big.flush();
+			}
+		}
+		small.close();
+		big.close();
+		ogg.close();
+		return f;
+	}
+	
+	public void testSeekToGranule() throws Exception {
+		File f = writeLargeFile();
+		long[] granules = new long[] { 0, 1, 900, 901, 55555, 100000, 150000, 199900, 199901 };
+		int[] sids = new int[] { 0x1234, 0x4321 };
+		
+		OggFile mapped = new OggFile(new RandomAccessFile(f, "r").getChannel());
+		OggPacketReader mr = mapped.getPacketReader();
+		for(int sid : sids) {
+			for(long granule : granules) {
+				// Find the right packet the slow way
+				OggFile stream = new OggFile(new FileInputStream(f));
+				OggPacketReader sr = stream.getPacketReader();
+				sr.skipToGranulePosition(sid, granule);
+				OggPacket expected = sr.getNextPacket();
+				
+				// Bisect to it, which should give the same
+				mr.seekToGranulePosition(sid, granule);
+				OggPacket actual = mr.getNextPacket();
+				
+				if(expected == null) {
+					assertNull(actual);
+				} else {
+					assertNotNull("Nothing found for " + granule, actual);
+					assertEquals(expected.getSid(), actual.getSid());
+					assertEquals(expected.getSequenceNumber(), actual.getSequenceNumber());
+					assertEquals(expected.getGranulePosition(), actual.getGranulePosition());
+					assertEquals(expected.getDataLength(), actual.getDataLength());
+				}
+				stream.close();
+			}
+		}
+		mapped.close();
+	}
+	
+	public void testPageIndex() throws Exception {
+		OggFile ogg = new OggFile(getTestFileChannel());
+		OggPageIndex index = ogg.buildPageIndex();
+		assertEquals(4241, index.getFileSize());
+		assertEquals(3, index.getPageCount());
+		
+		assertEquals(0, index.getOffset(0));
+		assertEquals(58, index.getOffset(1));
+		assertEquals(3803, index.getOffset(2));
+		for(int i=0; i<3; i++) {
+			assertEquals(0x0473b45c, index.getSid(i));
+			assertEquals(i, index.getSequenceNumber(i));
+			assertEquals(false, index.isContinuation(i));
+		}
+		assertEquals(true, index.isBeginningOfStream(0));
+		assertEquals(false, index.isBeginningOfStream(1));
+		assertEquals(true, index.isEndOfStream(2));
+		assertEquals(0, index.getGranulePosition(1));
+		assertEquals(0x3c0, index.getGranulePosition(2));
+		
+		assertEquals(2, index.findPageBySequenceNumber(0x0473b45c, 2));
+		assertEquals(-1, index.findPageBySequenceNumber(0x0473b45c, 3));
+		assertEquals(-1, index.findPageBySequenceNumber(0x1234, 0));
+		assertEquals(0, index.findPageByGranule(0x0473b45c, 0));
+		assertEquals(2, index.findPageByGranule(0x0473b45c, 1));
+		assertEquals(-1, index.findPageByGranule(0x0473b45c, 0x3c1));
+		
+		// Reader will use it to jump about
+		OggPacketReader r = ogg.getPacketReader();
+		assertEquals(index, r.getPageIndex());
+		r.seekToSequenceNumber(0x0473b45c, 2);
+		OggPacket p = r.getNextPacket();
+		assertEquals(2, p.getSequenceNumber());
+		assertEquals(0x23, p.getDataLength());
+		
+		r.seekToSequenceNumber(0x0473b45c, 1);
+		p = r.getNextPacket();
+		assertEquals(1, p.getSequenceNumber());
+		assertEquals(0xdb, p.getDataLength());
+		
+		// Save and re-load
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		index.write(baos);
+		OggPageIndex loaded = OggPageIndex.read(new ByteArrayInputStream(baos.toByteArray()));
+		assertEquals(index.getFileSize(), loaded.getFileSize());
+		assertEquals(index.getPageCount(), loaded.getPageCount());
+		for(int i=0; i<index.getPageCount(); i++) {
+			assertEquals(index.getOffset(i), loaded.getOffset(i));
+			assertEquals(index.getSid(i), loaded.getSid(i));
+			assertEquals(index.getSequenceNumber(i), loaded.getSequenceNumber(i));
+			assertEquals(index.getGranulePosition(i), loaded.getGranulePosition(i));
+			assertEquals(index.isEndOfStream(i), loaded.isEndOfStream(i));
+		}
+		ogg.close();
+		
+		// Corrupt page counts are refused, rather than trusted
+		byte[] saved = baos.toByteArray();
+		for(long badCount : new long[] { -1, Integer.MAX_VALUE, index.getFileSize() }) {
+			byte[] bad = saved.clone();
+			IOUtils.putInt4(bad, 13, badCount);
+			try {
+				OggPageIndex.read(new ByteArrayInputStream(bad));
+				fail("Count of " + badCount + " isn't valid");
+			} catch(IllegalArgumentException e) {}
+		}
+		byte[] truncated = saved.clone();
+		IOUtils.putInt4(truncated, 13, index.getPageCount() + 1);
+		try {
+			OggPageIndex.read(new ByteArrayInputStream(truncated));
+			fail("Index has fewer entries than its count");
+		} catch(IOException e) {}
+		
+		// Can't use an index for a different file
+		ogg = new OggFile(new RandomAccessFile(writeLargeFile(), "r").getChannel());
+		try {
+			ogg.setPageIndex(loaded);
+			fail("Index is for a different file");
+		} catch(IllegalArgumentException e) {}
+		ogg.close();
+	}
+	
+	public void testSeekToGranuleWithIndex() throws Exception {
+		File f = writeLargeFile();
+		long[] granules = new long[] { 0, 1, 900, 901, 55555, 100000, 150000, 199900, 199901 };
+		int[] sids = new int[] { 0x1234, 0x4321 };
+		
+		OggFile mapped = new OggFile(new RandomAccessFile(f, "r").getChannel());
+		OggPageIndex index = mapped.buildPageIndex();
+		OggPacketReader mr = mapped.getPacketReaderAt(0);
+		assertEquals(index, mr.getPageIndex());
+		
+		for(int sid : sids) {
+			for(long granule : granules) {
+				OggFile stream = new OggFile(new FileInputStream(f));
+				OggPacketReader sr = stream.getPacketReader();
+				sr.skipToGranulePosition(sid, granule);
+				OggPacket expected = sr.getNextPacket();
+				
+				mr.seekToGranulePosition(sid, granule);
+				OggPacket actual = mr.getNextPacket();
+				
+				if(expected == null) {
+					assertNull(actual);
+				} else {
+					assertNotNull("Nothing found for " + granule, actual);
+					assertEquals(expected.getSid(), actual.getSid());
+					assertEquals(expected.getSequenceNumber(), actual.getSequenceNumber());
+					assertEquals(expected.getDataLength(), actual.getDataLength());
+				}
+				stream.close();
+			}
+		}
+		mapped.close();
+	}
+	
+	public void testScan() throws Exception {
+		File f = writeLargeFile();
+		OggFile ogg = new OggFile(new RandomAccessFile(f, "r").getChannel());
+		OggPageIndex index = ogg.buildPageIndex();
+		
+		// Same results however many ranges it's split into
+		OggScanStatistics one = ogg.scan(1);
+		OggScanStatistics many = ogg.scan(7);
+		for(OggScanStatistics stats : new OggScanStatistics[] { one, many }) {
+			assertEquals(index.getPageCount(), stats.getPageCount());
+			assertEquals(f.length(), stats.getPageBytes());
+			assertEquals(0, stats.getInvalidChecksumCount());
+			assertEquals(2, stats.getStreams().size());
+			
+			OggScanStatistics.StreamStatistics small = stats.getStream(0x1234);
+			assertEquals(0, small.getFirstSequenceNumber());
+			assertEquals(0, small.getSequenceGapCount());
+			assertEquals(900, small.getFirstGranulePosition());
+			assertEquals(199900, small.getLastGranulePosition());
+			assertEquals(2000*200, small.getDataBytes());
+			assertEquals(true, small.hasBeginningOfStream());
+			assertEquals(true, small.hasEndOfStream());
+			
+			OggScanStatistics.StreamStatistics big = stats.getStream(0x4321);
+			assertEquals(0, big.getSequenceGapCount());
+			assertEquals(index.getPageCount(), small.getPageCount() + big.getPageCount());
+			assertEquals(big.getPageCount()-1, big.getLastSequenceNumber());
+		}
+		ogg.close();
+		
+		// Drop a page from the middle of the file, and corrupt another
+		int dropped = index.getPageCount() / 2;
+		int corrupt = index.getPageCount() / 3;
+		long dropStart = index.getOffset(dropped);
+		long dropEnd = index.getOffset(dropped+1);
+		
+		File broken = File.createTempFile("vorbisjava", ".ogg");
+		broken.deleteOnExit();
+		byte[] data = new byte[(int)f.length()];
+		FileInputStream in = new FileInputStream(f);
+		IOUtils.readFully(in, data);
+		in.close();
+		data[(int)index.getOffset(corrupt+1)-1]++;
+		
+		FileOutputStream out = new FileOutputStream(broken);
+		out.write(data, 0, (int)dropStart);
+		out.write(data, (int)dropEnd, data.length-(int)dropEnd);
+		out.close();
+		
+		ogg = new OggFile(new RandomAccessFile(broken, "r").getChannel());
+		one = ogg.scan(1);
+		many = ogg.scan(5);
+		for(OggScanStatistics stats : new OggScanStatistics[] { one, many }) {
+			assertEquals(index.getPageCount()-1, stats.getPageCount());
+			assertEquals(1, stats.getInvalidChecksumCount());
+			assertEquals(1, stats.getStream(index.getSid(dropped)).getSequenceGapCount());
+			assertEquals(0, stats.getUnscannedRangeCount());
+		}
+		ogg.close();
+		
+		// Put in more junk than will be searched through, and cut
+		//  the last page short, which are skipped rather than failing.
+		// (The page corrupted above is still there, but none are dropped)
+		int junkAt = (int)index.getOffset(index.getPageCount() / 2);
+		int junk = OggPacketReader.DEFAULT_SEARCH_LIMIT + 50000;
+		int lastPage = (int)index.getOffset(index.getPageCount()-1);
+		int cutOff = 20;
+		
+		out = new FileOutputStream(broken);
+		out.write(data, 0, junkAt);
+		byte[] junkData = new byte[junk];
+		Arrays.fill(junkData, (byte)0x55);
+		out.write(junkData);
+		out.write(data, junkAt, lastPage-junkAt+cutOff);
+		out.close();
+		
+		ogg = new OggFile(new RandomAccessFile(broken, "r").getChannel());
+		one = ogg.scan(1);
+		assertEquals(2, one.getUnscannedRangeCount());
+		assertEquals(junk+cutOff, one.getUnscannedBytes());
+		many = ogg.scan(5);
+		assertTrue(many.getUnscannedRangeCount() >= 2);
+		assertTrue(many.getUnscannedBytes() > cutOff);
+		assertTrue(many.getUnscannedBytes() <= junk+cutOff);
+		for(OggScanStatistics stats : new OggScanStatistics[] { one, many }) {
+			assertEquals(index.getPageCount()-1, stats.getPageCount());
+			assertEquals(1, stats.getInvalidChecksumCount());
+			assertEquals(lastPage, stats.getPageBytes());
+		}
+		ogg.close();
+	}
 }
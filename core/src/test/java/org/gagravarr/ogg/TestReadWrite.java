@@ -71,6 +71,37 @@ public class TestReadWrite extends TestCase {
 		return ret;
 	}
 	
+	public void testMetrics() throws IOException {
+		SimpleOggMetrics readMetrics = new SimpleOggMetrics();
+		SimpleOggMetrics writeMetrics = new SimpleOggMetrics();
+
+		OggFile in = new OggFile(getTestFile());
+		in.setMetrics(readMetrics);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		OggFile out = new OggFile(baos);
+		out.setMetrics(writeMetrics);
+		copy(in, out);
+
+		// Copy should have the same pages as the original
+		long pages = readMetrics.getCounter(OggMetrics.PAGES_READ).get();
+		assertTrue(pages > 0);
+		assertEquals(pages, writeMetrics.getCounter(OggMetrics.PAGES_WRITTEN).get());
+		assertEquals(baos.size(), readMetrics.getCounter(OggMetrics.BYTES_READ).get());
+		assertEquals(baos.size(), writeMetrics.getCounter(OggMetrics.BYTES_WRITTEN).get());
+		assertEquals(
+				readMetrics.getCounter(OggMetrics.SPANNED_PACKETS_READ).get(),
+				writeMetrics.getCounter(OggMetrics.SPANNED_PACKETS_WRITTEN).get());
+		assertEquals(0, readMetrics.getCounter(OggMetrics.RESYNC_BYTES).get());
+
+		SimpleOggMetrics.SimpleHistogram read = readMetrics.getHistogram(OggMetrics.PACKETS_PER_PAGE_READ);
+		SimpleOggMetrics.SimpleHistogram written = writeMetrics.getHistogram(OggMetrics.PACKETS_PER_PAGE_WRITTEN);
+		assertEquals(pages, read.getCount());
+		assertEquals(read.getTotal(), written.getTotal());
+		assertEquals(read.getMax(), written.getMax());
+		assertEquals(pages, readMetrics.getTimer(OggMetrics.CRC_TIME).getCount());
+		assertTrue(writeMetrics.getTimer(OggMetrics.FLUSH_TIME).getCount() > 0);
+	}
+
 	public void testReadWrite() throws IOException {
 		OggFile in = new OggFile(getTestFile());
 		
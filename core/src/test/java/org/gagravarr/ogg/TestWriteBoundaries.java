@@ -15,6 +15,8 @@ package org.gagravarr.ogg;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -164,4 +166,43 @@ public class TestWriteBoundaries extends TestCase {
 		p = r.getNextPacket();
 		assertEquals(null, p);
 	}
+
+	public void testReadHugePackets() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		OggFile ogg = new OggFile(baos);
+		OggPacketWriter w = ogg.getPacketWriter(0x123456);
+		
+		// Small, then one spread over 10 pages, then small
+		w.bufferPacket(new OggPacket(getBytes(6)), true);
+		w.bufferPacket(new OggPacket(getBytes(600000)), true);
+		w.bufferPacket(new OggPacket(getBytes(10)), true);
+		w.bufferPacket(new OggPacket(getBytes(131072)), false);
+		w.bufferPacket(new OggPacket(getBytes(12)), false);
+		w.close();
+		byte[] file = baos.toByteArray();
+		
+		// All the data should come back, whether copied or not
+		for(boolean views : new boolean[] {false, true}) {
+			OggPacketReader r = new OggFile(new ByteArrayInputStream(file)).getPacketReader();
+			r.setPacketViews(views);
+			for(int size : new int[] {6, 600000, 10, 131072, 12}) {
+				OggPacket p = r.getNextPacket();
+				assertTrue(Arrays.equals(getBytes(size), p.getData()));
+			}
+			assertEquals(null, r.getNextPacket());
+		}
+		
+		// With a limit, the huge one is refused, but the rest still read
+		OggPacketReader r = new OggFile(new ByteArrayInputStream(file)).getPacketReader();
+		r.setMaxPacketSize(200000);
+		assertEquals(6, r.getNextPacket().getData().length);
+		try {
+			r.getNextPacket();
+			fail("Packet is over the maximum size");
+		} catch(IOException e) {}
+		assertEquals(10, r.getNextPacket().getData().length);
+		assertEquals(131072, r.getNextPacket().getData().length);
+		assertEquals(12, r.getNextPacket().getData().length);
+		assertEquals(null, r.getNextPacket());
+	}
 }
@@ -14,12 +14,14 @@
 package org.gagravarr.ogg.audio;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
 import junit.framework.TestCase;
 
 import org.gagravarr.ogg.OggFile;
+import org.gagravarr.ogg.OggStreamAudioData;
 import org.gagravarr.opus.OpusFile;
 import org.gagravarr.vorbis.VorbisFile;
 
@@ -131,4 +133,69 @@ public class TestOggAudioStatistics extends TestCase {
         assertEquals(389.1, stats.getAverageOverallBitrate() / 1000, 0.1);
         assertEquals(299.5, stats.getAverageAudioBitrate() / 1000, 0.1);
     }
+
+    /**
+     * For seekable files, we only need to read the end
+     *  to find the duration
+     */
+    public void testDurationOnly() throws IOException {
+        File vorbisFile = new File(getClass().getResource("/testVORBIS.ogg").getFile());
+        File opusFile = new File(getClass().getResource("/testOPUS_09.opus").getFile());
+
+        // Vorbis
+        VorbisFile vf = new VorbisFile(vorbisFile);
+        af = vf;
+        assertEquals(0x3c0, vf.getLastGranulePosition());
+
+        OggAudioStatistics stats = new OggAudioStatistics(vf, vf);
+        stats.calculateDurationOnly();
+        assertEquals(0x3c0, stats.getLastGranule());
+        assertEquals(21, (int)(stats.getDurationSeconds()*1000));
+        assertEquals("00:00:00.02", stats.getDuration());
+        assertEquals(0, stats.getAudioPacketsCount());
+
+        // Reading the end doesn't affect reading the audio
+        assertNotNull(vf.getNextAudioPacket());
+        vf.close();
+
+        // Opus, which has pre-skip
+        OpusFile of = new OpusFile(opusFile);
+        af = of;
+        stats = new OggAudioStatistics(of, of);
+        stats.calculateDurationOnly();
+        assertEquals(21, (int)(stats.getDurationSeconds()*1000));
+        assertEquals(0, stats.getAudioPacketsCount());
+
+        // Same as if we read it all
+        OggAudioStatistics full = new OggAudioStatistics(of, of);
+        full.calculate();
+        assertEquals(full.getLastGranule(), stats.getLastGranule());
+        assertEquals(full.getDurationSeconds(), stats.getDurationSeconds());
+        of.close();
+
+        // Streams have to be read through
+        VorbisFile svf = new VorbisFile(new OggFile(getTestVorbisFile()));
+        assertEquals(-1, svf.getLastGranulePosition());
+        stats = new OggAudioStatistics(svf, svf);
+        stats.calculateDurationOnly();
+        assertEquals(9, stats.getAudioPacketsCount());
+        assertEquals(21, (int)(stats.getDurationSeconds()*1000));
+        svf.close();
+
+        // As do other audio streams, which can't find their end
+        final VorbisFile pvf = new VorbisFile(vorbisFile);
+        af = pvf;
+        OggAudioStream plain = new OggAudioStream() {
+            public OggStreamAudioData getNextAudioPacket() throws IOException {
+                return pvf.getNextAudioPacket();
+            }
+            public void skipToGranule(long granulePosition) throws IOException {
+                pvf.skipToGranule(granulePosition);
+            }
+        };
+        stats = new OggAudioStatistics(pvf, plain);
+        stats.calculateDurationOnly();
+        assertEquals(9, stats.getAudioPacketsCount());
+        assertEquals(0x3c0, stats.getLastGranule());
+    }
 }
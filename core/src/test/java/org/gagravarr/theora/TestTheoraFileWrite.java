@@ -0,0 +1,79 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.theora;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.gagravarr.ogg.OggFile;
+import org.gagravarr.ogg.OggStreamAudioData;
+import org.gagravarr.ogg.OggStreamAudioVisualData;
+import org.gagravarr.ogg.audio.OggAudioHeaders;
+
+/**
+ * Tests for writing things using TheoraFile
+ */
+public class TestTheoraFileWrite extends TestCase {
+    public void testStreamedWriteWithAudio() throws IOException {
+        TheoraFile in = new TheoraFile(new OggFile(
+                getClass().getResourceAsStream("/testTheoraVORBIS.ogg")));
+        OggAudioHeaders audio = in.getSoundtracks().iterator().next();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        TheoraFile out = new TheoraFile(baos, in.getInfo(), in.getComments(), in.getSetup());
+        int audioSid = out.addSoundtrack(audio);
+        out.writeHeaders();
+
+        // Once the headers are out, data goes straight to its stream
+        int video = 0;
+        int sound = 0;
+        OggStreamAudioVisualData avd = null;
+        while ((avd = in.getNextAudioVisualPacket()) != null) {
+            if (avd.getData().length == 0) {
+                // Nothing to write
+            } else if (avd instanceof OggStreamAudioData) {
+                out.writeAudioData((OggStreamAudioData)avd, audioSid);
+                sound++;
+            } else {
+                out.writeVideoData((TheoraVideoData)avd);
+                video++;
+            }
+        }
+        assertTrue(video > 0);
+        assertTrue(sound > 0);
+        in.close();
+        out.close();
+
+        // Check it all came back. As the data was all written
+        //  as it came, streams may end with an empty EOS packet
+        in = new TheoraFile(new OggFile(new ByteArrayInputStream(baos.toByteArray())));
+        assertEquals(1, in.getSoundtracks().size());
+        assertEquals(audioSid, in.getSoundtracks().iterator().next().getSid());
+        while ((avd = in.getNextAudioVisualPacket()) != null) {
+            if (avd.getData().length == 0) {
+                // End of stream marker
+            } else if (avd instanceof OggStreamAudioData) {
+                sound--;
+            } else {
+                video--;
+            }
+        }
+        assertEquals(0, video);
+        assertEquals(0, sound);
+        in.close();
+    }
+}
@@ -13,12 +13,19 @@
  */
 package org.gagravarr.vorbis;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
+import org.gagravarr.flac.FlacPicture;
+import org.gagravarr.ogg.Base64InputStream;
+import org.gagravarr.ogg.IOUtils;
 import org.gagravarr.ogg.OggFile;
 import org.gagravarr.ogg.OggPacket;
 import org.gagravarr.ogg.OggPacketReader;
@@ -158,4 +165,182 @@ public class TestVorbisComments extends TestCase {
 
         assertEquals(1, p.getData()[43]);
     }
+
+    public void testLazyParsing() throws IOException {
+        VorbisComments c = new VorbisComments();
+        c.addComment("TITLE", "The Title");
+        c.addComment("Artist", "First");
+        c.addComment("ARTIST", "Second");
+        char[] big = new char[100000];
+        Arrays.fill(big, 'p');
+        c.addComment("METADATA_BLOCK_PICTURE", new String(big));
+        c.addComment("DAT\u00c9", "Not plain ASCII");
+        OggPacket p = c.write();
+
+        VorbisComments lazy = new VorbisComments(p, true);
+        assertEquals("The Title", lazy.getTitle());
+        assertEquals(2, lazy.getComments("aRtIsT").size());
+        assertEquals("First", lazy.getComments("artist").get(0));
+        assertEquals("Not plain ASCII", lazy.getComments("dat\u00e9").get(0));
+
+        // Changes apply on top of what's in the file
+        lazy.addComment("Artist", "Third");
+        assertEquals(3, lazy.getComments("ARTIST").size());
+        assertEquals("Second", lazy.getComments("ARTIST").get(1));
+        assertEquals("Third", lazy.getComments("ARTIST").get(2));
+        lazy.removeComments("metadata_block_picture");
+        assertEquals(0, lazy.getComments("METADATA_BLOCK_PICTURE").size());
+        lazy.setComments("title", new ArrayList<String>(Arrays.asList("New")));
+        assertEquals("New", lazy.getTitle());
+        assertEquals(3, lazy.getAllComments().size());
+
+        // Untouched, it writes back the same as it was
+        assertTrue(Arrays.equals(p.getData(), new VorbisComments(p, true).write().getData()));
+
+        // Gives the same as decoding everything up-front
+        VorbisComments eager = new VorbisComments(p);
+        assertEquals(4, eager.getAllComments().size());
+        assertEquals(100000, eager.getComments("metadata_block_picture").get(0).length());
+        assertEquals("Second", eager.getComments("artist").get(1));
+    }
+
+    /**
+     * Lots of different tags must still be quick to decode, both
+     *  up-front and when all are asked for later
+     */
+    public void testManyTags() throws IOException {
+        VorbisComments c = new VorbisComments();
+        for(int i=0; i<20000; i++) {
+            c.addComment("Tag" + i, "Value " + i);
+            c.addComment("TAG" + i, "Again " + i);
+        }
+        OggPacket p = c.write();
+
+        for(boolean lazy : new boolean[] { false, true }) {
+            VorbisComments read = new VorbisComments(p, lazy);
+            assertEquals(20000, read.getAllComments().size());
+            assertEquals("Value 123", read.getComments("tag123").get(0));
+            assertEquals("Again 123", read.getComments("tag123").get(1));
+        }
+    }
+
+    public void testNormaliseTag() throws IOException {
+        assertEquals("artist", VorbisStyleComments.normaliseTag("ARTIST"));
+        assertEquals("album artist", VorbisStyleComments.normaliseTag("Album Artist"));
+        assertEquals("replaygain_track_gain", VorbisStyleComments.normaliseTag("REPLAYGAIN_TRACK_GAIN"));
+        assertEquals("ab", VorbisStyleComments.normaliseTag("a=b~"));
+        assertEquals("tag", VorbisStyleComments.normaliseTag("T\u00e9AG"));
+        assertEquals("", VorbisStyleComments.normaliseTag(""));
+
+        // Common tags share the one instance, whatever their case
+        assertSame(VorbisStyleComments.KEY_ARTIST, VorbisStyleComments.normaliseTag("Artist"));
+        assertSame(VorbisStyleComments.KEY_TITLE, VorbisStyleComments.normaliseTag(new String("title")));
+        assertSame(VorbisStyleComments.normaliseTag("MUSICBRAINZ_TRACKID"),
+                   VorbisStyleComments.normaliseTag("musicbrainz_trackid"));
+
+        // Including when read from a file
+        OggFile ogg = new OggFile(getTestFile());
+        VorbisFile vf = new VorbisFile(ogg);
+        int found = 0;
+        for(String tag : vf.getComment().getAllComments().keySet()) {
+            if(tag.equals(VorbisStyleComments.KEY_ARTIST)) {
+                assertSame(VorbisStyleComments.KEY_ARTIST, tag);
+                found++;
+            }
+        }
+        assertEquals(1, found);
+        vf.close();
+    }
+
+    public void testPictures() throws IOException {
+        byte[] image = new byte[50000];
+        new Random(42).nextBytes(image);
+        byte[] block = createPictureBlock(image);
+
+        VorbisComments c = new VorbisComments();
+        c.addComment("TITLE", "Has Pictures");
+        c.addComment("METADATA_BLOCK_PICTURE", toBase64(block, 76));
+        c.addComment("METADATA_BLOCK_PICTURE", toBase64(createPictureBlock(new byte[1]), 0));
+        OggPacket p = c.write();
+
+        // Same whether read from the packet or decoded Strings
+        for(boolean lazy : new boolean[] { true, false }) {
+            VorbisComments read = new VorbisComments(p, lazy);
+            List<FlacPicture> pictures = read.getPictures();
+            assertEquals(2, pictures.size());
+
+            FlacPicture picture = pictures.get(0);
+            assertEquals(FlacPicture.TYPE_FRONT_COVER, picture.getPictureType());
+            assertEquals("image/png", picture.getMimeType());
+            assertEquals("Cover", picture.getDescription());
+            assertEquals(640, picture.getWidth());
+            assertEquals(480, picture.getHeight());
+            assertEquals(24, picture.getColourDepth());
+            assertEquals(image.length, picture.getImageLength());
+
+            // Can be read more than once
+            assertTrue(Arrays.equals(image, readAll(picture.getImageData())));
+            assertTrue(Arrays.equals(image, readAll(picture.getImageData())));
+            assertTrue(Arrays.equals(block, Arrays.copyOfRange(picture.getData(), 4, block.length+4)));
+
+            assertEquals(1, readAll(pictures.get(1).getImageData()).length);
+            assertEquals("Has Pictures", read.getTitle());
+        }
+    }
+
+    public void testBase64() throws IOException {
+        assertEquals("Man", new String(readAll(new Base64InputStream("TWFu")), "ASCII"));
+        assertEquals("Ma", new String(readAll(new Base64InputStream("TWE=")), "ASCII"));
+        assertEquals("Ma", new String(readAll(new Base64InputStream("TWE")), "ASCII"));
+        assertEquals("M", new String(readAll(new Base64InputStream("TQ==")), "ASCII"));
+        assertEquals("Man Ma", new String(readAll(new Base64InputStream("TWFu\r\nIE1h")), "ASCII"));
+        assertEquals(0, readAll(new Base64InputStream("")).length);
+        try {
+            readAll(new Base64InputStream("TW!u"));
+            fail("Invalid character");
+        } catch(IOException e) {}
+    }
+
+    private static byte[] createPictureBlock(byte[] image) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        IOUtils.writeInt4BE(baos, FlacPicture.TYPE_FRONT_COVER);
+        IOUtils.writeInt4BE(baos, 9);
+        baos.write("image/png".getBytes("ASCII"));
+        IOUtils.writeInt4BE(baos, 5);
+        baos.write("Cover".getBytes("ASCII"));
+        IOUtils.writeInt4BE(baos, 640);
+        IOUtils.writeInt4BE(baos, 480);
+        IOUtils.writeInt4BE(baos, 24);
+        IOUtils.writeInt4BE(baos, 0);
+        IOUtils.writeInt4BE(baos, image.length);
+        baos.write(image);
+        return baos.toByteArray();
+    }
+    private static String toBase64(byte[] data, int lineLength) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        StringBuffer s = new StringBuffer();
+        for(int i=0; i<data.length; i+=3) {
+            int b = (data[i] & 0xff) << 16;
+            if(i+1 < data.length) b |= (data[i+1] & 0xff) << 8;
+            if(i+2 < data.length) b |= (data[i+2] & 0xff);
+            s.append(alphabet.charAt((b >> 18) & 63));
+            s.append(alphabet.charAt((b >> 12) & 63));
+            s.append(i+1 < data.length ? alphabet.charAt((b >> 6) & 63) : '=');
+            s.append(i+2 < data.length ? alphabet.charAt(b & 63) : '=');
+            if(lineLength > 0 && (i/3+1) % (lineLength/4) == 0) {
+                s.append('\n');
+            }
+        }
+        return s.toString();
+    }
+    private static byte[] readAll(InputStream inp) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int read;
+        while((read = inp.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+        inp.close();
+        return baos.toByteArray();
+    }
 }
@@ -17,6 +17,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -123,4 +124,67 @@ public class TestVorbisFileWrite extends TestCase {
         // All done
         vfIN.close();
     }
+
+    public void testStreamingWrite() throws IOException {
+        OggFile in = new OggFile(getTestFile());
+        VorbisFile vfOrig = new VorbisFile(in);
+
+        // Write the normal way, all at the end
+        ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+        VorbisFile vfOUT = new VorbisFile(
+                buffered,
+                vfOrig.getSid(),
+                vfOrig.getInfo(),
+                vfOrig.getComment(),
+                vfOrig.getSetup()
+        );
+        VorbisAudioData vad;
+        while( (vad = vfOrig.getNextAudioPacket()) != null ) {
+            vfOUT.writeAudioData(vad);
+        }
+        assertEquals(0, buffered.size());
+        vfOUT.close();
+        vfOrig.close();
+
+        // Now stream it, with the headers going out first
+        in = new OggFile(getTestFile());
+        vfOrig = new VorbisFile(in);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        vfOUT = new VorbisFile(
+                streamed,
+                vfOrig.getSid(),
+                vfOrig.getInfo(),
+                vfOrig.getComment(),
+                vfOrig.getSetup()
+        );
+        vfOUT.writeHeaders();
+        int headersSize = streamed.size();
+        assertTrue(headersSize > 0);
+
+        while( (vad = vfOrig.getNextAudioPacket()) != null ) {
+            vfOUT.writeAudioData(vad);
+        }
+        vfOUT.close();
+        vfOrig.close();
+        assertTrue(streamed.size() > headersSize);
+
+        // Should end up the same either way
+        assertTrue(Arrays.equals(buffered.toByteArray(), streamed.toByteArray()));
+
+        VorbisFile vfIN = new VorbisFile(new OggFile(
+                new ByteArrayInputStream(streamed.toByteArray())
+        ));
+        assertEquals("Test Title", vfIN.getComment().getTitle());
+        for(int i=0; i<4; i++) {
+            assertNotNull( vfIN.getNextAudioPacket() );
+        }
+        assertEquals(0x3c0, vfIN.getNextAudioPacket().getGranulePosition());
+        vfIN.close();
+
+        // Can't write headers when reading
+        try {
+            vfIN.writeHeaders();
+            fail("Not in write mode");
+        } catch(IllegalStateException e) {}
+    }
 }
@@ -14,17 +14,21 @@
 package org.gagravarr.tika;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.List;
 
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.metadata.XMP;
 import org.apache.tika.metadata.XMPDM;
 import org.apache.tika.parser.AbstractParser;
 import org.apache.tika.sax.XHTMLContentHandler;
+import org.gagravarr.ogg.OggFile;
 import org.gagravarr.ogg.audio.OggAudioHeaders;
 import org.gagravarr.ogg.audio.OggAudioInfoHeader;
 import org.gagravarr.ogg.audio.OggAudioStatistics;
@@ -41,6 +45,21 @@ public abstract class OggAudioParser extends AbstractParser {
     private static final long serialVersionUID = 5168743829615945633L;
     private static final DecimalFormat DURATION_FORMAT = new DecimalFormat("0.0#");
 
+    /**
+     * Opens the stream, via the file if Tika already has one for
+     *  it, so that the duration can be found from the end of the
+     *  file rather than by reading all the audio
+     */
+    protected static OggFile openOggFile(InputStream stream) throws IOException {
+        if (TikaInputStream.isTikaInputStream(stream)) {
+            TikaInputStream tis = (TikaInputStream)stream;
+            if (tis.hasFile()) {
+                return new OggFile(new RandomAccessFile(tis.getFile(), "r").getChannel());
+            }
+        }
+        return new OggFile(stream);
+    }
+
     protected static void extractChannelInfo(Metadata metadata, OggAudioInfoHeader info) {
         extractChannelInfo(metadata, info.getNumChannels());
     }
@@ -109,9 +128,10 @@ public abstract class OggAudioParser extends AbstractParser {
 
     protected void extractDuration(Metadata metadata, XHTMLContentHandler xhtml,
             OggAudioHeaders headers, OggAudioStream audio) throws IOException, SAXException {
-        // Have the statistics calculated
+        // Have the duration calculated, from the end of the
+        //  file if possible, rather than from all the audio
         OggAudioStatistics stats = new OggAudioStatistics(headers, audio);
-        stats.calculate();
+        stats.calculateDurationOnly();
 
         // Record the duration, if available
         double duration = stats.getDurationSeconds();
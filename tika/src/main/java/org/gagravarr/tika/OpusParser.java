@@ -60,25 +60,29 @@ public class OpusParser extends OggAudioParser {
       metadata.set(XMPDM.AUDIO_COMPRESSOR, "Opus");
 
       // Open the process the files
-      OggFile ogg = new OggFile(stream);
-      OpusFile opus = new OpusFile(ogg);
+      OggFile ogg = openOggFile(stream);
+      try {
+         OpusFile opus = new OpusFile(ogg);
 
-      // Start
-      XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
-      xhtml.startDocument();
+         // Start
+         XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+         xhtml.startDocument();
 
-      // Extract the common Opus info
-      extractInfo(metadata, opus.getInfo());
+         // Extract the common Opus info
+         extractInfo(metadata, opus.getInfo());
 
-      // Extract any Vorbis comments
-      extractComments(metadata, xhtml, opus.getTags());
+         // Extract any Vorbis comments
+         extractComments(metadata, xhtml, opus.getTags());
 
-      // Extract the audio length
-      extractDuration(metadata, xhtml, opus, opus);
+         // Extract the audio length
+         extractDuration(metadata, xhtml, opus, opus);
 
-      // Finish
-      xhtml.endDocument();
-      opus.close();
+         // Finish
+         xhtml.endDocument();
+      } finally {
+         // Also releases the file, if we opened one
+         ogg.close();
+      }
    }
    
    protected void extractInfo(Metadata metadata, OpusInfo info) throws TikaException {
@@ -60,25 +60,29 @@ public class SpeexParser extends OggAudioParser {
       metadata.set(XMPDM.AUDIO_COMPRESSOR, "Speex");
 
       // Open the process the files
-      OggFile ogg = new OggFile(stream);
-      SpeexFile speex = new SpeexFile(ogg);
+      OggFile ogg = openOggFile(stream);
+      try {
+         SpeexFile speex = new SpeexFile(ogg);
 
-      // Start
-      XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
-      xhtml.startDocument();
+         // Start
+         XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+         xhtml.startDocument();
 
-      // Extract the common Speex info
-      extractInfo(metadata, speex.getInfo());
+         // Extract the common Speex info
+         extractInfo(metadata, speex.getInfo());
 
-      // Extract any Vorbis comments
-      extractComments(metadata, xhtml, speex.getTags());
+         // Extract any Vorbis comments
+         extractComments(metadata, xhtml, speex.getTags());
 
-      // Extract the audio length
-      extractDuration(metadata, xhtml, speex, speex);
+         // Extract the audio length
+         extractDuration(metadata, xhtml, speex, speex);
 
-      // Finish
-      xhtml.endDocument();
-      speex.close();
+         // Finish
+         xhtml.endDocument();
+      } finally {
+         // Also releases the file, if we opened one
+         ogg.close();
+      }
    }
    
    protected void extractInfo(Metadata metadata, SpeexInfo info) throws TikaException {
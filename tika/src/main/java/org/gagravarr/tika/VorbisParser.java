@@ -58,28 +58,32 @@ public class VorbisParser extends OggAudioParser {
       metadata.set(XMPDM.AUDIO_COMPRESSOR, "Vorbis");
 
       // Open the process the files
-      OggFile ogg = new OggFile(stream);
-      VorbisFile vorbis = new VorbisFile(ogg);
+      OggFile ogg = openOggFile(stream);
+      try {
+         VorbisFile vorbis = new VorbisFile(ogg);
 
-      // Start
-      XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
-      xhtml.startDocument();
+         // Start
+         XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+         xhtml.startDocument();
 
-      // Extract the common Vorbis info
-      extractInfo(metadata, vorbis.getInfo());
+         // Extract the common Vorbis info
+         extractInfo(metadata, vorbis.getInfo());
 
-      // Extract any Vorbis comments
-      extractComments(metadata, xhtml, vorbis.getComment());
+         // Extract any Vorbis comments
+         extractComments(metadata, xhtml, vorbis.getComment());
 
-      // TODO See if there's a Kate stream, and if there is,
-      //  return the lyrics etc from within there
+         // TODO See if there's a Kate stream, and if there is,
+         //  return the lyrics etc from within there
 
-      // Extract the audio length
-      extractDuration(metadata, xhtml, vorbis, vorbis);
+         // Extract the audio length
+         extractDuration(metadata, xhtml, vorbis, vorbis);
 
-      // Finish
-      xhtml.endDocument();
-      vorbis.close();
+         // Finish
+         xhtml.endDocument();
+      } finally {
+         // Also releases the file, if we opened one
+         ogg.close();
+      }
    }
    
    protected void extractInfo(Metadata metadata, VorbisInfo info) throws TikaException {
@@ -13,6 +13,7 @@
  */
 package org.gagravarr.tika;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -80,4 +81,21 @@ public class TestVorbisParser extends TestCase {
         assertTrue(content.contains("Test Genre"));
         assertTrue(content.contains("00:00:00.02"));
     }
+
+    /**
+     * When Tika has a file, the duration comes from the end of it
+     */
+    public void testParserFromFile() throws Exception {
+        File f = new File(getClass().getResource("/testVORBIS.ogg").getFile());
+        ContentHandler handler = new BodyContentHandler();
+        Metadata metadata = new Metadata();
+
+        TikaInputStream stream = TikaInputStream.get(f);
+        new VorbisParser().parse(stream, handler, metadata, new ParseContext());
+        stream.close();
+
+        assertEquals("Test Title", metadata.get(TikaCoreProperties.TITLE));
+        assertEquals("0.02", metadata.get(XMPDM.DURATION));
+        assertTrue(handler.toString().contains("00:00:00.02"));
+    }
 }
@@ -14,14 +14,20 @@
 package org.gagravarr.flac.tools;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 
 import org.gagravarr.flac.FlacFile;
+import org.gagravarr.flac.FlacNativeFile;
+import org.gagravarr.flac.FlacNativeMetadataEditor;
 import org.gagravarr.vorbis.tools.VorbisLikeCommentTool;
 import org.gagravarr.vorbis.tools.VorbisLikeCommentTool.Command.Commands;
 
 /**
- * A class for listing (but not yet editing) Comments (Tags) within a
- *  FLAC File, much like the vorbiscomments program (but FLAC)
+ * A class for listing and editing Comments (Tags) within a
+ *  FLAC File, much like the vorbiscomments program (but FLAC).
+ * Only native FLAC files can be edited, not FLAC-in-Ogg ones.
  */
 public class FlacCommentTool extends VorbisLikeCommentTool {
     public static void main(String[] args) throws Exception {
@@ -32,7 +38,48 @@ public class FlacCommentTool extends VorbisLikeCommentTool {
         if (command.command == Commands.List) {
             listTags(op.getTags());
         } else {
-            throw new IllegalArgumentException("Writing is not (yet) supported for FLAC");
+            if (! (op instanceof FlacNativeFile)) {
+                throw new IllegalArgumentException("Writing is not (yet) supported for FLAC in Ogg");
+            }
+
+            // Use up the padding if we can, otherwise re-write
+            File inFile = new File(command.inFile);
+            RandomAccessFile in = new RandomAccessFile(inFile, isInPlace(command) ? "rw" : "r");
+            try {
+                FlacNativeMetadataEditor editor = new FlacNativeMetadataEditor(in.getChannel());
+                addTags(editor.getTags(), command);
+
+                if (isInPlace(command) && editor.writeInPlace()) {
+                    System.out.println("Updated comments in place");
+                    return;
+                }
+
+                File outFile = new File(command.outFile);
+                if (isInPlace(command)) {
+                    outFile = createTempFile(inFile);
+                }
+                boolean written = false;
+                try {
+                    OutputStream out = new FileOutputStream(outFile);
+                    try {
+                        editor.write(out);
+                    } finally {
+                        out.close();
+                    }
+                    written = true;
+                } finally {
+                    if (isInPlace(command) && !written) {
+                        outFile.delete();
+                    }
+                }
+                in.close();
+
+                if (isInPlace(command)) {
+                    replaceFile(inFile, outFile);
+                }
+            } finally {
+                in.close();
+            }
         }
     }
 }
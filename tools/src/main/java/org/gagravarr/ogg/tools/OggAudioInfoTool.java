@@ -19,6 +19,7 @@ import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
+import org.gagravarr.ogg.OggDiagnostics;
 import org.gagravarr.ogg.OggPacket;
 import org.gagravarr.ogg.OggPacketReader;
 import org.gagravarr.ogg.OggStreamAudioData;
@@ -32,6 +33,9 @@ import org.gagravarr.ogg.audio.OggAudioStream;
  */
 public abstract class OggAudioInfoTool {
     public static void handleMain(String[] args, OggAudioInfoTool tool) throws Exception {
+        // Warn about any problems found with the file
+        OggDiagnostics.setDefault(new OggDiagnostics(System.err));
+
         if(args.length == 0) {
             printHelp(tool);
         }
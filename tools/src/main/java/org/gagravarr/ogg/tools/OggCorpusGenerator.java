@@ -0,0 +1,372 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gagravarr.ogg.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.gagravarr.ogg.HighLevelOggStreamPacket;
+import org.gagravarr.ogg.OggFile;
+import org.gagravarr.ogg.OggPacketWriter;
+import org.gagravarr.ogg.OggPagingPolicy;
+import org.gagravarr.ogg.OggStreamAudioData;
+import org.gagravarr.opus.OpusAudioData;
+import org.gagravarr.opus.OpusInfo;
+import org.gagravarr.opus.OpusTags;
+import org.gagravarr.vorbis.VorbisAudioData;
+import org.gagravarr.vorbis.VorbisComments;
+import org.gagravarr.vorbis.VorbisInfo;
+import org.gagravarr.vorbis.VorbisSetup;
+
+/**
+ * Generates synthetic Ogg files, of any size, for load and scaling
+ *  tests. The files hold a number of multiplexed Vorbis and Opus
+ *  streams, with valid headers and pages, but random audio packets.
+ * The size of the packets, how many are big enough to span several
+ *  pages, how long the file lasts, and how much corruption is added
+ *  to it can all be controlled, and the same seed always gives the
+ *  same file.
+ */
+public class OggCorpusGenerator {
+    public static void main(String[] args) throws Exception {
+        if(args.length == 0) {
+            printHelp();
+        }
+
+        OggCorpusGenerator generator = new OggCorpusGenerator();
+        String filename = null;
+        for(int i=0; i<args.length; i++) {
+            String arg = args[i];
+            if(arg.startsWith("-") && i == args.length-1) {
+                printHelp();
+            }
+            if(arg.equals("-streams")) {
+                generator.setStreams(Integer.parseInt(args[++i]));
+            } else if(arg.equals("-seconds")) {
+                generator.setDurationSeconds(Integer.parseInt(args[++i]));
+            } else if(arg.equals("-min")) {
+                generator.setMinPacketSize(Integer.parseInt(args[++i]));
+            } else if(arg.equals("-max")) {
+                generator.setMaxPacketSize(Integer.parseInt(args[++i]));
+            } else if(arg.equals("-span")) {
+                generator.setSpanningRate(Double.parseDouble(args[++i]));
+            } else if(arg.equals("-corrupt")) {
+                generator.setCorruptionRate(Double.parseDouble(args[++i]));
+            } else if(arg.equals("-seed")) {
+                generator.setSeed(Long.parseLong(args[++i]));
+            } else if(arg.startsWith("-")) {
+                printHelp();
+            } else {
+                filename = arg;
+            }
+        }
+        if(filename == null) {
+            printHelp();
+        }
+
+        File file = new File(filename);
+        OutputStream out = new FileOutputStream(file);
+        generator.generate(out);
+
+        System.out.println("Wrote " + generator.getPacketsWritten() + " packets in " +
+                           file.length() + " bytes to " + file + ", with " +
+                           generator.getCorruptionsAdded() + " corruptions");
+    }
+
+    private static void printHelp() {
+        System.err.println("Use:");
+        System.err.println("   OggCorpusGenerator [-streams n] [-seconds n] [-min bytes] [-max bytes]");
+        System.err.println("                      [-span rate] [-corrupt rate] [-seed n] <file>");
+        System.err.println("");
+        System.err.println("  -streams   How many streams, alternately Vorbis and Opus (default 2)");
+        System.err.println("  -seconds   How long the streams last (default 60)");
+        System.err.println("  -min/-max  Range of audio packet sizes, in bytes (default 50-500)");
+        System.err.println("  -span      Fraction of packets big enough to span pages (default 0)");
+        System.err.println("  -corrupt   Fraction of writes to damage, by flipping bytes,");
+        System.err.println("              adding junk, or dropping them (default 0)");
+        System.err.println("  -seed      Random seed, to generate the same file again");
+        System.exit(1);
+    }
+
+    /**
+     * Packets this big won't fit on a single page
+     */
+    private static final int MAX_PAGE_DATA = 255*255;
+
+    private int streams = 2;
+    private int durationSeconds = 60;
+    private int minPacketSize = 50;
+    private int maxPacketSize = 500;
+    private double spanningRate = 0;
+    private double corruptionRate = 0;
+    private long seed = System.currentTimeMillis();
+
+    private long packetsWritten;
+    private long corruptionsAdded;
+
+    /**
+     * How many streams to generate, alternately Vorbis and Opus
+     */
+    public void setStreams(int streams) {
+        this.streams = streams;
+    }
+    public void setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+    /**
+     * Audio packet sizes are picked evenly between the minimum
+     *  and maximum sizes
+     */
+    public void setMinPacketSize(int minPacketSize) {
+        this.minPacketSize = minPacketSize;
+    }
+    public void setMaxPacketSize(int maxPacketSize) {
+        this.maxPacketSize = maxPacketSize;
+    }
+    /**
+     * What fraction of packets should instead be too big for
+     *  a single page, so are spanned over two to four pages
+     */
+    public void setSpanningRate(double spanningRate) {
+        this.spanningRate = spanningRate;
+    }
+    /**
+     * What fraction of the writes of pages should be damaged, by
+     *  flipping a byte, adding junk before them, or dropping them.
+     *  Zero gives a valid file.
+     */
+    public void setCorruptionRate(double corruptionRate) {
+        this.corruptionRate = corruptionRate;
+    }
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getPacketsWritten() {
+        return packetsWritten;
+    }
+    public long getCorruptionsAdded() {
+        return corruptionsAdded;
+    }
+
+    /**
+     * Generates the file, writing it to the given stream, which is
+     *  then closed
+     */
+    public void generate(OutputStream out) throws IOException {
+        Random random = new Random(seed);
+        packetsWritten = 0;
+        corruptionsAdded = 0;
+
+        CorruptingOutputStream corrupter = null;
+        if(corruptionRate > 0) {
+            corrupter = new CorruptingOutputStream(out, random);
+            out = corrupter;
+        }
+        OggFile ogg = new OggFile(out);
+
+        List<Stream> all = new ArrayList<Stream>();
+        for(int i=0; i<streams; i++) {
+            Stream stream;
+            if(i % 2 == 0) {
+                stream = new VorbisStream(ogg.getPacketWriter());
+            } else {
+                stream = new OpusStream(ogg.getPacketWriter());
+            }
+            // Pages of about a tenth of a second each
+            OggPagingPolicy policy = new OggPagingPolicy();
+            policy.setMaxPageGranules(stream.getGranulesPerSecond() / 10);
+            stream.writer.setPagingPolicy(policy);
+            all.add(stream);
+        }
+
+        // The first header of every stream must come first, on its own page
+        for(Stream stream : all) {
+            HighLevelOggStreamPacket[] headers = stream.getHeaders();
+            stream.writer.bufferPacket(headers[0].write(), true);
+        }
+        for(Stream stream : all) {
+            HighLevelOggStreamPacket[] headers = stream.getHeaders();
+            for(int i=1; i<headers.length; i++) {
+                stream.writer.bufferPacket(headers[i].write());
+            }
+            stream.writer.flush();
+        }
+
+        // Write the audio in time order, with each stream's packets
+        //  at its own rate
+        while(true) {
+            Stream next = null;
+            for(Stream stream : all) {
+                if(stream.granule < stream.getGranulesPerSecond() * durationSeconds &&
+                        (next == null || stream.getTime() < next.getTime())) {
+                    next = stream;
+                }
+            }
+            if(next == null) {
+                break;
+            }
+
+            next.granule += next.getGranulesPerPacket();
+            OggStreamAudioData audio = next.createAudio(createPacketData(random));
+            next.writer.writePacket(audio.write(), next.granule);
+            packetsWritten++;
+        }
+
+        for(Stream stream : all) {
+            stream.writer.close();
+        }
+        ogg.close();
+
+        if(corrupter != null) {
+            corruptionsAdded = corrupter.corruptions;
+        }
+    }
+
+    private byte[] createPacketData(Random random) {
+        int size;
+        if(spanningRate > 0 && random.nextDouble() < spanningRate) {
+            size = MAX_PAGE_DATA + random.nextInt(MAX_PAGE_DATA * 3);
+        } else {
+            size = minPacketSize;
+            if(maxPacketSize > minPacketSize) {
+                size += random.nextInt(maxPacketSize - minPacketSize + 1);
+            }
+        }
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static abstract class Stream {
+        private OggPacketWriter writer;
+        private long granule;
+        private Stream(OggPacketWriter writer) {
+            this.writer = writer;
+        }
+        private double getTime() {
+            return (double)granule / getGranulesPerSecond();
+        }
+        protected abstract HighLevelOggStreamPacket[] getHeaders();
+        protected abstract long getGranulesPerSecond();
+        protected abstract int getGranulesPerPacket();
+        protected abstract OggStreamAudioData createAudio(byte[] data);
+    }
+    private static class VorbisStream extends Stream {
+        private HighLevelOggStreamPacket[] headers;
+        private VorbisStream(OggPacketWriter writer) {
+            super(writer);
+            VorbisInfo info = new VorbisInfo();
+            info.setChannels(2);
+            info.setRate(44100);
+            VorbisComments comments = new VorbisComments();
+            comments.addComment(VorbisComments.KEY_TITLE, "Generated Vorbis " + writer.getSid());
+            // Just the setup header's signature, padded to the minimum
+            //  header size, as the random audio has no real codebooks
+            VorbisSetup setup = new VorbisSetup();
+            byte[] setupData = new byte[16];
+            setup.populateMetadataHeader(setupData, setupData.length);
+            setup.setData(setupData);
+            headers = new HighLevelOggStreamPacket[] { info, comments, setup };
+        }
+        protected HighLevelOggStreamPacket[] getHeaders() {
+            return headers;
+        }
+        protected long getGranulesPerSecond() {
+            return 44100;
+        }
+        protected int getGranulesPerPacket() {
+            return 1024;
+        }
+        protected OggStreamAudioData createAudio(byte[] data) {
+            // Audio packets are flagged by the first bit being zero
+            data[0] &= 0xfe;
+            return new VorbisAudioData(data);
+        }
+    }
+    private static class OpusStream extends Stream {
+        private HighLevelOggStreamPacket[] headers;
+        private OpusStream(OggPacketWriter writer) {
+            super(writer);
+            OpusInfo info = new OpusInfo();
+            info.setNumChannels(2);
+            info.setSampleRate(48000);
+            OpusTags tags = new OpusTags();
+            tags.addComment(OpusTags.KEY_TITLE, "Generated Opus " + writer.getSid());
+            headers = new HighLevelOggStreamPacket[] { info, tags };
+        }
+        protected HighLevelOggStreamPacket[] getHeaders() {
+            return headers;
+        }
+        protected long getGranulesPerSecond() {
+            return 48000;
+        }
+        protected int getGranulesPerPacket() {
+            return 960;
+        }
+        protected OggStreamAudioData createAudio(byte[] data) {
+            // TOC of a single 20ms fullband CELT frame
+            data[0] = (byte)0xf8;
+            return new OpusAudioData(data);
+        }
+    }
+
+    /**
+     * Damages some of what is written through it
+     */
+    private class CorruptingOutputStream extends FilterOutputStream {
+        private Random random;
+        private long corruptions;
+
+        private CorruptingOutputStream(OutputStream out, Random random) {
+            super(out);
+            this.random = random;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(len == 0 || random.nextDouble() >= corruptionRate) {
+                out.write(b, off, len);
+                return;
+            }
+
+            corruptions++;
+            switch(random.nextInt(3)) {
+            case 0:
+                // Flip a byte, without changing the caller's copy
+                byte[] copy = new byte[len];
+                System.arraycopy(b, off, copy, 0, len);
+                copy[random.nextInt(len)] ^= (byte)(1 + random.nextInt(255));
+                out.write(copy);
+                break;
+            case 1:
+                // Junk before the real data
+                byte[] junk = new byte[1 + random.nextInt(1000)];
+                random.nextBytes(junk);
+                out.write(junk);
+                out.write(b, off, len);
+                break;
+            default:
+                // Lose it entirely
+                break;
+            }
+        }
+    }
+}
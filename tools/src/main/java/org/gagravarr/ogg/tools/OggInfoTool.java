@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.gagravarr.ogg.OggDiagnostics;
 import org.gagravarr.ogg.OggFile;
 import org.gagravarr.ogg.OggPacket;
 import org.gagravarr.ogg.OggPacketReader;
@@ -33,6 +34,9 @@ import org.gagravarr.ogg.OggStreamIdentifier.OggStreamType;
  */
 public class OggInfoTool {
     public static void main(String[] args) throws Exception {
+        // Warn about any problems found with the file
+        OggDiagnostics.setDefault(new OggDiagnostics(System.err));
+
         if(args.length == 0) {
             System.err.println("Use:");
             System.err.println("   OggInfoTool <file> [file] [file]");
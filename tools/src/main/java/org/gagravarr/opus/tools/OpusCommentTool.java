@@ -14,11 +14,7 @@
 package org.gagravarr.opus.tools;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.util.ArrayList;
-import java.util.List;
 
-import org.gagravarr.opus.OpusAudioData;
 import org.gagravarr.opus.OpusFile;
 import org.gagravarr.vorbis.tools.VorbisLikeCommentTool;
 import org.gagravarr.vorbis.tools.VorbisLikeCommentTool.Command.Commands;
@@ -39,25 +35,9 @@ public class OpusCommentTool extends VorbisLikeCommentTool {
             // Have the new tags added
             addTags(op.getTags(), command);
             
-            // Write out
-            List<OpusAudioData> audio = new ArrayList<OpusAudioData>();
-            OpusAudioData ad;
-            while( (ad = op.getNextAudioPacket()) != null ) {
-                audio.add(ad);
-            }
-
-            // Now write out
+            // Write out, re-using the existing audio pages
             op.close();
-            OpusFile out = new OpusFile(
-                    new FileOutputStream(command.outFile),
-                    op.getSid(),
-                    op.getInfo(),
-                    op.getTags()
-            );
-            for(OpusAudioData oad : audio) {
-                out.writeAudioData(oad);
-            }
-            out.close();
+            writeTags(op.getTags(), op.getSid(), command);
         }
     }
 }
@@ -14,11 +14,7 @@
 package org.gagravarr.vorbis.tools;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.util.ArrayList;
-import java.util.List;
 
-import org.gagravarr.vorbis.VorbisAudioData;
 import org.gagravarr.vorbis.VorbisFile;
 import org.gagravarr.vorbis.tools.VorbisLikeCommentTool.Command.Commands;
 
@@ -39,26 +35,9 @@ public class VorbisCommentTool extends VorbisLikeCommentTool {
             // Have the new tags added
             addTags(vf.getComment(), command);
             
-            // Write out
-            List<VorbisAudioData> audio = new ArrayList<VorbisAudioData>();
-            VorbisAudioData ad;
-            while( (ad = vf.getNextAudioPacket()) != null ) {
-                audio.add(ad);
-            }
-
-            // Now write out
+            // Write out, re-using the existing audio pages
             vf.close();
-            VorbisFile out = new VorbisFile(
-                    new FileOutputStream(command.outFile),
-                    vf.getSid(),
-                    vf.getInfo(),
-                    vf.getComment(),
-                    vf.getSetup()
-            );
-            for(VorbisAudioData vad : audio) {
-                out.writeAudioData(vad);
-            }
-            out.close();
+            writeTags(vf.getComment(), vf.getSid(), command);
         }
     }
 }
\ No newline at end of file
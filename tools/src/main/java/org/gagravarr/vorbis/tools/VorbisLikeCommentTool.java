@@ -13,10 +13,16 @@
  */
 package org.gagravarr.vorbis.tools;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.gagravarr.ogg.OggHeaderRewriter;
 import org.gagravarr.vorbis.VorbisStyleComments;
 import org.gagravarr.vorbis.tools.VorbisLikeCommentTool.Command.Commands;
 
@@ -123,4 +129,93 @@ public abstract class VorbisLikeCommentTool {
             vorbisComments.addComment(name, value);
         }
     }
+
+    /**
+     * Writes out the edited comments, which are the second packet of
+     *  the given stream, replacing just the header pages rather than
+     *  re-writing all the audio. When editing a file in place, its
+     *  pages are patched directly if the comments still fit, and
+     *  otherwise it is re-written alongside and swapped over.
+     */
+    public static void writeTags(VorbisStyleComments vorbisComments, int sid,
+                                 Command command) throws IOException {
+        OggHeaderRewriter rewriter =
+                new OggHeaderRewriter(sid, 1, vorbisComments.write());
+        // Decoders ignore anything after the comments
+        rewriter.setPaddingAllowed(true);
+
+        File inFile = new File(command.inFile);
+        File outFile = new File(command.outFile);
+        boolean inPlace = isInPlace(command);
+        RandomAccessFile in;
+        if (inPlace) {
+            in = new RandomAccessFile(inFile, "rw");
+            try {
+                if (rewriter.rewriteInPlace(in.getChannel())) {
+                    System.out.println("Updated comments in place");
+                    return;
+                }
+            } finally {
+                in.close();
+            }
+            outFile = createTempFile(inFile);
+        }
+
+        in = new RandomAccessFile(inFile, "r");
+        boolean written = false;
+        try {
+            OutputStream out = new FileOutputStream(outFile);
+            try {
+                rewriter.rewrite(in.getChannel(), out);
+            } finally {
+                out.close();
+            }
+            written = true;
+        } finally {
+            in.close();
+            if (inPlace && !written) {
+                outFile.delete();
+            }
+        }
+
+        if (inPlace) {
+            replaceFile(inFile, outFile);
+        }
+    }
+
+    /**
+     * Is the file being edited, rather than written to a new one?
+     */
+    protected static boolean isInPlace(Command command) throws IOException {
+        return new File(command.inFile).getCanonicalFile().equals(
+                new File(command.outFile).getCanonicalFile());
+    }
+    /**
+     * Creates a file alongside the given one, to write a new
+     *  copy of it to when it can't be changed in place
+     */
+    protected static File createTempFile(File file) throws IOException {
+        return File.createTempFile(file.getName(), ".tmp",
+                file.getAbsoluteFile().getParentFile());
+    }
+    /**
+     * Swaps the new copy of the file in, in place of the original.
+     * The original is moved aside first, and put back if the new
+     *  copy can't be moved in, so it is never lost.
+     */
+    protected static void replaceFile(File file, File newFile) throws IOException {
+        File backup = createTempFile(file);
+        backup.delete();
+        if (! file.renameTo(backup)) {
+            throw new IOException("Unable to replace " + file + ", new copy left at " + newFile);
+        }
+        if (! newFile.renameTo(file)) {
+            if (! backup.renameTo(file)) {
+                throw new IOException("Unable to replace " + file + ", original left at " +
+                                      backup + " and new copy at " + newFile);
+            }
+            throw new IOException("Unable to replace " + file + ", new copy left at " + newFile);
+        }
+        backup.delete();
+    }
 }